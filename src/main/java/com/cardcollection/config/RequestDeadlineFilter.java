@@ -0,0 +1,55 @@
+package com.cardcollection.config;
+
+import com.cardcollection.service.FirestoreCallPolicy;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Gives every HTTP request a deadline that Firestore calls made while
+ * serving it respect (see FirestoreCallPolicy). Callers may pass their own
+ * remaining budget in X-Request-Deadline-Ms (milliseconds from now), capped
+ * at firestore.request-deadline.max-ms.
+ */
+@Component
+public class RequestDeadlineFilter extends OncePerRequestFilter {
+
+    public static final String DEADLINE_HEADER = "X-Request-Deadline-Ms";
+
+    private final long defaultBudgetMs;
+    private final long maxBudgetMs;
+
+    public RequestDeadlineFilter(@Value("${firestore.request-deadline.default-ms:10000}") long defaultBudgetMs,
+                                 @Value("${firestore.request-deadline.max-ms:30000}") long maxBudgetMs) {
+        this.defaultBudgetMs = defaultBudgetMs;
+        this.maxBudgetMs = maxBudgetMs;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        long budgetMs = defaultBudgetMs;
+        String header = request.getHeader(DEADLINE_HEADER);
+        if (header != null) {
+            try {
+                budgetMs = Math.max(1L, Math.min(Long.parseLong(header.trim()), maxBudgetMs));
+            } catch (NumberFormatException e) {
+                // Ignore a malformed header and use the default budget
+            }
+        }
+
+        FirestoreCallPolicy.setRequestDeadline(budgetMs > 0 ? System.currentTimeMillis() + budgetMs : null);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            FirestoreCallPolicy.setRequestDeadline(null);
+        }
+    }
+}
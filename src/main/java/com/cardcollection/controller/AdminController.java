@@ -0,0 +1,155 @@
+package com.cardcollection.controller;
+
+import com.cardcollection.service.CatalogSnapshotService;
+import com.cardcollection.service.CollectionService;
+import com.cardcollection.service.FirestoreCallPolicy;
+import com.cardcollection.service.JobService;
+import com.cardcollection.service.PopularityService;
+import com.cardcollection.service.PriceJournal;
+import com.cardcollection.service.PriceRetentionService;
+import com.cardcollection.service.PriceStreamService;
+import com.cardcollection.service.RequestCoalescer;
+import com.cardcollection.service.SimilarityService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+@RestController
+@RequestMapping("/api/admin")
+@CrossOrigin(origins = "*")
+public class AdminController {
+
+    private final RequestCoalescer coalescer;
+    private final CatalogSnapshotService snapshotService;
+    private final PriceStreamService priceStreamService;
+    private final PriceRetentionService retentionService;
+    private final PriceJournal priceJournal;
+    private final SimilarityService similarityService;
+    private final PopularityService popularityService;
+    private final CollectionService collectionService;
+    private final FirestoreCallPolicy callPolicy;
+
+    public AdminController(RequestCoalescer coalescer, CatalogSnapshotService snapshotService,
+                           PriceStreamService priceStreamService, PriceRetentionService retentionService,
+                           PriceJournal priceJournal, SimilarityService similarityService,
+                           PopularityService popularityService, CollectionService collectionService,
+                           FirestoreCallPolicy callPolicy) {
+        this.coalescer = coalescer;
+        this.snapshotService = snapshotService;
+        this.priceStreamService = priceStreamService;
+        this.retentionService = retentionService;
+        this.priceJournal = priceJournal;
+        this.similarityService = similarityService;
+        this.popularityService = popularityService;
+        this.collectionService = collectionService;
+        this.callPolicy = callPolicy;
+    }
+
+    /**
+     * GET /api/admin/coalescing
+     * Duplicate-suppression stats per coalesced read
+     */
+    @GetMapping("/coalescing")
+    public ResponseEntity<Map<String, RequestCoalescer.CoalescingStats>> getCoalescingStats() {
+        return ResponseEntity.ok(coalescer.getStats());
+    }
+
+    /**
+     * GET /api/admin/firestore-calls
+     * Per-operation Firestore call stats: retries, timeouts, hedges sent and
+     * won, recent latency percentiles
+     */
+    @GetMapping("/firestore-calls")
+    public ResponseEntity<Map<String, FirestoreCallPolicy.CallStats>> getFirestoreCallStats() {
+        return ResponseEntity.ok(callPolicy.getStats());
+    }
+
+    /**
+     * POST /api/admin/snapshot
+     * Write the catalog snapshot now
+     */
+    @PostMapping("/snapshot")
+    public ResponseEntity<CatalogSnapshotService.SnapshotInfo> writeSnapshot() {
+        try {
+            return ResponseEntity.ok(snapshotService.write());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * GET /api/admin/price-stream
+     * Connected stream clients and shared per-card channels
+     */
+    @GetMapping("/price-stream")
+    public ResponseEntity<PriceStreamService.StreamStats> getPriceStreamStats() {
+        return ResponseEntity.ok(priceStreamService.getStats());
+    }
+
+    /**
+     * POST /api/admin/retention/run
+     * Compact old price history now (runs as a background job)
+     */
+    @PostMapping("/retention/run")
+    public ResponseEntity<JobService.JobStatus> runRetention() {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(retentionService.submitRun());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * GET /api/admin/price-journal
+     * Write-behind journal backlog and flush state
+     */
+    @GetMapping("/price-journal")
+    public ResponseEntity<PriceJournal.JournalStats> getPriceJournalStats() {
+        return ResponseEntity.ok(priceJournal.getStats());
+    }
+
+    /**
+     * POST /api/admin/similarity/rebuild
+     * Recompute all similar-card neighbours (runs as a background job)
+     */
+    @PostMapping("/similarity/rebuild")
+    public ResponseEntity<JobService.JobStatus> rebuildSimilarity() {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(similarityService.submitRebuild());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * POST /api/admin/popularity/backfill
+     * Recount the popularity counters from every holding (runs as a background job)
+     */
+    @PostMapping("/popularity/backfill")
+    public ResponseEntity<JobService.JobStatus> backfillPopularity() {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(popularityService.submitBackfill());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /**
+     * POST /api/admin/collections/migrate-holdings
+     * Merge items stored under random IDs into their holdings (runs as a background job)
+     */
+    @PostMapping("/collections/migrate-holdings")
+    public ResponseEntity<JobService.JobStatus> migrateHoldings() {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(collectionService.submitHoldingMigration());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.cardcollection.controller;
+
+import com.cardcollection.model.PriceAlert;
+import com.cardcollection.service.AlertService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/alerts")
+@CrossOrigin(origins = "*")
+public class AlertController {
+
+    private final AlertService alertService;
+
+    public AlertController(AlertService alertService) {
+        this.alertService = alertService;
+    }
+
+    /**
+     * POST /api/alerts
+     * Create a price alert (type BELOW, ABOVE or CHANGE_PERCENT)
+     */
+    @PostMapping
+    public ResponseEntity<PriceAlert> createAlert(@RequestBody PriceAlert alert) {
+        try {
+            PriceAlert created = alertService.createAlert(alert);
+            return ResponseEntity.status(HttpStatus.CREATED).body(created);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * GET /api/alerts/user/{userId}
+     * Get all alerts of a user
+     */
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<List<PriceAlert>> getUserAlerts(@PathVariable String userId) {
+        try {
+            List<PriceAlert> alerts = alertService.getUserAlerts(userId);
+            return ResponseEntity.ok(alerts);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * DELETE /api/alerts/{alertId}
+     * Delete an alert
+     */
+    @DeleteMapping("/{alertId}")
+    public ResponseEntity<Void> deleteAlert(@PathVariable String alertId) {
+        try {
+            alertService.deleteAlert(alertId);
+            return ResponseEntity.ok().build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+}
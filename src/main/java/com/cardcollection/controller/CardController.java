@@ -2,12 +2,18 @@ package com.cardcollection.controller;
 
 import com.cardcollection.model.Card;
 import com.cardcollection.service.CardService;
+import com.cardcollection.service.ChangeLog;
+import com.cardcollection.service.JobService;
+import com.cardcollection.service.PopularityService;
+import com.cardcollection.service.SimilarityService;
+import com.cardcollection.service.SuggestService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 
 @RestController
@@ -16,9 +22,16 @@ import java.util.List;
 public class CardController {
 
     private final CardService cardService;
+    private final PopularityService popularityService;
+    private final SimilarityService similarityService;
+    private final SuggestService suggestService;
 
-    public CardController(CardService cardService) {
+    public CardController(CardService cardService, PopularityService popularityService,
+                          SimilarityService similarityService, SuggestService suggestService) {
         this.cardService = cardService;
+        this.popularityService = popularityService;
+        this.similarityService = similarityService;
+        this.suggestService = suggestService;
     }
 
     /**
@@ -36,6 +49,66 @@ public class CardController {
         }
     }
 
+    /**
+     * GET /api/cards/popular?type=collected|wishlisted&limit=20
+     * Most collected / most wishlisted cards across all users
+     * (refreshed periodically; X-Materialized-At tells when)
+     */
+    @GetMapping("/popular")
+    public ResponseEntity<List<PopularityService.PopularCard>> getPopularCards(
+            @RequestParam(defaultValue = PopularityService.TYPE_COLLECTED) String type,
+            @RequestParam(defaultValue = "20") int limit) {
+        try {
+            List<PopularityService.PopularCard> cards = popularityService.getTopCards(type, limit);
+            return ResponseEntity.ok()
+                .header("X-Materialized-At", String.valueOf(popularityService.getMaterializedAt()))
+                .body(cards);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * GET /api/cards/suggest?prefix=luf&limit=10
+     * Typeahead: names, player names, teams and sets with a word starting
+     * with the prefix, most popular first (served from memory)
+     */
+    @GetMapping("/suggest")
+    public ResponseEntity<List<SuggestService.Suggestion>> suggest(
+            @RequestParam String prefix,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            if (!suggestService.isReady()) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+            return ResponseEntity.ok(suggestService.suggest(prefix, limit));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * GET /api/cards/changes?since=<token>
+     * Cards created or updated since the token and IDs of deleted cards, plus
+     * the token for the next call. Without a token (or with an expired one)
+     * returns the whole catalog with reset=true.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<ChangeLog.ChangeSet<Card>> getChanges(@RequestParam(required = false) String since) {
+        try {
+            return ResponseEntity.ok(cardService.getChanges(since));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * GET /api/cards/{id}
      * Get card by ID
@@ -54,6 +127,43 @@ public class CardController {
         }
     }
 
+    /**
+     * GET /api/cards/{id}/similar?limit=10
+     * Cards sharing the most features (tags, color, attribute, set, effect
+     * keywords, team, league) with this one, best first
+     */
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<List<SimilarityService.SimilarCard>> getSimilarCards(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "10") int limit) {
+        try {
+            if (!similarityService.isReady()) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+            }
+            return ResponseEntity.ok(similarityService.getSimilarCards(id, limit));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * POST /api/cards/batch
+     * Get many cards by ID in one request (body: JSON array of IDs)
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<CardService.BatchResult> getCardsByIds(@RequestBody List<String> ids) {
+        try {
+            CardService.BatchResult result = cardService.getCardsByIds(ids);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * POST /api/cards
      * Create new card
@@ -69,16 +179,78 @@ public class CardController {
         }
     }
 
+    /**
+     * POST /api/cards/sync?deleteMissing=false
+     * Make the catalog match the posted cards: IDs derived from game, set code
+     * and number; only new or changed cards (by content hash) are written;
+     * with deleteMissing, cards of the same sets missing from the body are deleted.
+     * Runs as a background job; poll /api/jobs/{jobId} for the counts.
+     */
+    @PostMapping("/sync")
+    public ResponseEntity<JobService.JobStatus> syncCards(
+            @RequestBody List<Card> cards,
+            @RequestParam(defaultValue = "false") boolean deleteMissing) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(cardService.submitSync(cards, deleteMissing));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * GET /api/cards/search
-     * Search cards with filters
+     * Search cards with filters, numeric ranges, sorting and pagination.
+     * Paged responses carry the total match count in X-Total-Count.
      */
     @GetMapping("/search")
     public ResponseEntity<List<Card>> searchCards(
             @RequestParam(required = false) String query,
             @RequestParam(required = false) String game,
-            @RequestParam(required = false) String cardType) {
+            @RequestParam(required = false) String cardType,
+            @RequestParam(required = false) Double minCost,
+            @RequestParam(required = false) Double maxCost,
+            @RequestParam(required = false) Double minPower,
+            @RequestParam(required = false) Double maxPower,
+            @RequestParam(required = false) Double minCounter,
+            @RequestParam(required = false) Double maxCounter,
+            @RequestParam(required = false) Double minRating,
+            @RequestParam(required = false) Double maxRating,
+            @RequestParam(required = false) Double minPrice,
+            @RequestParam(required = false) Double maxPrice,
+            @RequestParam(required = false) String sortBy,
+            @RequestParam(required = false) String sortDir,
+            @RequestParam(required = false) Integer page,
+            @RequestParam(required = false) Integer size) {
         try {
+            CardService.SearchCriteria criteria = new CardService.SearchCriteria();
+            criteria.setQuery(query);
+            criteria.setGame(game);
+            criteria.setCardType(cardType);
+            criteria.setMinCost(minCost);
+            criteria.setMaxCost(maxCost);
+            criteria.setMinPower(minPower);
+            criteria.setMaxPower(maxPower);
+            criteria.setMinCounter(minCounter);
+            criteria.setMaxCounter(maxCounter);
+            criteria.setMinRating(minRating);
+            criteria.setMaxRating(maxRating);
+            criteria.setMinPrice(minPrice);
+            criteria.setMaxPrice(maxPrice);
+            criteria.setSortBy(sortBy);
+            criteria.setSortDir(sortDir);
+            criteria.setPage(page);
+            criteria.setSize(size);
+
+            if (criteria.needsIndex()) {
+                CardService.SearchResult result = cardService.searchCards(criteria);
+                return ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(result.getTotal()))
+                    .body(result.getCards());
+            }
+
             List<Card> cards = cardService.searchCards(query, game, cardType);
             return ResponseEntity.ok(cards);
         } catch (Exception e) {
@@ -134,18 +306,31 @@ public class CardController {
     }
     
     /**
-     * POST /api/cards/import
-     * Bulk import cards from JSON file
+     * POST /api/cards/import?mode=create|sync&deleteMissing=false
+     * Bulk import cards from JSON file. mode=sync writes only new or changed
+     * cards under deterministic IDs (see /api/cards/sync) instead of creating
+     * every card again.
+     * Runs as a background job; poll /api/jobs/{jobId} for progress.
      */
     @GetMapping("/import")
-    public ResponseEntity<Map<String, Object>> importCards() {
+    public ResponseEntity<Map<String, Object>> importCards(
+            @RequestParam(defaultValue = "create") String mode,
+            @RequestParam(defaultValue = "false") boolean deleteMissing) {
         try {
-            List<Card> cards = cardService.importCardsFromJson();
+            if (!"create".equalsIgnoreCase(mode) && !"sync".equalsIgnoreCase(mode)) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("error", "Unsupported import mode: " + mode);
+                return ResponseEntity.badRequest().body(response);
+            }
+            JobService.JobStatus job = "sync".equalsIgnoreCase(mode)
+                ? cardService.submitSyncFromJson(deleteMissing)
+                : cardService.submitImportFromJson();
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
-            response.put("count", cards.size());
-            response.put("message", "Successfully imported " + cards.size() + " cards!");
-            return ResponseEntity.ok(response);
+            response.put("jobId", job.getId());
+            response.put("message", "Import started, check /api/jobs/" + job.getId() + " for progress");
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
         } catch (Exception e) {
             e.printStackTrace();
             Map<String, Object> response = new HashMap<>();
@@ -1,10 +1,14 @@
 package com.cardcollection.controller;
 
 import com.cardcollection.model.CollectionItem;
+import com.cardcollection.service.ChangeLog;
 import com.cardcollection.service.CollectionService;
+import com.cardcollection.service.ExportService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.HashMap;
 import java.util.List;
@@ -16,16 +20,57 @@ import java.util.Map;
 public class CollectionController {
 
     private final CollectionService collectionService;
+    private final ExportService exportService;
 
-    public CollectionController(CollectionService collectionService) {
+    public CollectionController(CollectionService collectionService, ExportService exportService) {
         this.collectionService = collectionService;
+        this.exportService = exportService;
     }
 
+    /**
+     * GET /api/collections/{userId}
+     * Without parameters returns the whole collection. With any filter, sort,
+     * limit or cursor parameter returns one page; the cursor for the next page
+     * is in X-Next-Cursor (absent on the last page) and the match count in X-Total-Count.
+     */
     @GetMapping("/{userId}")
-    public ResponseEntity<List<CollectionItem>> getUserCollection(@PathVariable String userId) {
+    public ResponseEntity<List<CollectionItem>> getUserCollection(
+            @PathVariable String userId,
+            @RequestParam(required = false) String game,
+            @RequestParam(required = false) String set,
+            @RequestParam(required = false) String rarity,
+            @RequestParam(required = false) String condition,
+            @RequestParam(required = false) Boolean wishlist,
+            @RequestParam(required = false) String sortBy,
+            @RequestParam(required = false) String sortDir,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) {
         try {
+            CollectionService.CollectionQuery query = new CollectionService.CollectionQuery();
+            query.setGame(game);
+            query.setSet(set);
+            query.setRarity(rarity);
+            query.setCondition(condition);
+            query.setWishlist(wishlist);
+            query.setSortBy(sortBy);
+            query.setSortDir(sortDir);
+            query.setLimit(limit);
+            query.setCursor(cursor);
+
+            if (query.isPaged()) {
+                CollectionService.CollectionPage page = collectionService.queryCollection(userId, query);
+                ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .header("X-Total-Count", String.valueOf(page.getTotal()));
+                if (page.getNextCursor() != null) {
+                    response.header("X-Next-Cursor", page.getNextCursor());
+                }
+                return response.body(page.getItems());
+            }
+
             List<CollectionItem> collection = collectionService.getUserCollection(userId);
             return ResponseEntity.ok(collection);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -56,6 +101,67 @@ public class CollectionController {
         }
     }
 
+    /**
+     * GET /api/collections/{userId}/analytics
+     * Value, invested, P/L and counts grouped by game, set, rarity, color,
+     * condition and acquisition month
+     */
+    @GetMapping("/{userId}/analytics")
+    public ResponseEntity<CollectionService.PortfolioAnalytics> getPortfolioAnalytics(@PathVariable String userId) {
+        try {
+            CollectionService.PortfolioAnalytics analytics = collectionService.getPortfolioAnalytics(userId);
+            return ResponseEntity.ok(analytics);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * GET /api/collections/{userId}/changes?since=<token>
+     * Items created or updated since the token and IDs of removed items, plus
+     * the token for the next call. Without a token (or with an expired one)
+     * returns the whole collection with reset=true.
+     */
+    @GetMapping("/{userId}/changes")
+    public ResponseEntity<ChangeLog.ChangeSet<CollectionItem>> getChanges(
+            @PathVariable String userId,
+            @RequestParam(required = false) String since) {
+        try {
+            return ResponseEntity.ok(collectionService.getChanges(userId, since));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * GET /api/collections/{userId}/export?format=csv|ndjson&gzip=false
+     * Whole collection (wishlist included), streamed page by page
+     */
+    @GetMapping("/{userId}/export")
+    public ResponseEntity<StreamingResponseBody> exportCollection(
+            @PathVariable String userId,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        try {
+            ExportService.Format exportFormat = ExportService.Format.fromParam(format);
+            StreamingResponseBody body = out -> exportService.exportCollection(userId, exportFormat, gzip, out);
+            return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, exportFormat.contentType(gzip))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                    "attachment; filename=\"" + exportFormat.fileName("collection-" + userId, gzip) + "\"")
+                .body(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/{userId}/test/add-card")
     public ResponseEntity<CollectionItem> testAddCard(
             @PathVariable String userId,
@@ -79,6 +185,45 @@ public class CollectionController {
         }
     }
 
+    @PostMapping("/{userId}/items/batch")
+    public ResponseEntity<CollectionService.BatchMutationResult> addToCollectionBatch(
+            @PathVariable String userId,
+            @RequestBody List<CollectionItem> items) {
+        try {
+            CollectionService.BatchMutationResult result = collectionService.addToCollectionBatch(userId, items);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PutMapping("/{userId}/items/batch")
+    public ResponseEntity<CollectionService.BatchMutationResult> updateCollectionBatch(
+            @PathVariable String userId,
+            @RequestBody List<CollectionItem> items) {
+        try {
+            CollectionService.BatchMutationResult result = collectionService.updateCollectionBatch(userId, items);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping("/{userId}/items/batch/remove")
+    public ResponseEntity<CollectionService.BatchMutationResult> removeFromCollectionBatch(
+            @PathVariable String userId,
+            @RequestBody List<String> itemIds) {
+        try {
+            CollectionService.BatchMutationResult result = collectionService.removeFromCollectionBatch(userId, itemIds);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @DeleteMapping("/items/{itemId}")
     public ResponseEntity<Void> removeFromCollection(@PathVariable String itemId) {
         try {
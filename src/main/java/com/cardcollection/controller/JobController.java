@@ -0,0 +1,67 @@
+package com.cardcollection.controller;
+
+import com.cardcollection.service.JobService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/jobs")
+@CrossOrigin(origins = "*")
+public class JobController {
+
+    private final JobService jobService;
+
+    public JobController(JobService jobService) {
+        this.jobService = jobService;
+    }
+
+    /**
+     * GET /api/jobs
+     * List recent jobs, newest first
+     */
+    @GetMapping
+    public ResponseEntity<List<JobService.JobStatus>> listJobs() {
+        return ResponseEntity.ok(jobService.listJobs());
+    }
+
+    /**
+     * GET /api/jobs/{jobId}
+     * Job state and progress
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<JobService.JobStatus> getJob(@PathVariable String jobId) {
+        JobService.JobStatus job = jobService.getJob(jobId);
+        if (job != null) {
+            return ResponseEntity.ok(job);
+        }
+        return ResponseEntity.notFound().build();
+    }
+
+    /**
+     * GET /api/jobs/{jobId}/result
+     * Result of a finished job
+     */
+    @GetMapping("/{jobId}/result")
+    public ResponseEntity<Object> getResult(@PathVariable String jobId) {
+        JobService.JobStatus job = jobService.getJob(jobId);
+        if (job == null || !JobService.STATE_SUCCEEDED.equals(job.getState())) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(jobService.getResult(jobId));
+    }
+
+    /**
+     * POST /api/jobs/{jobId}/cancel
+     * Cancel a queued or running job
+     */
+    @PostMapping("/{jobId}/cancel")
+    public ResponseEntity<JobService.JobStatus> cancel(@PathVariable String jobId) {
+        JobService.JobStatus job = jobService.cancel(jobId);
+        if (job != null) {
+            return ResponseEntity.ok(job);
+        }
+        return ResponseEntity.notFound().build();
+    }
+}
@@ -1,14 +1,20 @@
 package com.cardcollection.controller;
 
 import com.cardcollection.model.PriceHistory;
+import com.cardcollection.service.ExportService;
+import com.cardcollection.service.JobService;
 import com.cardcollection.service.PriceService;
+import com.cardcollection.service.PriceStreamService;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
-import com.cardcollection.model.Card;
-import com.cardcollection.service.CardService;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/prices")
@@ -16,11 +22,14 @@ import java.util.List;
 public class PriceController {
 
     private final PriceService priceService;
-    private final CardService cardService;  // Add this line
+    private final PriceStreamService priceStreamService;
+    private final ExportService exportService;
 
-    public PriceController(PriceService priceService, CardService cardService) {  // Add cardService parameter
+    public PriceController(PriceService priceService, PriceStreamService priceStreamService,
+                           ExportService exportService) {
         this.priceService = priceService;
-        this.cardService = cardService;  // Add this line
+        this.priceStreamService = priceStreamService;
+        this.exportService = exportService;
     }
 
     /**
@@ -71,6 +80,34 @@ public class PriceController {
         }
     }
 
+    /**
+     * GET /api/prices/card/{cardId}/export?format=csv|ndjson&startTime=&endTime=&gzip=false
+     * Full (or ranged) price history, compacted aggregates included, streamed page by page
+     */
+    @GetMapping("/card/{cardId}/export")
+    public ResponseEntity<StreamingResponseBody> exportCardPriceHistory(
+            @PathVariable String cardId,
+            @RequestParam(defaultValue = "csv") String format,
+            @RequestParam(required = false) Long startTime,
+            @RequestParam(required = false) Long endTime,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        try {
+            ExportService.Format exportFormat = ExportService.Format.fromParam(format);
+            StreamingResponseBody body = out ->
+                exportService.exportPriceHistory(cardId, startTime, endTime, exportFormat, gzip, out);
+            return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, exportFormat.contentType(gzip))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                    "attachment; filename=\"" + exportFormat.fileName("prices-" + cardId, gzip) + "\"")
+                .body(body);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     /**
      * GET /api/prices/card/{cardId}/latest
      * Get latest price for a card
@@ -89,6 +126,19 @@ public class PriceController {
         }
     }
 
+    /**
+     * GET /api/prices/stream?cardIds=a,b,c
+     * Server-Sent Events stream of "price" events for the given cards
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamPrices(@RequestParam List<String> cardIds) {
+        try {
+            return ResponseEntity.ok(priceStreamService.subscribe(cardIds));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * GET /api/prices/card/{cardId}/change
      * Get price change over X days
@@ -195,62 +245,19 @@ public class PriceController {
     
     /**
      * GET /api/prices/test/add-history-all
-     * Test endpoint - add 30 days of price history for ALL cards
+     * Test endpoint - add 30 days of price history for ALL cards.
+     * Runs as a background job; poll /api/jobs/{jobId} for progress.
      */
     @GetMapping("/test/add-history-all")
-    public ResponseEntity<String> testAddPriceHistoryForAllCards() {
+    public ResponseEntity<JobService.JobStatus> testAddPriceHistoryForAllCards() {
         try {
-            // Get all cards
-            List<Card> allCards = cardService.getAllCards();
-            
-            if (allCards.isEmpty()) {
-                return ResponseEntity.ok("No cards found");
-            }
-            
-            long now = System.currentTimeMillis();
-            long oneDay = 24 * 60 * 60 * 1000L;
-            int totalPointsAdded = 0;
-            
-            // For each card, add 31 price points
-            for (Card card : allCards) {
-                String cardId = card.getId();
-                
-                // Use current price as base, or default to $20-$100 random
-                double basePrice = card.getCurrentPrice() != null ? 
-                    card.getCurrentPrice() : 
-                    (20.0 + Math.random() * 80.0);
-                
-                // Add 31 days of price history
-                for (int i = 30; i >= 0; i--) {
-                    PriceHistory priceHistory = new PriceHistory();
-                    priceHistory.setCardId(cardId);
-                    
-                    // Simulate price fluctuation
-                    double fluctuation = (Math.random() - 0.5) * (basePrice * 0.2); // +/- 20%
-                    double trendIncrease = (30 - i) * (basePrice * 0.01); // Gradual 1% increase per day
-                    
-                    priceHistory.setPrice(basePrice + fluctuation + trendIncrease);
-                    priceHistory.setCondition("Near Mint");
-                    priceHistory.setSource("simulated");
-                    priceHistory.setCurrency("USD");
-                    priceHistory.setTimestamp(now - (i * oneDay));
-                    
-                    priceService.addPricePoint(priceHistory);
-                    totalPointsAdded++;
-                }
-                
-                // Update card's current price
-                priceService.updateCardCurrentPrice(cardId);
-            }
-            
-            return ResponseEntity.ok(
-                "✅ Added price history for " + allCards.size() + " cards (" + 
-                totalPointsAdded + " total price points)"
-            );
+            JobService.JobStatus job = priceService.submitSimulatedHistoryForAllCards();
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
         } catch (Exception e) {
             e.printStackTrace();
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Error: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
-}
\ No newline at end of file
+}
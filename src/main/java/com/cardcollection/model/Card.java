@@ -47,4 +47,5 @@ public class Card {
     // Metadata
     private Long createdAt;
     private Long updatedAt;
+    private String contentHash;     // Hash of the catalog fields (not price / metadata), set by sync
 }
\ No newline at end of file
@@ -16,7 +16,9 @@ public class CollectionItem {
     // Collection-specific fields
     private Integer quantity;        // How many copies
     private String condition;        // Mint, Near Mint, Excellent, Good, Poor
-    private Double purchasePrice;    // What they paid for it
+    private Double purchasePrice;    // What they paid per copy (average of purchaseTotal when merged)
+    private Double purchaseTotal;    // Sum paid for the copies with a known price
+    private Integer pricedQuantity;  // Copies counted in purchaseTotal
     private String purchaseCurrency; // USD, EUR, etc.
     private Long dateAcquired;       // When they got it
     private String notes;            // Personal notes
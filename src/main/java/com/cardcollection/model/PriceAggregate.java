@@ -0,0 +1,32 @@
+package com.cardcollection.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceAggregate {
+    private String id;
+    private String cardId;           // Which card
+    private String condition;        // Mint, Near Mint, etc.
+    private String currency;         // USD, EUR, etc.
+    private String granularity;      // DAILY, WEEKLY
+    private Long bucketStart;        // Start of the day/week (UTC)
+    private Long bucketEnd;          // Exclusive end of the bucket
+
+    // OHLC over the compacted points
+    private Double open;
+    private Double high;
+    private Double low;
+    private Double close;
+    private Long openTimestamp;      // Timestamp of the first point (to merge partial buckets)
+    private Long closeTimestamp;     // Timestamp of the last point
+    private Double sum;              // Sum of prices, so averages can be merged
+    private Long count;              // Number of raw points folded in
+
+    // Metadata
+    private Long createdAt;
+    private Long updatedAt;
+}
@@ -0,0 +1,25 @@
+package com.cardcollection.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceAlert {
+    private String id;
+    private String userId;           // Who gets notified
+    private String cardId;           // Which card to watch
+    private String type;             // BELOW, ABOVE, CHANGE_PERCENT
+    private Double threshold;        // Price for BELOW/ABOVE, percent for CHANGE_PERCENT
+    private Integer windowHours;     // Look-back window for CHANGE_PERCENT (default 24)
+    private Boolean active;          // Cleared once the alert fires
+
+    // Set when the alert fires
+    private Long triggeredAt;
+    private Double triggeredPrice;
+
+    // Metadata
+    private Long createdAt;
+}
@@ -0,0 +1,443 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.PriceAlert;
+import com.cardcollection.model.PriceHistory;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Price alerts evaluated on ingestion.
+ *
+ * Active alerts are indexed per card in threshold-sorted maps, so a tick only
+ * walks the sub-range of thresholds between the previous and the new price
+ * (or, for percent alerts, the thresholds at or below the observed move).
+ * Cards without alerts cost a single map lookup.
+ *
+ * Every node keeps the index in sync with a snapshot listener on the active
+ * alerts, so alerts created, deleted or fired on another node show up here
+ * too. Fired alerts are marked inactive one by one in transactions that only
+ * succeed while the alert is still active, so an alert deleted meanwhile or
+ * fired by another node is not delivered again; the rest are handed to the
+ * AlertSink beans on a separate thread.
+ */
+@Service
+public class AlertService implements PriceIngestionListener {
+
+    public static final String TYPE_BELOW = "BELOW";
+    public static final String TYPE_ABOVE = "ABOVE";
+    public static final String TYPE_CHANGE_PERCENT = "CHANGE_PERCENT";
+
+    private static final String COLLECTION_NAME = "alerts";
+    private static final int DEFAULT_WINDOW_HOURS = 24;
+    private static final long ONE_HOUR = 60 * 60 * 1000L;
+    private static final long RELISTEN_DELAY_MS = 5000L;
+
+    private final Firestore firestore;
+    private final FirestoreCallPolicy callPolicy;
+    private final PriceService priceService;
+    private final List<AlertSink> sinks;
+    private final Map<String, CardAlerts> alertsByCard = new ConcurrentHashMap<>();
+    private final ExecutorService notifier = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "price-alerts");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ScheduledExecutorService relistener = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "price-alerts-listener");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile ListenerRegistration registration;
+    private volatile boolean stopped;
+
+    public AlertService(Firestore firestore, FirestoreCallPolicy callPolicy, PriceService priceService,
+                        List<AlertSink> sinks) {
+        this.firestore = firestore;
+        this.callPolicy = callPolicy;
+        this.priceService = priceService;
+        this.sinks = sinks;
+    }
+
+    /**
+     * Load every active alert into the in-memory index and keep following
+     * changes: the first snapshot adds them all, later ones apply alerts
+     * created, changed, deleted or fired on any node
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void loadActiveAlerts() {
+        if (stopped) {
+            return;
+        }
+        boolean[] initial = { true };
+        registration = firestore
+            .collection(COLLECTION_NAME)
+            .whereEqualTo("active", true)
+            .addSnapshotListener((snapshot, error) -> {
+                if (error != null || snapshot == null) {
+                    // The listener is closed after an error; start a new one (which re-reads everything)
+                    System.err.println("❌ Price alert listener failed, restarting: "
+                        + (error != null ? error.getMessage() : "no snapshot"));
+                    relisten();
+                    return;
+                }
+                for (DocumentChange change : snapshot.getDocumentChanges()) {
+                    PriceAlert alert = change.getDocument().toObject(PriceAlert.class);
+                    alert.setId(change.getDocument().getId());
+                    if (change.getType() == DocumentChange.Type.REMOVED) {
+                        unindex(alert);
+                    } else {
+                        index(alert);
+                    }
+                }
+                if (initial[0]) {
+                    // After a restart of the listener: drop alerts deleted or fired while it was down
+                    initial[0] = false;
+                    Set<String> active = new HashSet<>();
+                    snapshot.getDocuments().forEach(doc -> active.add(doc.getId()));
+                    alertsByCard.values().forEach(cardAlerts -> cardAlerts.retain(active));
+                    System.out.println("✅ Loaded " + snapshot.size() + " active price alerts");
+                }
+            });
+    }
+
+    /**
+     * Register a new alert
+     */
+    public PriceAlert createAlert(PriceAlert alert) throws ExecutionException, InterruptedException {
+        if (alert.getCardId() == null || alert.getThreshold() == null || alert.getType() == null) {
+            throw new IllegalArgumentException("cardId, type and threshold are required");
+        }
+        alert.setType(alert.getType().toUpperCase());
+        if (!List.of(TYPE_BELOW, TYPE_ABOVE, TYPE_CHANGE_PERCENT).contains(alert.getType())) {
+            throw new IllegalArgumentException("Unknown alert type: " + alert.getType());
+        }
+        if (TYPE_CHANGE_PERCENT.equals(alert.getType()) && alert.getWindowHours() == null) {
+            alert.setWindowHours(DEFAULT_WINDOW_HOURS);
+        }
+        if (alert.getId() == null || alert.getId().isEmpty()) {
+            alert.setId(UUID.randomUUID().toString());
+        }
+        alert.setActive(true);
+        alert.setTriggeredAt(null);
+        alert.setTriggeredPrice(null);
+        alert.setCreatedAt(System.currentTimeMillis());
+
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(alert.getId());
+        callPolicy.write("alert-write", () -> docRef.set(alert));
+        index(alert);
+
+        System.out.println("✅ Price alert created: " + alert.getType() + " " + alert.getThreshold()
+            + " on card " + alert.getCardId() + " for user " + alert.getUserId());
+        return alert;
+    }
+
+    /**
+     * Get all alerts (active and fired) for a user
+     */
+    public List<PriceAlert> getUserAlerts(String userId) throws ExecutionException, InterruptedException {
+        Query query = firestore
+            .collection(COLLECTION_NAME)
+            .whereEqualTo("userId", userId);
+        QuerySnapshot querySnapshot = callPolicy.read("alert-list", query::get);
+
+        return querySnapshot.getDocuments().stream()
+            .map(doc -> doc.toObject(PriceAlert.class))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Delete an alert
+     */
+    public void deleteAlert(String alertId) throws ExecutionException, InterruptedException {
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(alertId);
+        DocumentSnapshot document = callPolicy.hedgedRead("alert-get", docRef::get);
+        if (document.exists()) {
+            unindex(document.toObject(PriceAlert.class));
+        }
+        callPolicy.write("alert-delete", docRef::delete);
+        System.out.println("✅ Price alert deleted: " + alertId);
+    }
+
+    @Override
+    public void onPricePoint(PriceHistory pricePoint) {
+        CardAlerts cardAlerts = alertsByCard.get(pricePoint.getCardId());
+        if (cardAlerts == null || pricePoint.getPrice() == null || pricePoint.getTimestamp() == null) {
+            return;
+        }
+
+        List<AlertSink.Notification> fired = cardAlerts.evaluate(pricePoint);
+        if (!fired.isEmpty()) {
+            notifier.execute(() -> deliver(fired));
+        }
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        stopped = true;
+        if (registration != null) {
+            registration.remove();
+        }
+        relistener.shutdownNow();
+        notifier.shutdown();
+    }
+
+    private synchronized void relisten() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        if (!stopped) {
+            relistener.schedule(this::loadActiveAlerts, RELISTEN_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void index(PriceAlert alert) {
+        if (!Boolean.TRUE.equals(alert.getActive())) {
+            return;
+        }
+        CardAlerts cardAlerts = alertsByCard.computeIfAbsent(alert.getCardId(), cardId -> {
+            CardAlerts created = new CardAlerts();
+            PriceHistory latest = priceService.getKnownLatestPrice(cardId);
+            if (latest != null) {
+                created.lastPrice = latest.getPrice();
+                created.lastTimestamp = latest.getTimestamp();
+            }
+            return created;
+        });
+        cardAlerts.add(alert);
+    }
+
+    private void unindex(PriceAlert alert) {
+        CardAlerts cardAlerts = alertsByCard.get(alert.getCardId());
+        if (cardAlerts != null) {
+            cardAlerts.remove(alert.getId());
+        }
+    }
+
+    /**
+     * Mark each fired alert inactive, then hand the ones this node actually
+     * fired to every sink. An alert that no longer exists or that another
+     * node fired first is skipped. If the write fails the alert is still
+     * active in Firestore, so it goes back into the index undelivered and
+     * fires at the next crossing instead of being delivered twice.
+     */
+    private void deliver(List<AlertSink.Notification> fired) {
+        // Started together, so not through FirestoreCallPolicy, which waits on one call at a time
+        List<ApiFuture<Boolean>> claims = new ArrayList<>(fired.size());
+        for (AlertSink.Notification notification : fired) {
+            claims.add(claim(notification.getAlert()));
+        }
+
+        for (int i = 0; i < fired.size(); i++) {
+            AlertSink.Notification notification = fired.get(i);
+            try {
+                if (!claims.get(i).get()) {
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                System.err.println("❌ Failed to persist fired alert " + notification.getAlert().getId()
+                    + ", re-armed: " + e.getMessage());
+                rearm(notification.getAlert());
+                continue;
+            }
+            for (AlertSink sink : sinks) {
+                try {
+                    sink.deliver(notification);
+                } catch (Exception e) {
+                    System.err.println("❌ Alert sink failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Put back a fired alert whose claim failed, as it still is in Firestore
+     */
+    private void rearm(PriceAlert alert) {
+        alert.setActive(true);
+        alert.setTriggeredAt(null);
+        alert.setTriggeredPrice(null);
+        index(alert);
+    }
+
+    /**
+     * Mark a fired alert inactive if it still exists and is active;
+     * completes with false if it was deleted or already fired
+     */
+    private ApiFuture<Boolean> claim(PriceAlert alert) {
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(alert.getId());
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot current = transaction.get(docRef).get();
+            if (!current.exists() || !Boolean.TRUE.equals(current.getBoolean("active"))) {
+                return false;
+            }
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("active", false);
+            updates.put("triggeredAt", alert.getTriggeredAt());
+            updates.put("triggeredPrice", alert.getTriggeredPrice());
+            transaction.update(docRef, updates);
+            return true;
+        });
+    }
+
+    /**
+     * All active alerts of one card, sorted by threshold
+     */
+    private static class CardAlerts {
+        private final NavigableMap<Double, List<PriceAlert>> below = new TreeMap<>();
+        private final NavigableMap<Double, List<PriceAlert>> above = new TreeMap<>();
+        private final Map<Integer, NavigableMap<Double, List<PriceAlert>>> changeByWindow = new HashMap<>();
+        private final Map<String, PriceAlert> byId = new HashMap<>();
+        private final Deque<double[]> recentTicks = new ArrayDeque<>();   // {timestamp, price}
+        private Double lastPrice;
+        private Long lastTimestamp;
+
+        private synchronized void add(PriceAlert alert) {
+            // Indexed locally on create and again when the listener sees it
+            remove(alert.getId());
+            byId.put(alert.getId(), alert);
+            mapFor(alert).computeIfAbsent(alert.getThreshold(), t -> new ArrayList<>()).add(alert);
+        }
+
+        private synchronized void remove(String alertId) {
+            PriceAlert alert = byId.remove(alertId);
+            if (alert == null) {
+                return;
+            }
+            NavigableMap<Double, List<PriceAlert>> map = mapFor(alert);
+            List<PriceAlert> atThreshold = map.get(alert.getThreshold());
+            if (atThreshold != null) {
+                atThreshold.removeIf(a -> a.getId().equals(alertId));
+                if (atThreshold.isEmpty()) {
+                    map.remove(alert.getThreshold());
+                }
+            }
+            if (map.isEmpty() && TYPE_CHANGE_PERCENT.equals(alert.getType())) {
+                changeByWindow.values().removeIf(Map::isEmpty);
+            }
+        }
+
+        private synchronized void retain(Set<String> alertIds) {
+            for (String alertId : new ArrayList<>(byId.keySet())) {
+                if (!alertIds.contains(alertId)) {
+                    remove(alertId);
+                }
+            }
+        }
+
+        private synchronized List<AlertSink.Notification> evaluate(PriceHistory tick) {
+            List<AlertSink.Notification> fired = new ArrayList<>();
+            double price = tick.getPrice();
+            long timestamp = tick.getTimestamp();
+
+            // Back-filled history doesn't move the current price
+            if (lastTimestamp != null && timestamp < lastTimestamp) {
+                return fired;
+            }
+            Double previous = lastPrice;
+
+            // BELOW fires when the price drops under the threshold: thresholds in (price, previous]
+            NavigableMap<Double, List<PriceAlert>> crossedDown = previous == null
+                ? below.tailMap(price, false)
+                : below.subMap(price, false, Math.max(previous, price), true);
+            fire(crossedDown, tick, previous, "dropped below", fired);
+
+            // ABOVE fires when the price rises over the threshold: thresholds in [previous, price)
+            NavigableMap<Double, List<PriceAlert>> crossedUp = previous == null
+                ? above.headMap(price, false)
+                : above.subMap(Math.min(previous, price), true, price, false);
+            fire(crossedUp, tick, previous, "rose above", fired);
+
+            if (!changeByWindow.isEmpty()) {
+                int maxWindow = changeByWindow.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+                recentTicks.addLast(new double[] {timestamp, price});
+                while (!recentTicks.isEmpty() && recentTicks.peekFirst()[0] < timestamp - maxWindow * ONE_HOUR) {
+                    recentTicks.removeFirst();
+                }
+
+                for (Map.Entry<Integer, NavigableMap<Double, List<PriceAlert>>> entry : changeByWindow.entrySet()) {
+                    long windowStart = timestamp - entry.getKey() * ONE_HOUR;
+                    Double reference = null;
+                    for (double[] recent : recentTicks) {
+                        if (recent[0] >= windowStart) {
+                            reference = recent[1];
+                            break;
+                        }
+                    }
+                    if (reference == null || reference == 0.0) {
+                        continue;
+                    }
+                    double movePercent = Math.abs(price - reference) / reference * 100;
+                    fire(entry.getValue().headMap(movePercent, true), tick, reference,
+                        "moved " + String.format("%.1f", movePercent) + "% in " + entry.getKey() + "h to", fired);
+                }
+                // Windows whose last alert just fired would otherwise be scanned on every tick
+                changeByWindow.values().removeIf(Map::isEmpty);
+            }
+
+            lastPrice = price;
+            lastTimestamp = timestamp;
+            return fired;
+        }
+
+        /**
+         * Fire and remove every alert in the crossed threshold range
+         */
+        private void fire(NavigableMap<Double, List<PriceAlert>> crossed, PriceHistory tick, Double reference,
+                          String verb, List<AlertSink.Notification> fired) {
+            if (crossed.isEmpty()) {
+                return;
+            }
+            for (List<PriceAlert> alerts : crossed.values()) {
+                for (PriceAlert alert : alerts) {
+                    byId.remove(alert.getId());
+                    alert.setActive(false);
+                    alert.setTriggeredAt(tick.getTimestamp());
+                    alert.setTriggeredPrice(tick.getPrice());
+                    fired.add(new AlertSink.Notification(alert, tick, reference,
+                        "Card " + alert.getCardId() + " " + verb + " $" + String.format("%.2f", tick.getPrice())
+                            + " (threshold " + alert.getThreshold() + ")"));
+                }
+            }
+            crossed.clear();
+        }
+
+        private NavigableMap<Double, List<PriceAlert>> mapFor(PriceAlert alert) {
+            switch (alert.getType()) {
+                case TYPE_BELOW:
+                    return below;
+                case TYPE_ABOVE:
+                    return above;
+                default:
+                    int window = alert.getWindowHours() != null ? alert.getWindowHours() : DEFAULT_WINDOW_HOURS;
+                    return changeByWindow.computeIfAbsent(window, w -> new TreeMap<>());
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.PriceAlert;
+import com.cardcollection.model.PriceHistory;
+
+/**
+ * Delivery channel for fired price alerts (log, push, email, ...).
+ * Every AlertSink bean receives every notification.
+ */
+public interface AlertSink {
+
+    void deliver(Notification notification);
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    class Notification {
+        private PriceAlert alert;
+        private PriceHistory pricePoint;     // The tick that crossed the threshold
+        private Double referencePrice;       // Previous price, or window start for CHANGE_PERCENT
+        private String message;
+    }
+}
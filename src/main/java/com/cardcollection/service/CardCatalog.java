@@ -0,0 +1,377 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import com.google.cloud.firestore.*;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * In-memory mirror of the cards collection with sorted numeric indexes.
+ *
+ * Loaded with one full scan on first use, then kept current by CardService /
+ * PriceService writes on this node and by a periodic catch-up on writes made
+ * by other nodes: cards by updatedAt, deletes by their tombstones (see
+ * ChangeLog). The catch-up watermark only moves with the catch-up itself and
+ * lags by sync.clock-skew-ms, like a change feed token. CardChangeListener
+ * beans are told about every change.
+ */
+@Component
+public class CardCatalog {
+
+    private static final String COLLECTION_NAME = "cards";
+
+    private final Firestore firestore;
+    private final ChangeLog changeLog;
+    private final FirestoreCallPolicy callPolicy;
+    private final ObjectProvider<CardChangeListener> changeListeners;
+    private final Map<String, Card> cards = new ConcurrentHashMap<>();
+    private final Map<NumericField, NumericIndex> indexes = new EnumMap<>(NumericField.class);
+    private volatile boolean loaded = false;
+    private volatile long lastSyncedAt = 0L;
+
+    public CardCatalog(Firestore firestore, ChangeLog changeLog, FirestoreCallPolicy callPolicy,
+                       ObjectProvider<CardChangeListener> changeListeners) {
+        this.firestore = firestore;
+        this.changeLog = changeLog;
+        this.callPolicy = callPolicy;
+        this.changeListeners = changeListeners;
+        for (NumericField field : NumericField.values()) {
+            indexes.put(field, new NumericIndex());
+        }
+    }
+
+    /**
+     * Load the whole catalog from Firestore if it hasn't been loaded yet
+     */
+    public void ensureLoaded() throws ExecutionException, InterruptedException {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            reload();
+        }
+    }
+
+    /**
+     * Full scan; the watermark is taken before it, so writes made during the scan are caught up later
+     */
+    private synchronized void reload() throws ExecutionException, InterruptedException {
+        ChangeLog.Window window = changeLog.open(0L);
+        CollectionReference collection = firestore.collection(COLLECTION_NAME);
+        QuerySnapshot querySnapshot = callPolicy.read("card-list", collection::get);
+        load(querySnapshot.getDocuments().stream()
+            .map(doc -> doc.toObject(Card.class))
+            .toList(), window.next());
+        System.out.println("✅ Card catalog loaded: " + cards.size() + " cards");
+    }
+
+    /**
+     * Replace the catalog contents and rebuild every index
+     */
+    private synchronized void load(Collection<Card> allCards, long syncedAt) {
+        cards.clear();
+        for (Card card : allCards) {
+            cards.put(card.getId(), card);
+        }
+        for (NumericField field : NumericField.values()) {
+            rebuildIndex(field);
+        }
+        lastSyncedAt = syncedAt;
+        loaded = true;
+        notifyListeners(CardChangeListener::onCatalogReloaded);
+    }
+
+    /**
+     * Restore the catalog from a snapshot: cards plus indexes already sorted
+     * by (value, id), so nothing has to be re-sorted at boot. Does nothing
+     * (and returns false) if the catalog was already loaded from Firestore,
+     * which is newer.
+     */
+    public synchronized boolean restore(Collection<Card> allCards, Map<NumericField, IndexEntries> savedIndexes,
+                                        long syncedAt) {
+        if (loaded) {
+            return false;
+        }
+        cards.clear();
+        for (Card card : allCards) {
+            cards.put(card.getId(), card);
+        }
+        for (NumericField field : NumericField.values()) {
+            IndexEntries entries = savedIndexes.get(field);
+            if (entries != null) {
+                indexes.get(field).restore(entries.values, entries.ids);
+            } else {
+                rebuildIndex(field);
+            }
+        }
+        lastSyncedAt = syncedAt;
+        loaded = true;
+        notifyListeners(CardChangeListener::onCatalogReloaded);
+        return true;
+    }
+
+    /**
+     * Cards, watermark and every index copied under the catalog lock, so a
+     * snapshot never pairs an index with cards from another moment
+     */
+    public synchronized CatalogExport exportSnapshot() {
+        Map<NumericField, IndexEntries> exported = new EnumMap<>(NumericField.class);
+        for (NumericField field : NumericField.values()) {
+            exported.put(field, exportIndex(field));
+        }
+        return new CatalogExport(new ArrayList<>(cards.values()), lastSyncedAt, exported);
+    }
+
+    /**
+     * Copy of one index in sorted order; callers hold the catalog lock
+     */
+    private IndexEntries exportIndex(NumericField field) {
+        NumericIndex.Slice slice = indexes.get(field).all();
+        double[] values = new double[slice.size()];
+        String[] ids = new String[slice.size()];
+        for (int i = 0; i < slice.size(); i++) {
+            values[i] = slice.valueAt(i, false);
+            ids[i] = slice.idAt(i, false);
+        }
+        return new IndexEntries(values, ids);
+    }
+
+    /**
+     * Add or replace a card and move it within every index
+     */
+    public synchronized void put(Card card) {
+        Card previous = cards.put(card.getId(), card);
+        if (!loaded) {
+            return;
+        }
+        for (NumericField field : NumericField.values()) {
+            indexes.get(field).update(card.getId(),
+                previous != null ? field.valueOf(previous) : null,
+                field.valueOf(card));
+        }
+        notifyListeners(listener -> listener.onCardChanged(card));
+    }
+
+    /**
+     * Drop a card from the catalog and every index
+     */
+    public synchronized void remove(String id) {
+        Card previous = cards.remove(id);
+        if (previous == null || !loaded) {
+            return;
+        }
+        for (NumericField field : NumericField.values()) {
+            indexes.get(field).update(id, field.valueOf(previous), null);
+        }
+        notifyListeners(listener -> listener.onCardRemoved(id));
+    }
+
+    /**
+     * Pull cards written and deleted by other nodes since the last sync
+     */
+    @Scheduled(fixedDelayString = "${cards.catalog.refresh-interval-ms:30000}")
+    public void refresh() {
+        if (!loaded) {
+            return;
+        }
+        try {
+            ChangeLog.Window window = changeLog.open(lastSyncedAt);
+            if (window.isReset()) {
+                // Tombstones that old are purged, so only a full scan can find the deletes
+                reload();
+                return;
+            }
+            Query query = firestore
+                .collection(COLLECTION_NAME)
+                .whereGreaterThanOrEqualTo("updatedAt", window.since());
+            QuerySnapshot querySnapshot = callPolicy.read("card-changes", query::get);
+            Set<String> deleted = changeLog.deletedSince(ChangeLog.KIND_CARD, null, window.since());
+
+            Set<String> live = new HashSet<>();
+            for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+                Card card = doc.toObject(Card.class);
+                live.add(card.getId());
+                // The skew overlap returns recent cards again; only newer versions are applied
+                Card cached = cards.get(card.getId());
+                if (cached == null || (!cached.equals(card) && !isOlder(card, cached))) {
+                    put(card);
+                }
+            }
+            for (String id : deleted) {
+                // A live document means the card was re-created after the delete
+                if (!live.contains(id)) {
+                    remove(id);
+                }
+            }
+            lastSyncedAt = window.next();
+        } catch (Exception e) {
+            System.err.println("❌ Card catalog refresh failed: " + e.getMessage());
+        }
+    }
+
+    private static boolean isOlder(Card card, Card cached) {
+        return card.getUpdatedAt() != null && cached.getUpdatedAt() != null
+            && card.getUpdatedAt() < cached.getUpdatedAt();
+    }
+
+    public Card get(String id) {
+        return cards.get(id);
+    }
+
+    public Collection<Card> all() {
+        return cards.values();
+    }
+
+    public int size() {
+        return cards.size();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    public long getLastSyncedAt() {
+        return lastSyncedAt;
+    }
+
+    private void notifyListeners(Consumer<CardChangeListener> event) {
+        changeListeners.orderedStream().forEach(listener -> {
+            try {
+                event.accept(listener);
+            } catch (Exception e) {
+                System.err.println("❌ Card change listener failed: " + e.getMessage());
+            }
+        });
+    }
+
+    NumericIndex index(NumericField field) {
+        return indexes.get(field);
+    }
+
+    private void rebuildIndex(NumericField field) {
+        List<Card> withValue = cards.values().stream()
+            .filter(card -> field.valueOf(card) != null)
+            .toList();
+
+        double[] values = new double[withValue.size()];
+        String[] ids = new String[withValue.size()];
+        for (int i = 0; i < withValue.size(); i++) {
+            values[i] = field.valueOf(withValue.get(i));
+            ids[i] = withValue.get(i).getId();
+        }
+        indexes.get(field).rebuild(values, ids);
+    }
+
+    /**
+     * Sorted (value, id) pairs of one numeric index
+     */
+    public static final class IndexEntries {
+        private final double[] values;
+        private final String[] ids;
+
+        public IndexEntries(double[] values, String[] ids) {
+            this.values = values;
+            this.ids = ids;
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+
+        public String[] getIds() {
+            return ids;
+        }
+    }
+
+    /**
+     * Consistent copy of the catalog taken by exportSnapshot
+     */
+    public static final class CatalogExport {
+        private final List<Card> cards;
+        private final long lastSyncedAt;
+        private final Map<NumericField, IndexEntries> indexes;
+
+        public CatalogExport(List<Card> cards, long lastSyncedAt, Map<NumericField, IndexEntries> indexes) {
+            this.cards = cards;
+            this.lastSyncedAt = lastSyncedAt;
+            this.indexes = indexes;
+        }
+
+        public List<Card> getCards() {
+            return cards;
+        }
+
+        public long getLastSyncedAt() {
+            return lastSyncedAt;
+        }
+
+        public Map<NumericField, IndexEntries> getIndexes() {
+            return indexes;
+        }
+    }
+
+    /**
+     * Numeric card attributes that can be range-filtered and sorted on
+     */
+    public enum NumericField {
+        COST("cost", card -> toDouble(card.getCost())),
+        POWER("power", card -> toDouble(card.getPower())),
+        COUNTER("counter", card -> toDouble(card.getCounter())),
+        RATING("rating", card -> toDouble(card.getRating())),
+        CURRENT_PRICE("currentPrice", Card::getCurrentPrice);
+
+        private final String fieldName;
+        private final Function<Card, Double> extractor;
+
+        NumericField(String fieldName, Function<Card, Double> extractor) {
+            this.fieldName = fieldName;
+            this.extractor = extractor;
+        }
+
+        public String getFieldName() {
+            return fieldName;
+        }
+
+        public Double valueOf(Card card) {
+            return extractor.apply(card);
+        }
+
+        /**
+         * Resolve a request parameter ("power", "price", "currentPrice", ...)
+         */
+        public static NumericField fromParam(String param) {
+            if (param == null) {
+                return null;
+            }
+            if (param.equalsIgnoreCase("price")) {
+                return CURRENT_PRICE;
+            }
+            for (NumericField field : values()) {
+                if (field.fieldName.equalsIgnoreCase(param)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+
+        private static Double toDouble(Integer value) {
+            return value != null ? value.doubleValue() : null;
+        }
+    }
+}
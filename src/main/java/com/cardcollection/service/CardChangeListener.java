@@ -0,0 +1,23 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+
+/**
+ * Hook called by CardCatalog whenever its contents change. Implementations
+ * run on the mutating thread while the catalog is locked, so they must be
+ * quick (hand real work to their own thread) and must not throw.
+ */
+public interface CardChangeListener {
+
+    /**
+     * A card was added or replaced (including price-only updates)
+     */
+    void onCardChanged(Card card);
+
+    void onCardRemoved(String cardId);
+
+    /**
+     * The whole catalog was (re)loaded from Firestore or a snapshot
+     */
+    void onCatalogReloaded();
+}
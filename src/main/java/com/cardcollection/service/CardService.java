@@ -2,13 +2,29 @@ package com.cardcollection.service;
 
 import com.cardcollection.model.Card;
 import com.google.cloud.firestore.*;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -17,10 +33,31 @@ import java.util.ArrayList;
 public class CardService {
 
     private final Firestore firestore;
+    private final CardCatalog cardCatalog;
+    private final RequestCoalescer coalescer;
+    private final JobService jobService;
+    private final FirestoreCallPolicy callPolicy;
+    private final ChangeLog changeLog;
+    private final int maxBatchIds;
     private static final String COLLECTION_NAME = "cards";
+    private static final int MAX_BATCH_WRITES = 500;
+    static final String CARD_GROUP = "card";
 
-    public CardService(Firestore firestore) {
+    // Stable property and map-key order, so equal content always serializes (and hashes) the same
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+        .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+        .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    public CardService(Firestore firestore, CardCatalog cardCatalog, RequestCoalescer coalescer,
+                       JobService jobService, FirestoreCallPolicy callPolicy, ChangeLog changeLog,
+                       @Value("${cards.batch.max-ids:500}") int maxBatchIds) {
         this.firestore = firestore;
+        this.cardCatalog = cardCatalog;
+        this.coalescer = coalescer;
+        this.jobService = jobService;
+        this.callPolicy = callPolicy;
+        this.changeLog = changeLog;
+        this.maxBatchIds = maxBatchIds;
     }
 
     /**
@@ -34,44 +71,153 @@ public class CardService {
         long now = System.currentTimeMillis();
         card.setCreatedAt(now);
         card.setUpdatedAt(now);
+        card.setContentHash(contentHash(card));
 
         DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(card.getId());
-        docRef.set(card).get();
+        callPolicy.write("card-write", () -> docRef.set(card));
+        cardCatalog.put(card);
+        coalescer.invalidate(CARD_GROUP, card.getId());
 
         System.out.println("✅ Card created: " + card.getName() + " (ID: " + card.getId() + ")");
         return card;
     }
 
     /**
-     * Get card by ID
+     * Create many cards with one Firestore batch commit per 500 cards
+     */
+    public List<Card> createCards(List<Card> cards) throws ExecutionException, InterruptedException {
+        long now = System.currentTimeMillis();
+        for (int start = 0; start < cards.size(); start += MAX_BATCH_WRITES) {
+            List<Card> chunk = cards.subList(start, Math.min(start + MAX_BATCH_WRITES, cards.size()));
+            WriteBatch batch = firestore.batch();
+            for (Card card : chunk) {
+                if (card.getId() == null || card.getId().isEmpty()) {
+                    card.setId(UUID.randomUUID().toString());
+                }
+                card.setCreatedAt(now);
+                card.setUpdatedAt(now);
+                card.setContentHash(contentHash(card));
+                batch.set(firestore.collection(COLLECTION_NAME).document(card.getId()), card);
+            }
+            callPolicy.write("card-write", batch::commit);
+
+            for (Card card : chunk) {
+                cardCatalog.put(card);
+                coalescer.invalidate(CARD_GROUP, card.getId());
+            }
+        }
+        return cards;
+    }
+
+    /**
+     * Get card by ID. The result is the caller's own copy: the coalesced
+     * value is shared with concurrent and recent readers.
      */
     public Card getCardById(String id) throws ExecutionException, InterruptedException {
-        DocumentSnapshot document = firestore
-            .collection(COLLECTION_NAME)
-            .document(id)
-            .get()
-            .get();
+        Card shared = coalescer.execute(CARD_GROUP, id, () -> {
+            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
+            DocumentSnapshot document = callPolicy.hedgedRead("card-get", docRef::get);
+
+            if (document.exists()) {
+                return document.toObject(Card.class);
+            }
+            return null;
+        });
+        return shared != null ? copyOf(shared) : null;
+    }
 
-        if (document.exists()) {
-            return document.toObject(Card.class);
+    /**
+     * Get many cards by ID in one round trip. Cards already in the catalog are
+     * served from memory, the rest come from a single Firestore getAll.
+     * Results keep the request order; unknown IDs are reported as missing.
+     */
+    public BatchResult getCardsByIds(List<String> ids) throws ExecutionException, InterruptedException {
+        if (ids.size() > maxBatchIds) {
+            throw new IllegalArgumentException("At most " + maxBatchIds + " card IDs per batch");
+        }
+
+        Map<String, Card> found = findCardsByIds(ids);
+
+        List<Card> cards = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            Card card = found.get(id);
+            if (card != null) {
+                cards.add(card);
+            } else {
+                missing.add(id);
+            }
         }
-        return null;
+        return new BatchResult(cards, missing);
+    }
+
+    /**
+     * Resolve card IDs to cards (catalog first, then one getAll for the rest).
+     * Unknown IDs are simply absent from the returned map. Catalog cards are
+     * copied, so callers may change what they get.
+     */
+    public Map<String, Card> findCardsByIds(Collection<String> ids)
+            throws ExecutionException, InterruptedException {
+
+        Map<String, Card> found = new HashMap<>();
+        List<DocumentReference> toFetch = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            if (id == null || id.isEmpty()) {
+                continue;
+            }
+            Card cached = cardCatalog.get(id);
+            if (cached != null) {
+                found.put(id, copyOf(cached));
+            } else {
+                toFetch.add(firestore.collection(COLLECTION_NAME).document(id));
+            }
+        }
+
+        if (!toFetch.isEmpty()) {
+            DocumentReference[] refs = toFetch.toArray(new DocumentReference[0]);
+            List<DocumentSnapshot> documents = callPolicy.read("card-get-all", () -> firestore.getAll(refs));
+
+            for (DocumentSnapshot document : documents) {
+                if (document.exists()) {
+                    found.put(document.getId(), document.toObject(Card.class));
+                }
+            }
+        }
+        return found;
     }
 
     /**
      * Get all cards
      */
     public List<Card> getAllCards() throws ExecutionException, InterruptedException {
-        QuerySnapshot querySnapshot = firestore
-            .collection(COLLECTION_NAME)
-            .get()
-            .get();
+        QuerySnapshot querySnapshot = callPolicy.read("card-list", () -> firestore.collection(COLLECTION_NAME).get());
 
         return querySnapshot.getDocuments().stream()
             .map(doc -> doc.toObject(Card.class))
             .collect(Collectors.toList());
     }
 
+    /**
+     * Cards created or updated since the sync token and IDs of cards deleted
+     * since then (see ChangeLog); without a token, or with one older than the
+     * tombstone retention, the whole catalog with reset set
+     */
+    public ChangeLog.ChangeSet<Card> getChanges(String token) throws ExecutionException, InterruptedException {
+        ChangeLog.Window window = changeLog.open(token);
+        Query query = window.isReset()
+            ? firestore.collection(COLLECTION_NAME)
+            : firestore.collection(COLLECTION_NAME).whereGreaterThanOrEqualTo("updatedAt", window.since());
+        QuerySnapshot querySnapshot = callPolicy.read("card-changes", query::get);
+
+        List<Card> changed = querySnapshot.getDocuments().stream()
+            .map(doc -> doc.toObject(Card.class))
+            .collect(Collectors.toList());
+        Set<String> deleted = window.isReset()
+            ? Set.of()
+            : changeLog.deletedSince(ChangeLog.KIND_CARD, null, window.since());
+        return changeLog.changeSet(window, changed, Card::getId, deleted);
+    }
+
     /**
      * Search cards with filters
      */
@@ -88,7 +234,8 @@ public class CardService {
             firestoreQuery = firestoreQuery.whereEqualTo("cardType", cardType);
         }
 
-        QuerySnapshot querySnapshot = firestoreQuery.get().get();
+        Query filtered = firestoreQuery;
+        QuerySnapshot querySnapshot = callPolicy.read("card-search", filtered::get);
         List<Card> cards = querySnapshot.getDocuments().stream()
             .map(doc -> doc.toObject(Card.class))
             .collect(Collectors.toList());
@@ -103,11 +250,113 @@ public class CardService {
         return cards;
     }
 
+    /**
+     * Search the in-memory catalog with range filters, sorting and pagination.
+     * The most selective range predicate drives the scan through its sorted
+     * index; every other predicate is checked only against those candidates.
+     */
+    public SearchResult searchCards(SearchCriteria criteria)
+            throws ExecutionException, InterruptedException {
+
+        cardCatalog.ensureLoaded();
+
+        List<RangeFilter> ranges = criteria.rangeFilters();
+        CardCatalog.NumericField sortField = CardCatalog.NumericField.fromParam(criteria.getSortBy());
+        boolean descending = "desc".equalsIgnoreCase(criteria.getSortDir());
+
+        // Pick the narrowest index slice as the candidate set
+        RangeFilter driver = null;
+        NumericIndex.Slice driverSlice = null;
+        for (RangeFilter range : ranges) {
+            NumericIndex.Slice slice = cardCatalog.index(range.field).range(range.min, range.max);
+            if (driverSlice == null || slice.size() < driverSlice.size()) {
+                driver = range;
+                driverSlice = slice;
+            }
+        }
+
+        List<Card> matches = new ArrayList<>();
+        if (driverSlice != null) {
+            boolean walkDescending = driver.field == sortField && descending;
+            for (int i = 0; i < driverSlice.size(); i++) {
+                Card card = cardCatalog.get(driverSlice.idAt(i, walkDescending));
+                if (card != null && matches(card, criteria, ranges, driver)) {
+                    matches.add(card);
+                }
+            }
+        } else {
+            for (Card card : cardCatalog.all()) {
+                if (matches(card, criteria, ranges, null)) {
+                    matches.add(card);
+                }
+            }
+        }
+
+        // Results walked through the sort field's own index are already ordered
+        boolean alreadySorted = driver != null && driver.field == sortField;
+        if (!alreadySorted) {
+            Comparator<Card> comparator = comparatorFor(criteria.getSortBy(), sortField, descending);
+            if (comparator != null) {
+                matches.sort(comparator);
+            }
+        }
+
+        int total = matches.size();
+        int size = criteria.getSize() != null && criteria.getSize() > 0 ? criteria.getSize() : total;
+        int page = criteria.getPage() != null && criteria.getPage() > 0 ? criteria.getPage() : 0;
+        long from = Math.min((long) page * size, total);
+        int to = (int) Math.min(from + size, total);
+
+        return new SearchResult(new ArrayList<>(matches.subList((int) from, to)), total, page, size);
+    }
+
+    private boolean matches(Card card, SearchCriteria criteria, List<RangeFilter> ranges, RangeFilter skip) {
+        if (criteria.getGame() != null && !criteria.getGame().isEmpty()
+                && !criteria.getGame().equals(card.getGame())) {
+            return false;
+        }
+        if (criteria.getCardType() != null && !criteria.getCardType().isEmpty()
+                && !criteria.getCardType().equals(card.getCardType())) {
+            return false;
+        }
+        if (criteria.getQuery() != null && !criteria.getQuery().isEmpty()
+                && (card.getName() == null
+                    || !card.getName().toLowerCase().contains(criteria.getQuery().toLowerCase()))) {
+            return false;
+        }
+        for (RangeFilter range : ranges) {
+            if (range != skip && !range.test(card)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Comparator<Card> comparatorFor(String sortBy, CardCatalog.NumericField sortField, boolean descending) {
+        Comparator<Card> comparator;
+        if (sortField != null) {
+            Comparator<Double> values = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+            comparator = Comparator.comparing(sortField::valueOf, Comparator.nullsLast(values));
+        } else if ("name".equalsIgnoreCase(sortBy)) {
+            Comparator<String> names = descending ? Comparator.reverseOrder() : Comparator.naturalOrder();
+            comparator = Comparator.comparing(Card::getName, Comparator.nullsLast(names));
+        } else {
+            return null;
+        }
+        // Ties go the same way as the sort, like a descending walk of the (value, id) index
+        return comparator.thenComparing(Card::getId, descending ? Comparator.reverseOrder() : Comparator.naturalOrder());
+    }
+
     /**
      * Delete card by ID
      */
     public void deleteCard(String id) throws ExecutionException, InterruptedException {
-        firestore.collection(COLLECTION_NAME).document(id).delete().get();
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(id);
+        callPolicy.write("card-delete", () -> changeLog
+            .recordDeletion(firestore.batch().delete(docRef), ChangeLog.KIND_CARD, id, null, System.currentTimeMillis())
+            .commit());
+        cardCatalog.remove(id);
+        coalescer.invalidate(CARD_GROUP, id);
         System.out.println("✅ Card deleted: " + id);
     }
     
@@ -115,6 +364,237 @@ public class CardService {
      * Bulk import cards from JSON file
      */
     public List<Card> importCardsFromJson() throws IOException, ExecutionException, InterruptedException {
+        Card[] cardsArray = readCardsJson();
+        
+        List<Card> importedCards = new ArrayList<>();
+        
+        // Save each card to Firestore
+        for (Card card : cardsArray) {
+            Card created = createCard(card);
+            importedCards.add(created);
+        }
+        
+        System.out.println("✅ Successfully imported " + importedCards.size() + " cards!");
+        return importedCards;
+    }
+
+    /**
+     * Bulk import cards from JSON file as a background job, in batched writes
+     */
+    public JobService.JobStatus submitImportFromJson() {
+        return jobService.submit("card-import", context -> {
+            Card[] cardsArray = readCardsJson();
+            context.setTotal(cardsArray.length);
+
+            int imported = 0;
+            for (int start = 0; start < cardsArray.length; start += MAX_BATCH_WRITES) {
+                context.checkCancelled();
+                List<Card> chunk = List.of(cardsArray).subList(start, Math.min(start + MAX_BATCH_WRITES, cardsArray.length));
+                createCards(chunk);
+                imported += chunk.size();
+                context.advance(chunk.size());
+            }
+
+            System.out.println("✅ Successfully imported " + imported + " cards!");
+            Map<String, Object> result = new HashMap<>();
+            result.put("count", imported);
+            return result;
+        });
+    }
+
+    /**
+     * Sync the catalog with cards.json as a background job (see syncCards)
+     */
+    public JobService.JobStatus submitSyncFromJson(boolean deleteMissing) {
+        return jobService.submit("card-sync", context -> {
+            List<Card> cards = List.of(readCardsJson());
+            return syncCards(cards, deleteMissing, context);
+        });
+    }
+
+    /**
+     * Sync the catalog with the given cards as a background job (see syncCards)
+     */
+    public JobService.JobStatus submitSync(List<Card> cards, boolean deleteMissing) {
+        List<Card> snapshot = new ArrayList<>(cards);
+        return jobService.submit("card-sync", context -> syncCards(snapshot, deleteMissing, context));
+    }
+
+    /**
+     * Make the stored catalog match the incoming cards, writing only what changed.
+     *
+     * Every incoming card gets the deterministic ID game-setCode-number and a
+     * content hash; only cards that are new or whose hash differs from the
+     * stored one are written (keeping the stored price and createdAt). With
+     * deleteMissing, stored cards of the same game + set code that aren't in
+     * the input (including duplicates left by earlier UUID imports) are deleted.
+     * Reads are proportional to the input, writes to the difference.
+     */
+    SyncResult syncCards(List<Card> incoming, boolean deleteMissing, JobService.JobContext context)
+            throws ExecutionException, InterruptedException {
+
+        Map<String, Card> byId = new LinkedHashMap<>();
+        int skipped = 0;
+        for (Card card : incoming) {
+            String id = catalogId(card);
+            if (id == null) {
+                skipped++;
+                continue;
+            }
+            card.setId(id);
+            card.setContentHash(contentHash(card));
+            byId.put(id, card);     // Last one wins if the input repeats a card
+        }
+        context.setTotal(byId.size());
+
+        SyncResult result = new SyncResult();
+        result.setSkipped(skipped);
+        List<Card> cards = new ArrayList<>(byId.values());
+        long now = System.currentTimeMillis();
+        for (int start = 0; start < cards.size(); start += MAX_BATCH_WRITES) {
+            context.checkCancelled();
+            List<Card> chunk = cards.subList(start, Math.min(start + MAX_BATCH_WRITES, cards.size()));
+            DocumentReference[] refs = chunk.stream()
+                .map(card -> firestore.collection(COLLECTION_NAME).document(card.getId()))
+                .toArray(DocumentReference[]::new);
+            List<DocumentSnapshot> stored = callPolicy.read("card-get-all", () -> firestore.getAll(refs));
+
+            WriteBatch batch = firestore.batch();
+            List<Card> written = new ArrayList<>();
+            for (int i = 0; i < chunk.size(); i++) {
+                Card card = chunk.get(i);
+                Card existing = stored.get(i).exists() ? stored.get(i).toObject(Card.class) : null;
+                if (existing != null) {
+                    String storedHash = existing.getContentHash() != null ? existing.getContentHash() : contentHash(existing);
+                    if (storedHash.equals(card.getContentHash())) {
+                        result.setUnchanged(result.getUnchanged() + 1);
+                        continue;
+                    }
+                    // Prices are maintained by PriceService, not by the catalog source
+                    card.setCurrentPrice(existing.getCurrentPrice());
+                    card.setCreatedAt(existing.getCreatedAt() != null ? existing.getCreatedAt() : now);
+                    result.setUpdated(result.getUpdated() + 1);
+                } else {
+                    card.setCreatedAt(now);
+                    result.setCreated(result.getCreated() + 1);
+                }
+                card.setUpdatedAt(now);
+                batch.set(refs[i], card);
+                written.add(card);
+            }
+            if (!written.isEmpty()) {
+                callPolicy.write("card-write", batch::commit);
+                for (Card card : written) {
+                    cardCatalog.put(card);
+                    coalescer.invalidate(CARD_GROUP, card.getId());
+                }
+            }
+            context.advance(chunk.size());
+        }
+
+        if (deleteMissing) {
+            result.setDeleted(deleteMissing(byId));
+        }
+
+        System.out.println("✅ Card sync: " + result.getCreated() + " created, " + result.getUpdated() + " updated, "
+            + result.getUnchanged() + " unchanged, " + result.getDeleted() + " deleted, " + skipped + " skipped");
+        return result;
+    }
+
+    /**
+     * Delete stored cards of the synced game + set codes that the input no longer contains
+     */
+    private int deleteMissing(Map<String, Card> incomingById) throws ExecutionException, InterruptedException {
+        Set<List<String>> scopes = new LinkedHashSet<>();
+        for (Card card : incomingById.values()) {
+            scopes.add(List.of(card.getGame(), card.getSetCode()));
+        }
+
+        List<String> toDelete = new ArrayList<>();
+        for (List<String> scope : scopes) {
+            Query query = firestore
+                .collection(COLLECTION_NAME)
+                .whereEqualTo("game", scope.get(0))
+                .whereEqualTo("setCode", scope.get(1))
+                .select("setCode");
+            QuerySnapshot querySnapshot = callPolicy.read("card-list", query::get);
+            for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+                if (!incomingById.containsKey(doc.getId())) {
+                    toDelete.add(doc.getId());
+                }
+            }
+        }
+
+        // Each delete is two writes: the card and its tombstone
+        int chunkSize = MAX_BATCH_WRITES / 2;
+        for (int start = 0; start < toDelete.size(); start += chunkSize) {
+            List<String> chunk = toDelete.subList(start, Math.min(start + chunkSize, toDelete.size()));
+            long now = System.currentTimeMillis();
+            WriteBatch batch = firestore.batch();
+            for (String id : chunk) {
+                batch.delete(firestore.collection(COLLECTION_NAME).document(id));
+                changeLog.recordDeletion(batch, ChangeLog.KIND_CARD, id, null, now);
+            }
+            callPolicy.write("card-delete", batch::commit);
+            for (String id : chunk) {
+                cardCatalog.remove(id);
+                coalescer.invalidate(CARD_GROUP, id);
+            }
+        }
+        return toDelete.size();
+    }
+
+    /**
+     * Deterministic document ID from game, set code and collector number,
+     * or null if any of them is missing
+     */
+    static String catalogId(Card card) {
+        if (isBlank(card.getGame()) || isBlank(card.getSetCode()) || isBlank(card.getNumber())) {
+            return null;
+        }
+        String key = card.getGame().trim() + "-" + card.getSetCode().trim() + "-" + card.getNumber().trim();
+        return key.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    /**
+     * Copy of a shared card (catalog or coalesced) that the caller may change
+     */
+    static Card copyOf(Card card) {
+        Card copy = new Card();
+        BeanUtils.copyProperties(card, copy);
+        if (card.getTags() != null) {
+            copy.setTags(new ArrayList<>(card.getTags()));
+        }
+        if (card.getAttributes() != null) {
+            copy.setAttributes(new HashMap<>(card.getAttributes()));
+        }
+        return copy;
+    }
+
+    /**
+     * SHA-256 over the card's catalog content; ID, price and metadata are left out
+     */
+    static String contentHash(Card card) {
+        Card content = new Card();
+        BeanUtils.copyProperties(card, content);
+        content.setId(null);
+        content.setCurrentPrice(null);
+        content.setCreatedAt(null);
+        content.setUpdatedAt(null);
+        content.setContentHash(null);
+        try {
+            byte[] canonical = CANONICAL_MAPPER.writeValueAsString(content).getBytes(StandardCharsets.UTF_8);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(canonical));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot hash card " + card.getId(), e);
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private Card[] readCardsJson() throws IOException {
         // Read JSON file from resources
         InputStream inputStream = getClass()
             .getClassLoader()
@@ -126,17 +606,106 @@ public class CardService {
         
         // Parse JSON to Card objects
         ObjectMapper objectMapper = new ObjectMapper();
-        Card[] cardsArray = objectMapper.readValue(inputStream, Card[].class);
-        
-        List<Card> importedCards = new ArrayList<>();
-        
-        // Save each card to Firestore
-        for (Card card : cardsArray) {
-            Card created = createCard(card);
-            importedCards.add(created);
+        return objectMapper.readValue(inputStream, Card[].class);
+    }
+
+    /**
+     * Search parameters for the indexed catalog search
+     */
+    @lombok.Data
+    public static class SearchCriteria {
+        private String query;
+        private String game;
+        private String cardType;
+        private Double minCost;
+        private Double maxCost;
+        private Double minPower;
+        private Double maxPower;
+        private Double minCounter;
+        private Double maxCounter;
+        private Double minRating;
+        private Double maxRating;
+        private Double minPrice;
+        private Double maxPrice;
+        private String sortBy;          // cost, power, counter, rating, price, name
+        private String sortDir;         // asc, desc
+        private Integer page;
+        private Integer size;
+
+        /**
+         * True if anything beyond the legacy query/game/cardType filters is set
+         */
+        public boolean needsIndex() {
+            return !rangeFilters().isEmpty() || sortBy != null || page != null || size != null;
+        }
+
+        List<RangeFilter> rangeFilters() {
+            List<RangeFilter> ranges = new ArrayList<>();
+            addRange(ranges, CardCatalog.NumericField.COST, minCost, maxCost);
+            addRange(ranges, CardCatalog.NumericField.POWER, minPower, maxPower);
+            addRange(ranges, CardCatalog.NumericField.COUNTER, minCounter, maxCounter);
+            addRange(ranges, CardCatalog.NumericField.RATING, minRating, maxRating);
+            addRange(ranges, CardCatalog.NumericField.CURRENT_PRICE, minPrice, maxPrice);
+            return ranges;
+        }
+
+        private static void addRange(List<RangeFilter> ranges, CardCatalog.NumericField field, Double min, Double max) {
+            if (min != null || max != null) {
+                ranges.add(new RangeFilter(field, min, max));
+            }
+        }
+    }
+
+    /**
+     * One page of search results plus the total match count
+     */
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class SearchResult {
+        private List<Card> cards;
+        private int total;
+        private int page;
+        private int size;
+    }
+
+    /**
+     * Cards found by a multi-get, in request order, plus the IDs that don't exist
+     */
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class BatchResult {
+        private List<Card> cards;
+        private List<String> missing;
+    }
+
+    /**
+     * Outcome of a catalog sync
+     */
+    @lombok.Data
+    public static class SyncResult {
+        private int created;
+        private int updated;
+        private int unchanged;
+        private int deleted;
+        private int skipped;             // No game, set code or number, so no stable ID
+    }
+
+    private static class RangeFilter {
+        private final CardCatalog.NumericField field;
+        private final Double min;
+        private final Double max;
+
+        private RangeFilter(CardCatalog.NumericField field, Double min, Double max) {
+            this.field = field;
+            this.min = min;
+            this.max = max;
+        }
+
+        private boolean test(Card card) {
+            Double value = field.valueOf(card);
+            return value != null
+                && (min == null || value >= min)
+                && (max == null || value <= max);
         }
-        
-        System.out.println("✅ Successfully imported " + importedCards.size() + " cards!");
-        return importedCards;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,310 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import com.cardcollection.model.PriceHistory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned binary snapshot of the card catalog, its numeric indexes and the
+ * latest known prices, so a fresh node can start warm instead of scanning
+ * Firestore.
+ *
+ * Layout (big-endian):
+ *   int magic, int version, long createdAt, long catalogSyncedAt,
+ *   int cardCount, cardCount x (bytes cardJson),
+ *   int indexCount, indexCount x (string field, int n, n x (int cardOrdinal, double value)),
+ *   int priceCount, priceCount x (string id, string cardId, double price, long timestamp,
+ *                                 string currency, string condition, string source, long createdAt),
+ *   long crc32 of everything before it.
+ * Strings and byte blobs are an int length (-1 for null) followed by UTF-8 bytes.
+ *
+ * The snapshot is restored once all singletons exist and before the context
+ * finishes starting, so ApplicationReadyEvent listeners (suggestions,
+ * similarity) and the schedulers find the catalog already loaded instead of
+ * each starting a full Firestore scan.
+ */
+@Service
+public class CatalogSnapshotService implements SmartInitializingSingleton {
+
+    private static final int MAGIC = 0x43435348; // "CCSH"
+    private static final int VERSION = 1;
+
+    private final CardCatalog cardCatalog;
+    private final PriceService priceService;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final boolean enabled;
+    private final Path snapshotPath;
+    private final long catchUpSkewMs;
+
+    public CatalogSnapshotService(CardCatalog cardCatalog, PriceService priceService,
+                                  @Value("${snapshot.enabled:true}") boolean enabled,
+                                  @Value("${snapshot.path:data/catalog.snapshot}") String snapshotPath,
+                                  @Value("${snapshot.catch-up-skew-ms:5000}") long catchUpSkewMs) {
+        this.cardCatalog = cardCatalog;
+        this.priceService = priceService;
+        this.enabled = enabled;
+        this.snapshotPath = Paths.get(snapshotPath);
+        this.catchUpSkewMs = catchUpSkewMs;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        loadOnStartup();
+    }
+
+    /**
+     * Load the snapshot at boot, then catch up from Firestore: cards written
+     * and deleted since the snapshot (CardCatalog.refresh replays the card
+     * tombstones) and price points by createdAt
+     */
+    public void loadOnStartup() {
+        if (!enabled || !Files.exists(snapshotPath)) {
+            return;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            SnapshotInfo info = load();
+            long loadedIn = System.currentTimeMillis() - start;
+
+            cardCatalog.refresh();
+            int prices = priceService.catchUpLatestPrices(info.createdAt - catchUpSkewMs);
+
+            System.out.println("✅ Catalog snapshot loaded in " + loadedIn + "ms: " + info.cards + " cards, "
+                + info.prices + " prices (" + prices + " price points caught up)");
+        } catch (Exception e) {
+            System.err.println("❌ Catalog snapshot load failed, falling back to Firestore: " + e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${snapshot.interval-ms:300000}",
+               initialDelayString = "${snapshot.interval-ms:300000}")
+    public void writePeriodically() {
+        writeQuietly();
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() {
+        writeQuietly();
+    }
+
+    /**
+     * Write the snapshot to a temp file and atomically move it into place
+     */
+    public synchronized SnapshotInfo write() throws IOException {
+        long createdAt = System.currentTimeMillis();
+        CardCatalog.CatalogExport export = cardCatalog.exportSnapshot();
+        List<Card> cards = export.getCards();
+        List<PriceHistory> prices = new ArrayList<>(priceService.getKnownLatestPrices());
+
+        Map<String, Integer> ordinals = new HashMap<>();
+        for (int i = 0; i < cards.size(); i++) {
+            ordinals.put(cards.get(i).getId(), i);
+        }
+
+        if (snapshotPath.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(snapshotPath.toAbsolutePath().getParent());
+        }
+        Path tempPath = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fileOut = new FileOutputStream(tempPath.toFile());
+             DataOutputStream out = new DataOutputStream(
+                 new CheckedOutputStream(new BufferedOutputStream(fileOut, 1 << 16), crc))) {
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(createdAt);
+            out.writeLong(export.getLastSyncedAt());
+
+            out.writeInt(cards.size());
+            for (Card card : cards) {
+                writeBytes(out, objectMapper.writeValueAsBytes(card));
+            }
+
+            CardCatalog.NumericField[] fields = CardCatalog.NumericField.values();
+            out.writeInt(fields.length);
+            for (CardCatalog.NumericField field : fields) {
+                // Taken in the same export as the cards, so every id has an ordinal
+                CardCatalog.IndexEntries entries = export.getIndexes().get(field);
+                writeString(out, field.name());
+                out.writeInt(entries.getIds().length);
+                for (int i = 0; i < entries.getIds().length; i++) {
+                    out.writeInt(ordinals.get(entries.getIds()[i]));
+                    out.writeDouble(entries.getValues()[i]);
+                }
+            }
+
+            out.writeInt(prices.size());
+            for (PriceHistory price : prices) {
+                writeString(out, price.getId());
+                writeString(out, price.getCardId());
+                out.writeDouble(price.getPrice() != null ? price.getPrice() : Double.NaN);
+                out.writeLong(price.getTimestamp() != null ? price.getTimestamp() : 0L);
+                writeString(out, price.getCurrency());
+                writeString(out, price.getCondition());
+                writeString(out, price.getSource());
+                out.writeLong(price.getCreatedAt() != null ? price.getCreatedAt() : 0L);
+            }
+
+            out.flush();
+            // The checksum itself is written straight to the file, outside the CRC
+            new DataOutputStream(fileOut).writeLong(crc.getValue());
+            fileOut.getChannel().force(true);
+        }
+
+        Files.move(tempPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new SnapshotInfo(createdAt, cards.size(), prices.size(), Files.size(snapshotPath));
+    }
+
+    /**
+     * Memory-map the snapshot file and restore the catalog and latest prices
+     */
+    public SnapshotInfo load() throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.limit() < Long.BYTES) {
+                throw new IOException("Snapshot file is truncated");
+            }
+            ByteBuffer body = buffer.duplicate();
+            body.limit(buffer.limit() - Long.BYTES);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            if (crc.getValue() != buffer.getLong(buffer.limit() - Long.BYTES)) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            buffer.position(0);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a catalog snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long createdAt = buffer.getLong();
+            long catalogSyncedAt = buffer.getLong();
+
+            int cardCount = buffer.getInt();
+            List<Card> cards = new ArrayList<>(cardCount);
+            for (int i = 0; i < cardCount; i++) {
+                cards.add(objectMapper.readValue(readBytes(buffer), Card.class));
+            }
+
+            Map<CardCatalog.NumericField, CardCatalog.IndexEntries> indexes = new EnumMap<>(CardCatalog.NumericField.class);
+            int indexCount = buffer.getInt();
+            for (int i = 0; i < indexCount; i++) {
+                String fieldName = readString(buffer);
+                int count = buffer.getInt();
+                double[] values = new double[count];
+                String[] ids = new String[count];
+                for (int j = 0; j < count; j++) {
+                    ids[j] = cards.get(buffer.getInt()).getId();
+                    values[j] = buffer.getDouble();
+                }
+                try {
+                    indexes.put(CardCatalog.NumericField.valueOf(fieldName), new CardCatalog.IndexEntries(values, ids));
+                } catch (IllegalArgumentException e) {
+                    // Index for a field this version no longer has; it's rebuilt from the cards instead
+                }
+            }
+
+            int priceCount = buffer.getInt();
+            List<PriceHistory> prices = new ArrayList<>(priceCount);
+            for (int i = 0; i < priceCount; i++) {
+                PriceHistory price = new PriceHistory();
+                price.setId(readString(buffer));
+                price.setCardId(readString(buffer));
+                double value = buffer.getDouble();
+                price.setPrice(Double.isNaN(value) ? null : value);
+                price.setTimestamp(buffer.getLong());
+                price.setCurrency(readString(buffer));
+                price.setCondition(readString(buffer));
+                price.setSource(readString(buffer));
+                price.setCreatedAt(buffer.getLong());
+                prices.add(price);
+            }
+
+            if (!cardCatalog.restore(cards, indexes, catalogSyncedAt)) {
+                System.out.println("⏭️ Catalog already loaded from Firestore, snapshot cards ignored");
+            }
+            priceService.restoreLatestPrices(prices);
+            return new SnapshotInfo(createdAt, cards.size(), prices.size(), channel.size());
+        }
+    }
+
+    private void writeQuietly() {
+        if (!enabled || !cardCatalog.isLoaded()) {
+            return;
+        }
+        try {
+            SnapshotInfo info = write();
+            System.out.println("✅ Catalog snapshot written: " + info.cards + " cards, " + info.bytes + " bytes");
+        } catch (Exception e) {
+            System.err.println("❌ Catalog snapshot write failed: " + e.getMessage());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = readBytes(buffer);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class SnapshotInfo {
+        private long createdAt;
+        private int cards;
+        private int prices;
+        private long bytes;
+    }
+}
@@ -0,0 +1,267 @@
+package com.cardcollection.service;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.Transaction;
+import com.google.cloud.firestore.WriteBatch;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Change feed support for client-side caches of the catalog and of collections.
+ *
+ * Changed documents are found by their updatedAt. Deletes leave no document
+ * behind, so every delete of a card or collection item also writes a
+ * tombstone (in the same batch) that the feed returns as a deleted ID.
+ *
+ * A sync token is the time the previous sync may be resumed from. Documents
+ * are matched with updatedAt >= token and the next token is held back by
+ * sync.clock-skew-ms, so a write stamped by a node with a slightly slow clock
+ * (or still in flight when the query ran) is picked up by the next sync
+ * rather than missed; the price is that the last few seconds of changes may
+ * be returned twice, which is harmless because clients apply them as upserts.
+ * Tombstones are kept for sync.tombstone-retention-days: an older token (or
+ * none) gets a full snapshot with reset set, and the client replaces its cache.
+ */
+@Component
+public class ChangeLog {
+
+    public static final String KIND_CARD = "card";
+    public static final String KIND_COLLECTION_ITEM = "collection-item";
+    private static final String TOMBSTONES = "tombstones";
+    private static final int MAX_BATCH_WRITES = 500;
+    private static final long ONE_DAY = 24L * 60 * 60 * 1000;
+
+    private final Firestore firestore;
+    private final FirestoreCallPolicy callPolicy;
+    private final long clockSkewMs;
+    private final long retentionMs;
+    private final int maxPurgeBatches;
+
+    public ChangeLog(Firestore firestore, FirestoreCallPolicy callPolicy,
+                     @Value("${sync.clock-skew-ms:5000}") long clockSkewMs,
+                     @Value("${sync.tombstone-retention-days:30}") int retentionDays,
+                     @Value("${sync.purge.max-batches-per-run:20}") int maxPurgeBatches) {
+        this.firestore = firestore;
+        this.callPolicy = callPolicy;
+        this.clockSkewMs = Math.max(clockSkewMs, 0L);
+        this.retentionMs = retentionDays * ONE_DAY;
+        this.maxPurgeBatches = maxPurgeBatches;
+    }
+
+    /**
+     * Add a tombstone for a deleted document to the batch that deletes it
+     * (userId only for collection items). Counts as one more batch write.
+     */
+    WriteBatch recordDeletion(WriteBatch batch, String kind, String id, String userId, long now) {
+        return batch.set(tombstoneRef(kind, id), tombstone(kind, id, userId, now));
+    }
+
+    /**
+     * Same, for a delete made in a transaction
+     */
+    Transaction recordDeletion(Transaction transaction, String kind, String id, String userId, long now) {
+        return transaction.set(tombstoneRef(kind, id), tombstone(kind, id, userId, now));
+    }
+
+    /**
+     * One tombstone per entity: deleting a re-created document again just moves it forward
+     */
+    private DocumentReference tombstoneRef(String kind, String id) {
+        return firestore.collection(TOMBSTONES).document(kind + "_" + id);
+    }
+
+    private static Map<String, Object> tombstone(String kind, String id, String userId, long now) {
+        Map<String, Object> tombstone = new HashMap<>();
+        tombstone.put("kind", kind);
+        tombstone.put("entityId", id);
+        tombstone.put("userId", userId);
+        tombstone.put("deletedAt", now);
+        return tombstone;
+    }
+
+    /**
+     * Parse a client's sync token and fix the token the response will carry.
+     * Call before querying, so the next token never runs ahead of the reads.
+     */
+    Window open(String token) {
+        long since = 0L;
+        if (token != null && !token.isBlank()) {
+            try {
+                since = Long.parseLong(token.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid sync token: " + token);
+            }
+            if (since < 0 || since > System.currentTimeMillis() + clockSkewMs) {
+                throw new IllegalArgumentException("Invalid sync token: " + token);
+            }
+        }
+        return open(since);
+    }
+
+    /**
+     * Same for a watermark kept on this node (0 for none), e.g. CardCatalog's
+     */
+    Window open(long since) {
+        long now = System.currentTimeMillis();
+        boolean reset = since <= 0L || since < now - retentionMs;
+        long next = Math.max(reset ? 0L : since, now - clockSkewMs);
+        return new Window(reset ? 0L : since, reset, next);
+    }
+
+    /**
+     * IDs of entities of a kind deleted at or after since; userId narrows
+     * collection item tombstones to one user
+     */
+    Set<String> deletedSince(String kind, String userId, long since)
+            throws ExecutionException, InterruptedException {
+
+        Query query = userId != null
+            ? firestore.collection(TOMBSTONES).whereEqualTo("userId", userId)
+            : firestore.collection(TOMBSTONES).whereEqualTo("kind", kind);
+        Query filtered = query.whereGreaterThanOrEqualTo("deletedAt", since);
+        QuerySnapshot querySnapshot = callPolicy.read("tombstone-list", filtered::get);
+
+        Set<String> ids = new HashSet<>();
+        for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+            if (kind.equals(doc.getString("kind"))) {
+                ids.add(doc.getString("entityId"));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Users whose entities of a kind (collection items) were deleted at or after since
+     */
+    Set<String> usersWithDeletionsSince(String kind, long since) throws ExecutionException, InterruptedException {
+        Query query = firestore.collection(TOMBSTONES)
+            .whereEqualTo("kind", kind)
+            .whereGreaterThanOrEqualTo("deletedAt", since);
+        QuerySnapshot querySnapshot = callPolicy.read("tombstone-list", query::get);
+
+        Set<String> userIds = new HashSet<>();
+        for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+            String userId = doc.getString("userId");
+            if (userId != null) {
+                userIds.add(userId);
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * Assemble the response. A tombstone whose entity is in the changed list
+     * was re-created afterwards (or deleted after this query read it, in which
+     * case the next sync reports it), so only the live document is returned.
+     */
+    <T> ChangeSet<T> changeSet(Window window, List<T> changed, Function<T, String> idOf, Set<String> deleted) {
+        List<String> deletedIds = new ArrayList<>(deleted);
+        if (!deletedIds.isEmpty()) {
+            Set<String> live = new HashSet<>();
+            for (T item : changed) {
+                live.add(idOf.apply(item));
+            }
+            deletedIds.removeIf(live::contains);
+        }
+        return new ChangeSet<>(changed, deletedIds, String.valueOf(window.next), window.reset);
+    }
+
+    /**
+     * Delete tombstones past the retention window; tokens that old get a reset anyway
+     */
+    @Scheduled(fixedDelayString = "${sync.purge.interval-ms:3600000}",
+               initialDelayString = "${sync.purge.initial-delay-ms:900000}")
+    public void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        int purged = 0;
+        try {
+            for (int batches = 0; batches < maxPurgeBatches; batches++) {
+                List<DocumentReference> page = expiredPage(cutoff);
+                if (page.isEmpty()) {
+                    break;
+                }
+                WriteBatch batch = firestore.batch();
+                page.forEach(batch::delete);
+                callPolicy.write("tombstone-purge", batch::commit);
+                purged += page.size();
+                if (page.size() < MAX_BATCH_WRITES) {
+                    break;
+                }
+            }
+            if (purged > 0) {
+                System.out.println("✅ Purged " + purged + " expired tombstones");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("❌ Tombstone purge failed: " + e.getMessage());
+        }
+    }
+
+    private List<DocumentReference> expiredPage(long cutoff) throws ExecutionException, InterruptedException {
+        Query query = firestore
+            .collection(TOMBSTONES)
+            .whereLessThan("deletedAt", cutoff)
+            .limit(MAX_BATCH_WRITES);
+        QuerySnapshot querySnapshot = callPolicy.read("tombstone-purge", query::get);
+        List<DocumentReference> refs = new ArrayList<>();
+        for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+            refs.add(doc.getReference());
+        }
+        return refs;
+    }
+
+    static final class Window {
+        private final long since;
+        private final boolean reset;
+        private final long next;
+
+        private Window(long since, boolean reset, long next) {
+            this.since = since;
+            this.reset = reset;
+            this.next = next;
+        }
+
+        long since() {
+            return since;
+        }
+
+        /**
+         * Where the next sync resumes: since, or now minus the clock skew if later
+         */
+        long next() {
+            return next;
+        }
+
+        boolean isReset() {
+            return reset;
+        }
+    }
+
+    /**
+     * Documents created or updated since the token, IDs deleted since then,
+     * and the token for the next sync
+     */
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class ChangeSet<T> {
+        private List<T> changed;
+        private List<String> deletedIds;
+        private String nextToken;
+        private boolean reset;           // full snapshot: replace the cache instead of applying changes
+    }
+}
@@ -2,81 +2,959 @@ package com.cardcollection.service;
 
 import com.cardcollection.model.Card;
 import com.cardcollection.model.CollectionItem;
+import com.cardcollection.model.PriceHistory;
+import com.google.api.gax.rpc.StatusCode;
 import com.google.cloud.firestore.*;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 
 @Service
-public class CollectionService {
+public class CollectionService implements PriceIngestionListener {
 
     private final Firestore firestore;
     private final CardService cardService;
+    private final CardCatalog cardCatalog;
+    private final PriceService priceService;
+    private final PopularityService popularityService;
+    private final FirestoreCallPolicy callPolicy;
+    private final JobService jobService;
+    private final ChangeLog changeLog;
+    private final PortfolioAggregator aggregator;
+    private final long statsTtlMs;
+    private final long analyticsTtlMs;
+    private final long indexTtlMs;
+    private final int maxIndexedUsers;
+    private final int maxStatsUsers;
+    private final int maxAnalyticsUsers;
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final Map<String, CachedStats> statsCache = new ConcurrentHashMap<>();
+    private final Map<String, UserCollectionIndex> indexCache = new ConcurrentHashMap<>();
+    private final Map<String, CachedAnalytics> analyticsCache = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> analyticsUsersByCard = new ConcurrentHashMap<>();
     private static final String COLLECTION_NAME = "collections";
+    private static final int MAX_BATCH_WRITES = 500;
+    private static final int MIGRATION_PAGE_SIZE = 200;
 
-    public CollectionService(Firestore firestore, CardService cardService) {
+    public CollectionService(Firestore firestore, CardService cardService, CardCatalog cardCatalog,
+                             PriceService priceService, PopularityService popularityService,
+                             FirestoreCallPolicy callPolicy, ChangeLog changeLog, JobService jobService,
+                             @Value("${collections.stats.ttl-ms:30000}") long statsTtlMs,
+                             @Value("${collections.stats.max-users:1000}") int maxStatsUsers,
+                             @Value("${collections.analytics.ttl-ms:300000}") long analyticsTtlMs,
+                             @Value("${collections.analytics.max-users:1000}") int maxAnalyticsUsers,
+                             @Value("${collections.analytics.parallel-threshold:5000}") int parallelThreshold,
+                             @Value("${collections.index.ttl-ms:60000}") long indexTtlMs,
+                             @Value("${collections.index.max-users:1000}") int maxIndexedUsers,
+                             @Value("${collections.page.default-size:50}") int defaultPageSize,
+                             @Value("${collections.page.max-size:500}") int maxPageSize) {
         this.firestore = firestore;
         this.cardService = cardService;
+        this.cardCatalog = cardCatalog;
+        this.priceService = priceService;
+        this.popularityService = popularityService;
+        this.callPolicy = callPolicy;
+        this.changeLog = changeLog;
+        this.jobService = jobService;
+        this.aggregator = new PortfolioAggregator(parallelThreshold);
+        this.statsTtlMs = statsTtlMs;
+        this.analyticsTtlMs = analyticsTtlMs;
+        this.indexTtlMs = indexTtlMs;
+        this.maxIndexedUsers = maxIndexedUsers;
+        this.maxStatsUsers = maxStatsUsers;
+        this.maxAnalyticsUsers = maxAnalyticsUsers;
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
     }
 
+    /**
+     * Add copies of a card. There is one document per user, card, condition
+     * and wishlist flag (see holdingId): the first add creates it, later adds
+     * are merged into it with atomic increments, so concurrent adds need no
+     * read-before-write and can't create duplicate rows.
+     */
     public CollectionItem addToCollection(String userId, CollectionItem item) 
             throws ExecutionException, InterruptedException {
         
-        if (item.getId() == null || item.getId().isEmpty()) {
-            item.setId(UUID.randomUUID().toString());
-        }
-        
-        item.setUserId(userId);
-        
-        long now = System.currentTimeMillis();
-        item.setCreatedAt(now);
-        item.setUpdatedAt(now);
-        
-        if (item.getDateAcquired() == null) {
-            item.setDateAcquired(now);
-        }
-        
         Card card = cardService.getCardById(item.getCardId());
         if (card == null) {
             throw new IllegalArgumentException("Card with ID " + item.getCardId() + " not found!");
         }
         item.setCard(card);
+        long now = System.currentTimeMillis();
+        prepareHolding(userId, item, now);
         
         DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(item.getId());
-        docRef.set(item).get();
+        boolean created = false;
+        for (int attempt = 0; ; attempt++) {
+            try {
+                callPolicy.write("collection-write", () -> docRef.create(item));
+                created = true;
+                break;
+            } catch (ExecutionException e) {
+                if (FirestoreCallPolicy.statusCode(e) != StatusCode.Code.ALREADY_EXISTS) {
+                    throw e;
+                }
+            }
+            try {
+                Map<String, Object> fields = mergeFields(item, now);
+                callPolicy.write("collection-write", () -> docRef.update(fields));
+                break;
+            } catch (ExecutionException e) {
+                // Removed between our create and update: create it again, once
+                if (FirestoreCallPolicy.statusCode(e) != StatusCode.Code.NOT_FOUND || attempt > 0) {
+                    throw e;
+                }
+            }
+        }
+        invalidateUser(userId);
         
         System.out.println("✅ Added to collection: " + card.getName() + " for user " + userId);
+        if (created) {
+            countItem(item);
+            return toItem(item);
+        }
+        CollectionItem merged = getCollectionItemById(item.getId());
+        return merged != null ? merged : item;
+    }
+
+    /**
+     * Add many items for one user, merged into existing holdings like
+     * addToCollection. All referenced cards are resolved in one lookup pass
+     * and items are written in Firestore batches; items that fail validation
+     * or whose batch fails are reported without aborting the rest.
+     */
+    public BatchMutationResult addToCollectionBatch(String userId, List<CollectionItem> items)
+            throws ExecutionException, InterruptedException {
+
+        BatchMutationResult result = new BatchMutationResult();
+        Set<String> cardIds = items.stream()
+            .map(CollectionItem::getCardId)
+            .filter(id -> id != null && !id.isEmpty())
+            .collect(Collectors.toSet());
+        Map<String, Card> cards = cardService.findCardsByIds(cardIds);
+
+        long now = System.currentTimeMillis();
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < items.size(); i++) {
+            CollectionItem item = items.get(i);
+            Card card = item.getCardId() != null ? cards.get(item.getCardId()) : null;
+            if (card == null) {
+                result.fail(i, item.getId(), "Card with ID " + item.getCardId() + " not found!");
+                continue;
+            }
+            item.setCard(card);
+            prepareHolding(userId, item, now);
+            indexes.add(i);
+        }
+
+        for (int start = 0; start < indexes.size(); start += MAX_BATCH_WRITES) {
+            List<Integer> chunk = indexes.subList(start, Math.min(start + MAX_BATCH_WRITES, indexes.size()));
+            for (int attempt = 0; ; attempt++) {
+                List<PendingWrite> writes = holdingWrites(items, chunk, now);
+                WriteBatch batch = firestore.batch();
+                writes.forEach(write -> write.operation.accept(batch));
+                try {
+                    callPolicy.write("collection-batch", batch::commit);
+                    for (PendingWrite write : writes) {
+                        result.getSucceeded().add(write.itemId);
+                        write.afterCommit.run();
+                    }
+                    break;
+                } catch (ExecutionException e) {
+                    StatusCode.Code code = FirestoreCallPolicy.statusCode(e);
+                    if (attempt == 0 && (code == StatusCode.Code.ALREADY_EXISTS || code == StatusCode.Code.NOT_FOUND)) {
+                        continue;   // Raced with another add or remove of the same holding; re-check and retry once
+                    }
+                    for (PendingWrite write : writes) {
+                        result.fail(write.index, write.itemId, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                    }
+                    break;
+                }
+            }
+        }
+        invalidateUser(userId);
+
+        System.out.println("✅ Batch added " + result.getSucceeded().size() + " items for user " + userId
+            + " (" + result.getFailed().size() + " failed)");
+        return result;
+    }
+
+    /**
+     * Update many items for one user. Existing items are read in one getAll
+     * and non-null fields of each patch are applied. Patches of descriptive
+     * fields write just those fields, in Firestore batches. A patch of the
+     * quantity or purchase price recomputes the merge totals, and a patch
+     * that moves a holding merges its totals into another document, so those
+     * are applied in a transaction per item (see patchHolding): writing back
+     * the values read by the getAll would undo adds merged in meanwhile.
+     */
+    public BatchMutationResult updateCollectionBatch(String userId, List<CollectionItem> patches)
+            throws ExecutionException, InterruptedException {
+
+        BatchMutationResult result = new BatchMutationResult();
+        Map<String, CollectionItem> existing = getOwnedItems(userId, patches.stream()
+            .map(CollectionItem::getId)
+            .collect(Collectors.toList()));
+
+        Set<String> newCardIds = new HashSet<>();
+        for (CollectionItem patch : patches) {
+            CollectionItem current = patch.getId() != null ? existing.get(patch.getId()) : null;
+            if (current != null && patch.getCardId() != null && !patch.getCardId().equals(current.getCardId())) {
+                newCardIds.add(patch.getCardId());
+            }
+        }
+        Map<String, Card> cards = newCardIds.isEmpty() ? Map.of() : cardService.findCardsByIds(newCardIds);
+
+        long now = System.currentTimeMillis();
+        List<PendingWrite> writes = new ArrayList<>();
+        List<Integer> transactional = new ArrayList<>();
+        Map<Integer, Card> newCards = new HashMap<>();
+        for (int i = 0; i < patches.size(); i++) {
+            CollectionItem patch = patches.get(i);
+            CollectionItem item = patch.getId() != null ? existing.get(patch.getId()) : null;
+            if (item == null) {
+                result.fail(i, patch.getId(), "Collection item " + patch.getId() + " not found for user " + userId);
+                continue;
+            }
+            CollectionItem before = new CollectionItem();
+            before.setUserId(item.getUserId());
+            before.setCardId(item.getCardId());
+            before.setCondition(item.getCondition());
+            before.setIsWishlist(item.getIsWishlist());
+
+            Card card = null;
+            if (patch.getCardId() != null && !patch.getCardId().equals(item.getCardId())) {
+                card = cards.get(patch.getCardId());
+                if (card == null) {
+                    result.fail(i, patch.getId(), "Card with ID " + patch.getCardId() + " not found!");
+                    continue;
+                }
+                item.setCardId(card.getId());
+                newCards.put(i, card);
+            }
+            applyPatch(item, patch);
+
+            boolean moves = item.getId().equals(holdingId(userId, before.getCardId(), before.getCondition(), before.getIsWishlist()))
+                && !item.getId().equals(holdingId(userId, item.getCardId(), item.getCondition(), item.getIsWishlist()));
+            if (moves || patch.getQuantity() != null || patch.getPurchasePrice() != null) {
+                transactional.add(i);
+                continue;
+            }
+
+            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(item.getId());
+            Map<String, Object> fields = patchFields(patch, card, now);
+            writes.add(new PendingWrite(i, item.getId(), batch -> batch.update(docRef, fields), () -> {
+                countItem(before);
+                countItem(item);
+            }));
+        }
+
+        commitInBatches(writes, result, MAX_BATCH_WRITES);
+        for (int i : transactional) {
+            CollectionItem patch = patches.get(i);
+            try {
+                PatchedHolding patched = patchHolding(userId, patch.getId(), patch, newCards.get(i), now);
+                if (patched == null) {
+                    result.fail(i, patch.getId(), "Collection item " + patch.getId() + " not found for user " + userId);
+                    continue;
+                }
+                result.getSucceeded().add(patched.after.getId());
+                countItem(patched.before);
+                countItem(patched.after);
+            } catch (ExecutionException e) {
+                result.fail(i, patch.getId(), e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+        }
+        invalidateUser(userId);
+
+        System.out.println("✅ Batch updated " + result.getSucceeded().size() + " items for user " + userId
+            + " (" + result.getFailed().size() + " failed)");
+        return result;
+    }
+
+    /**
+     * Remove many items for one user in Firestore batches. Items that don't
+     * exist or belong to another user are reported as failures.
+     */
+    public BatchMutationResult removeFromCollectionBatch(String userId, List<String> itemIds)
+            throws ExecutionException, InterruptedException {
+
+        BatchMutationResult result = new BatchMutationResult();
+        Map<String, CollectionItem> existing = getOwnedItems(userId, itemIds);
+
+        long now = System.currentTimeMillis();
+        List<PendingWrite> writes = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < itemIds.size(); i++) {
+            String itemId = itemIds.get(i);
+            if (itemId == null || !existing.containsKey(itemId)) {
+                result.fail(i, itemId, "Collection item " + itemId + " not found for user " + userId);
+                continue;
+            }
+            if (!seen.add(itemId)) {
+                result.fail(i, itemId, "Collection item " + itemId + " is listed more than once");
+                continue;
+            }
+            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(itemId);
+            CollectionItem removed = existing.get(itemId);
+            writes.add(new PendingWrite(i, itemId,
+                batch -> changeLog.recordDeletion(batch.delete(docRef), ChangeLog.KIND_COLLECTION_ITEM, itemId, userId, now),
+                () -> countItem(removed)));
+        }
+
+        // Each removal is two writes: the item and its tombstone
+        commitInBatches(writes, result, MAX_BATCH_WRITES / 2);
+        invalidateUser(userId);
+
+        System.out.println("✅ Batch removed " + result.getSucceeded().size() + " items for user " + userId
+            + " (" + result.getFailed().size() + " failed)");
+        return result;
+    }
+
+    /**
+     * Fold items stored under random IDs (before holdings had deterministic
+     * IDs, see holdingId) into their holding, as a background job. Each item
+     * is moved in its own transaction, so the job can be cancelled, re-run or
+     * run while users keep editing.
+     */
+    public JobService.JobStatus submitHoldingMigration() {
+        return jobService.submit("holding-migration", context -> {
+            long scanned = 0;
+            long migrated = 0;
+            DocumentSnapshot last = null;
+            while (true) {
+                context.checkCancelled();
+                Query page = firestore.collection(COLLECTION_NAME)
+                    .orderBy(FieldPath.documentId())
+                    .limit(MIGRATION_PAGE_SIZE);
+                if (last != null) {
+                    page = page.startAfter(last);
+                }
+                List<QueryDocumentSnapshot> documents = callPolicy.read("collection-migration", page::get).getDocuments();
+                for (DocumentSnapshot document : documents) {
+                    CollectionItem item = document.toObject(CollectionItem.class);
+                    if (item.getUserId() != null && item.getCardId() != null && !document.getId().equals(
+                            holdingId(item.getUserId(), item.getCardId(), item.getCondition(), item.getIsWishlist()))) {
+                        if (migrateHolding(document.getReference())) {
+                            migrated++;
+                        }
+                    }
+                }
+                scanned += documents.size();
+                context.advance(documents.size());
+                if (documents.size() < MIGRATION_PAGE_SIZE) {
+                    break;
+                }
+                last = documents.get(documents.size() - 1);
+            }
+            System.out.println("✅ Holding migration merged " + migrated + " of " + scanned + " items");
+            Map<String, Object> result = new HashMap<>();
+            result.put("scanned", scanned);
+            result.put("migrated", migrated);
+            return result;
+        });
+    }
+
+    /**
+     * Move one legacy item into its holding (creating or merging into it) and
+     * delete it with a tombstone; false if it was already gone
+     */
+    private boolean migrateHolding(DocumentReference legacyRef) throws ExecutionException, InterruptedException {
+        CollectionItem moved = callPolicy.write("collection-migration", () -> firestore.runTransaction(transaction -> {
+            DocumentSnapshot legacy = transaction.get(legacyRef).get();
+            if (!legacy.exists()) {
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            CollectionItem item = legacy.toObject(CollectionItem.class);
+            int quantity = item.getQuantity() != null ? item.getQuantity() : 1;
+            int priced = item.getPricedQuantity() != null ? item.getPricedQuantity()
+                : item.getPurchasePrice() != null ? quantity : 0;
+            double purchaseTotal = item.getPurchaseTotal() != null ? item.getPurchaseTotal()
+                : item.getPurchasePrice() != null ? item.getPurchasePrice() * quantity : 0.0;
+
+            item.setId(holdingId(item.getUserId(), item.getCardId(), item.getCondition(), item.getIsWishlist()));
+            DocumentReference holdingRef = firestore.collection(COLLECTION_NAME).document(item.getId());
+            if (transaction.get(holdingRef).get().exists()) {
+                Map<String, Object> fields = new HashMap<>();
+                fields.put("quantity", FieldValue.increment(quantity));
+                fields.put("purchaseTotal", FieldValue.increment(purchaseTotal));
+                fields.put("pricedQuantity", FieldValue.increment(priced));
+                fields.put("updatedAt", now);
+                transaction.update(holdingRef, fields);
+            } else {
+                item.setIsWishlist(Boolean.TRUE.equals(item.getIsWishlist()));
+                item.setQuantity(quantity);
+                item.setPricedQuantity(priced);
+                item.setPurchaseTotal(purchaseTotal);
+                item.setUpdatedAt(now);
+                transaction.create(holdingRef, item);
+            }
+            transaction.delete(legacyRef);
+            changeLog.recordDeletion(transaction, ChangeLog.KIND_COLLECTION_ITEM, legacyRef.getId(), item.getUserId(), now);
+            return item;
+        }));
+
+        if (moved == null) {
+            return false;
+        }
+        invalidateUser(moved.getUserId());
+        countItem(moved);
+        return true;
+    }
+
+    /**
+     * Read the given items in one getAll, keeping only those owned by the user
+     */
+    private Map<String, CollectionItem> getOwnedItems(String userId, List<String> itemIds)
+            throws ExecutionException, InterruptedException {
+
+        DocumentReference[] refs = itemIds.stream()
+            .filter(id -> id != null && !id.isEmpty())
+            .distinct()
+            .map(id -> firestore.collection(COLLECTION_NAME).document(id))
+            .toArray(DocumentReference[]::new);
+
+        Map<String, CollectionItem> owned = new HashMap<>();
+        if (refs.length == 0) {
+            return owned;
+        }
+        for (DocumentSnapshot document : callPolicy.read("collection-get-all", () -> firestore.getAll(refs))) {
+            if (document.exists()) {
+                CollectionItem item = toItem(document);
+                if (userId.equals(item.getUserId())) {
+                    owned.put(document.getId(), item);
+                }
+            }
+        }
+        return owned;
+    }
+
+    private void applyPatch(CollectionItem item, CollectionItem patch) {
+        if (patch.getQuantity() != null) {
+            item.setQuantity(patch.getQuantity());
+        }
+        if (patch.getCondition() != null) {
+            item.setCondition(patch.getCondition());
+        }
+        if (patch.getPurchasePrice() != null) {
+            item.setPurchasePrice(patch.getPurchasePrice());
+        }
+        if (patch.getPurchaseCurrency() != null) {
+            item.setPurchaseCurrency(patch.getPurchaseCurrency());
+        }
+        if (patch.getDateAcquired() != null) {
+            item.setDateAcquired(patch.getDateAcquired());
+        }
+        if (patch.getNotes() != null) {
+            item.setNotes(patch.getNotes());
+        }
+        if (patch.getIsWishlist() != null) {
+            item.setIsWishlist(patch.getIsWishlist());
+        }
+
+        // Keep the merge totals consistent with the patched quantity / price
+        int quantity = item.getQuantity() != null ? item.getQuantity() : 0;
+        if (item.getPurchasePrice() == null) {
+            item.setPricedQuantity(0);
+            item.setPurchaseTotal(0.0);
+            return;
+        }
+        int priced = patch.getPurchasePrice() != null || item.getPricedQuantity() == null
+            ? quantity
+            : Math.min(item.getPricedQuantity(), quantity);
+        item.setPricedQuantity(priced);
+        item.setPurchaseTotal(item.getPurchasePrice() * priced);
+    }
+
+    /**
+     * Default the item's fields and give it its holding ID and merge totals
+     */
+    private void prepareHolding(String userId, CollectionItem item, long now) {
+        item.setUserId(userId);
+        if (item.getIsWishlist() == null) {
+            item.setIsWishlist(false);
+        }
+        if (item.getQuantity() == null) {
+            item.setQuantity(1);
+        }
+        if (item.getDateAcquired() == null) {
+            item.setDateAcquired(now);
+        }
+        item.setId(holdingId(userId, item.getCardId(), item.getCondition(), item.getIsWishlist()));
+        boolean priced = item.getPurchasePrice() != null;
+        item.setPricedQuantity(priced ? item.getQuantity() : 0);
+        item.setPurchaseTotal(priced ? item.getPurchasePrice() * item.getQuantity() : 0.0);
+        item.setCreatedAt(now);
+        item.setUpdatedAt(now);
+    }
+
+    /**
+     * Fields that fold an add into an existing holding, all applied atomically by Firestore
+     */
+    private static Map<String, Object> mergeFields(CollectionItem item, long now) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("quantity", FieldValue.increment(item.getQuantity()));
+        fields.put("purchaseTotal", FieldValue.increment(item.getPurchaseTotal()));
+        fields.put("pricedQuantity", FieldValue.increment(item.getPricedQuantity()));
+        fields.put("card", item.getCard());
+        fields.put("updatedAt", now);
+        return fields;
+    }
+
+    /**
+     * Create or merge writes for one chunk of prepared items. Which holdings
+     * exist is read in one getAll; create() still fails if another request
+     * created the holding in between, so the caller retries the chunk.
+     */
+    private List<PendingWrite> holdingWrites(List<CollectionItem> items, List<Integer> chunk, long now)
+            throws ExecutionException, InterruptedException {
+
+        DocumentReference[] refs = chunk.stream()
+            .map(i -> items.get(i).getId())
+            .distinct()
+            .map(id -> firestore.collection(COLLECTION_NAME).document(id))
+            .toArray(DocumentReference[]::new);
+        Set<String> existing = new HashSet<>();
+        for (DocumentSnapshot document : callPolicy.read("collection-get-all", () -> firestore.getAll(refs))) {
+            if (document.exists()) {
+                existing.add(document.getId());
+            }
+        }
+
+        List<PendingWrite> writes = new ArrayList<>();
+        for (int i : chunk) {
+            CollectionItem item = items.get(i);
+            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(item.getId());
+            if (existing.add(item.getId())) {
+                // The first add of a holding in this chunk creates it; later ones in the batch merge into it
+                writes.add(new PendingWrite(i, item.getId(), batch -> batch.create(docRef, item), () -> countItem(item)));
+            } else {
+                Map<String, Object> fields = mergeFields(item, now);
+                writes.add(new PendingWrite(i, item.getId(), batch -> batch.update(docRef, fields), () -> { }));
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * Apply a patch to the item as it is now, in a transaction, so quantities
+     * merged into it since it was read are kept. If the patch changed the
+     * card, condition or wishlist flag of a holding, it is moved to the
+     * matching holding ID (merging into that holding if it exists) and the
+     * old document is deleted. Null if the item is gone or not the user's.
+     */
+    private PatchedHolding patchHolding(String userId, String itemId, CollectionItem patch, Card card, long now)
+            throws ExecutionException, InterruptedException {
+
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(itemId);
+        return callPolicy.write("collection-write", () -> firestore.runTransaction(transaction -> {
+            DocumentSnapshot snapshot = transaction.get(docRef).get();
+            if (!snapshot.exists()) {
+                return null;
+            }
+            CollectionItem before = toItem(snapshot);
+            if (!userId.equals(before.getUserId())) {
+                return null;
+            }
+            CollectionItem item = toItem(snapshot);
+            if (card != null) {
+                item.setCardId(card.getId());
+                item.setCard(card);
+            }
+            applyPatch(item, patch);
+            item.setUpdatedAt(now);
+
+            String targetId = holdingId(userId, item.getCardId(), item.getCondition(), item.getIsWishlist());
+            boolean holding = itemId.equals(holdingId(userId, before.getCardId(), before.getCondition(), before.getIsWishlist()));
+            if (!holding || targetId.equals(itemId)) {
+                Map<String, Object> fields = patchFields(patch, card, now);
+                fields.put("quantity", item.getQuantity());
+                fields.put("purchasePrice", item.getPurchasePrice());
+                fields.put("pricedQuantity", item.getPricedQuantity());
+                fields.put("purchaseTotal", item.getPurchaseTotal());
+                transaction.update(docRef, fields);
+                return new PatchedHolding(before, item);
+            }
+
+            // Reads come before writes in a transaction
+            DocumentReference targetRef = firestore.collection(COLLECTION_NAME).document(targetId);
+            boolean targetExists = transaction.get(targetRef).get().exists();
+            item.setId(targetId);
+            if (targetExists) {
+                transaction.update(targetRef, mergeFields(item, now));
+            } else {
+                transaction.create(targetRef, item);
+            }
+            transaction.delete(docRef);
+            changeLog.recordDeletion(transaction, ChangeLog.KIND_COLLECTION_ITEM, itemId, userId, now);
+            return new PatchedHolding(before, item);
+        }));
+    }
+
+    /**
+     * Descriptive fields a patch sets, for an update that leaves the quantity
+     * and merge totals alone
+     */
+    private static Map<String, Object> patchFields(CollectionItem patch, Card card, long now) {
+        Map<String, Object> fields = new HashMap<>();
+        if (card != null) {
+            fields.put("cardId", card.getId());
+            fields.put("card", card);
+        }
+        if (patch.getCondition() != null) {
+            fields.put("condition", patch.getCondition());
+        }
+        if (patch.getPurchaseCurrency() != null) {
+            fields.put("purchaseCurrency", patch.getPurchaseCurrency());
+        }
+        if (patch.getDateAcquired() != null) {
+            fields.put("dateAcquired", patch.getDateAcquired());
+        }
+        if (patch.getNotes() != null) {
+            fields.put("notes", patch.getNotes());
+        }
+        if (patch.getIsWishlist() != null) {
+            fields.put("isWishlist", patch.getIsWishlist());
+        }
+        fields.put("updatedAt", now);
+        return fields;
+    }
+
+    /**
+     * Document ID of the holding of a card in one condition, in the collection
+     * or on the wishlist, of one user
+     */
+    static String holdingId(String userId, String cardId, String condition, Boolean wishlist) {
+        return digestId(userId + '\u0000' + cardId + '\u0000'
+            + (condition != null ? condition.trim().toLowerCase(Locale.ROOT) : "") + '\u0000'
+            + (Boolean.TRUE.equals(wishlist) ? "wishlist" : "owned"));
+    }
+
+    /**
+     * Fixed-length document ID derived from a composite key
+     */
+    static String digestId(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Map a stored item; merged holdings get their purchase price as the
+     * average over the priced copies
+     */
+    static CollectionItem toItem(DocumentSnapshot document) {
+        return toItem(document.toObject(CollectionItem.class));
+    }
+
+    private static CollectionItem toItem(CollectionItem item) {
+        if (item.getPurchaseTotal() != null && item.getPricedQuantity() != null) {
+            item.setPurchasePrice(item.getPricedQuantity() > 0
+                ? item.getPurchaseTotal() / item.getPricedQuantity()
+                : null);
+        }
         return item;
     }
 
+    /**
+     * Commit writes in chunks that fit the Firestore batch limit. A failed
+     * chunk marks its own items as failed and the remaining chunks still run.
+     */
+    private void commitInBatches(List<PendingWrite> writes, BatchMutationResult result, int chunkSize)
+            throws InterruptedException {
+
+        for (int start = 0; start < writes.size(); start += chunkSize) {
+            List<PendingWrite> chunk = writes.subList(start, Math.min(start + chunkSize, writes.size()));
+            WriteBatch batch = firestore.batch();
+            for (PendingWrite write : chunk) {
+                write.operation.accept(batch);
+            }
+            try {
+                callPolicy.write("collection-batch", batch::commit);
+                for (PendingWrite write : chunk) {
+                    result.getSucceeded().add(write.itemId);
+                    write.afterCommit.run();
+                }
+            } catch (ExecutionException e) {
+                for (PendingWrite write : chunk) {
+                    result.fail(write.index, write.itemId, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                }
+            }
+        }
+    }
+
     public List<CollectionItem> getUserCollection(String userId) 
             throws ExecutionException, InterruptedException {
         
-        QuerySnapshot querySnapshot = firestore
-            .collection(COLLECTION_NAME)
-            .whereEqualTo("userId", userId)
-            .get()
-            .get();
+        Query query = userItemsQuery(userId);
+        QuerySnapshot querySnapshot = callPolicy.read("collection-list", query::get);
 
         return querySnapshot.getDocuments().stream()
-            .map(doc -> doc.toObject(CollectionItem.class))
+            .map(CollectionService::toItem)
             .collect(Collectors.toList());
     }
 
+    /**
+     * All collection and wishlist items of a user
+     */
+    Query userItemsQuery(String userId) {
+        return firestore.collection(COLLECTION_NAME).whereEqualTo("userId", userId);
+    }
+
+    /**
+     * A user's items (wishlist included) created or updated since the sync
+     * token and IDs of items removed since then, including holdings that
+     * were merged into another by an update (see ChangeLog)
+     */
+    public ChangeLog.ChangeSet<CollectionItem> getChanges(String userId, String token)
+            throws ExecutionException, InterruptedException {
+
+        ChangeLog.Window window = changeLog.open(token);
+        Query query = window.isReset()
+            ? userItemsQuery(userId)
+            : userItemsQuery(userId).whereGreaterThanOrEqualTo("updatedAt", window.since());
+        QuerySnapshot querySnapshot = callPolicy.read("collection-changes", query::get);
+
+        List<CollectionItem> changed = querySnapshot.getDocuments().stream()
+            .map(CollectionService::toItem)
+            .collect(Collectors.toList());
+        Set<String> deleted = window.isReset()
+            ? Set.of()
+            : changeLog.deletedSince(ChangeLog.KIND_COLLECTION_ITEM, userId, window.since());
+        return changeLog.changeSet(window, changed, CollectionItem::getId, deleted);
+    }
+
+    /**
+     * Filtered, sorted page of a user's collection, served from a per-user
+     * in-memory index. Pages are addressed by an opaque keyset cursor, so deep
+     * pages cost the same as the first one.
+     */
+    public CollectionPage queryCollection(String userId, CollectionQuery query)
+            throws ExecutionException, InterruptedException {
+
+        UserCollectionIndex.SortKey sortKey = UserCollectionIndex.SortKey.fromParam(query.getSortBy());
+        boolean descending = !"asc".equalsIgnoreCase(query.getSortDir());   // newest / most valuable first
+        int limit = query.getLimit() != null ? Math.max(1, Math.min(query.getLimit(), maxPageSize)) : defaultPageSize;
+        UserCollectionIndex.Entry after = decodeCursor(query.getCursor(), sortKey, descending);
+
+        UserCollectionIndex index = getIndex(userId);
+        Predicate<CollectionItem> filter = query.filter();
+        List<UserCollectionIndex.Entry> page = index.page(sortKey, descending, filter, after, limit);
+
+        List<CollectionItem> items = page.stream().map(entry -> entry.item).collect(Collectors.toList());
+        String nextCursor = page.size() == limit
+            ? encodeCursor(page.get(page.size() - 1), sortKey, descending)
+            : null;
+        return new CollectionPage(items, nextCursor, index.count(filter));
+    }
+
+    private UserCollectionIndex getIndex(String userId) throws ExecutionException, InterruptedException {
+        UserCollectionIndex index = indexCache.get(userId);
+        long now = System.currentTimeMillis();
+        if (index != null && now - index.loadedAt() < indexTtlMs) {
+            return index;
+        }
+
+        index = new UserCollectionIndex(getUserCollection(userId), now);
+        String oldest = oldestToEvict(indexCache, userId, maxIndexedUsers, UserCollectionIndex::loadedAt);
+        if (oldest != null) {
+            indexCache.remove(oldest);
+        }
+        indexCache.put(userId, index);
+        return index;
+    }
+
+    /**
+     * The least recently computed user to drop before caching another user, or
+     * null while the cache has room (or already holds the user)
+     */
+    private static <V> String oldestToEvict(Map<String, V> cache, String userId, int maxUsers,
+                                            ToLongFunction<V> computedAt) {
+        if (cache.size() < maxUsers || cache.containsKey(userId)) {
+            return null;
+        }
+        return cache.entrySet().stream()
+            .min(Comparator.comparingLong(entry -> computedAt.applyAsLong(entry.getValue())))
+            .map(Map.Entry::getKey)
+            .orElse(null);
+    }
+
+    /**
+     * Feed the cross-user popularity counters after a holding of the item's
+     * card was created or removed; they recount the user for that card
+     */
+    private void countItem(CollectionItem item) {
+        popularityService.record(item.getUserId(), item.getCardId(), Boolean.TRUE.equals(item.getIsWishlist()));
+    }
+
+    /**
+     * Drop everything cached for a user after their collection changed
+     */
+    private void invalidateUser(String userId) {
+        statsCache.remove(userId);
+        indexCache.remove(userId);
+        dropAnalytics(userId);
+    }
+
+    /**
+     * Cache a user's analytics and register the user under each card it was computed from
+     */
+    private void cacheAnalytics(String userId, CachedAnalytics cached) {
+        dropAnalytics(userId);
+        String oldest = oldestToEvict(analyticsCache, userId, maxAnalyticsUsers,
+            entry -> entry.analytics.getComputedAt());
+        if (oldest != null) {
+            dropAnalytics(oldest);
+        }
+        for (String cardId : cached.cardIds) {
+            analyticsUsersByCard.computeIfAbsent(cardId, id -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+        analyticsCache.put(userId, cached);
+    }
+
+    private void dropAnalytics(String userId) {
+        CachedAnalytics removed = analyticsCache.remove(userId);
+        if (removed == null) {
+            return;
+        }
+        for (String cardId : removed.cardIds) {
+            analyticsUsersByCard.computeIfPresent(cardId, (id, users) -> {
+                users.remove(userId);
+                return users.isEmpty() ? null : users;
+            });
+        }
+    }
+
+    /**
+     * Value, invested, P/L and counts of the owned items grouped by game, set,
+     * rarity, color, condition and acquisition month, all computed in one pass.
+     * Cached per user until the collection or the price of one of its cards changes.
+     */
+    public PortfolioAnalytics getPortfolioAnalytics(String userId)
+            throws ExecutionException, InterruptedException {
+
+        CachedAnalytics cached = analyticsCache.get(userId);
+        if (cached != null && System.currentTimeMillis() - cached.analytics.getComputedAt() < analyticsTtlMs) {
+            return cached.analytics;
+        }
+
+        List<CollectionItem> items = getIndex(userId).items();
+        Map<String, Double> unitPrices = new HashMap<>();
+        for (CollectionItem item : items) {
+            if (item.getCardId() != null && !unitPrices.containsKey(item.getCardId())) {
+                unitPrices.put(item.getCardId(), unitPrice(item));
+            }
+        }
+
+        PortfolioAggregator.Partial result = aggregator.aggregate(items, unitPrices);
+        Map<String, List<GroupStats>> groups = new LinkedHashMap<>();
+        for (PortfolioAggregator.Dimension dimension : PortfolioAggregator.Dimension.values()) {
+            groups.put(dimension.paramName(), result.sorted(dimension).stream()
+                .map(entry -> toGroupStats(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList()));
+        }
+        PortfolioAnalytics analytics = new PortfolioAnalytics(
+            toGroupStats("ALL", result.total), groups, System.currentTimeMillis());
+
+        cacheAnalytics(userId, new CachedAnalytics(analytics, unitPrices.keySet()));
+        return analytics;
+    }
+
+    /**
+     * A new price for a card invalidates the analytics of every user holding it
+     */
+    @Override
+    public void onPricePoint(PriceHistory pricePoint) {
+        Set<String> users = analyticsUsersByCard.get(pricePoint.getCardId());
+        if (users != null) {
+            new ArrayList<>(users).forEach(this::dropAnalytics);
+        }
+    }
+
+    /**
+     * Market price of one copy: the newer of the latest price ingested on this
+     * node and the catalog's current price (other nodes' ingestion reaches
+     * this node through the catalog), else the price embedded in the item
+     */
+    private Double unitPrice(CollectionItem item) {
+        PriceHistory latest = priceService.getKnownLatestPrice(item.getCardId());
+        Card card = cardCatalog.get(item.getCardId());
+        if (card == null) {
+            card = item.getCard();
+        }
+        boolean hasLatest = latest != null && latest.getPrice() != null;
+        boolean hasCatalog = card != null && card.getCurrentPrice() != null;
+        if (hasLatest && hasCatalog) {
+            boolean catalogNewer = card.getUpdatedAt() != null && latest.getTimestamp() != null
+                && card.getUpdatedAt() > latest.getTimestamp();
+            return catalogNewer ? card.getCurrentPrice() : latest.getPrice();
+        }
+        return hasLatest ? latest.getPrice() : hasCatalog ? card.getCurrentPrice() : null;
+    }
+
+    private static GroupStats toGroupStats(String key, PortfolioAggregator.Accumulator accumulator) {
+        return new GroupStats(key, accumulator.items, accumulator.quantity, accumulator.value,
+            accumulator.invested, accumulator.value - accumulator.invested);
+    }
+
+    static String encodeCursor(UserCollectionIndex.Entry entry, UserCollectionIndex.SortKey sortKey,
+                               boolean descending) {
+        String raw = sortKey.name() + "|" + (descending ? "desc" : "asc") + "|" + entry.value + "|" + entry.id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static UserCollectionIndex.Entry decodeCursor(String cursor, UserCollectionIndex.SortKey sortKey,
+                                                  boolean descending) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|", 4);
+            if (parts.length != 4 || !parts[0].equals(sortKey.name())
+                    || !parts[1].equals(descending ? "desc" : "asc")) {
+                throw new IllegalArgumentException("Cursor does not match the requested sort");
+            }
+            return new UserCollectionIndex.Entry(Double.parseDouble(parts[2]), parts[3], null);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + e.getMessage());
+        }
+    }
+
     public CollectionItem getCollectionItemById(String itemId) 
             throws ExecutionException, InterruptedException {
         
-        DocumentSnapshot document = firestore
-            .collection(COLLECTION_NAME)
-            .document(itemId)
-            .get()
-            .get();
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(itemId);
+        DocumentSnapshot document = callPolicy.hedgedRead("collection-get", docRef::get);
 
         if (document.exists()) {
-            return document.toObject(CollectionItem.class);
+            return toItem(document);
         }
         return null;
     }
@@ -84,15 +962,30 @@ public class CollectionService {
     public void removeFromCollection(String itemId) 
             throws ExecutionException, InterruptedException {
         
-        firestore.collection(COLLECTION_NAME).document(itemId).delete().get();
+        CollectionItem item = getCollectionItemById(itemId);
+        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(itemId);
+        if (item != null) {
+            long now = System.currentTimeMillis();
+            callPolicy.write("collection-delete", () -> changeLog
+                .recordDeletion(firestore.batch().delete(docRef), ChangeLog.KIND_COLLECTION_ITEM, itemId, item.getUserId(), now)
+                .commit());
+        } else {
+            callPolicy.write("collection-delete", docRef::delete);
+        }
+        if (item != null) {
+            invalidateUser(item.getUserId());
+            countItem(item);
+        }
         System.out.println("✅ Removed from collection: " + itemId);
     }
 
     public Double getTotalCollectionValue(String userId) 
             throws ExecutionException, InterruptedException {
         
-        List<CollectionItem> collection = getUserCollection(userId);
-        
+        return totalValue(getUserCollection(userId));
+    }
+
+    private double totalValue(List<CollectionItem> collection) {
         return collection.stream()
             .filter(item -> !Boolean.TRUE.equals(item.getIsWishlist()))
             .mapToDouble(item -> {
@@ -107,6 +1000,11 @@ public class CollectionService {
     public CollectionStats getCollectionStats(String userId) 
             throws ExecutionException, InterruptedException {
         
+        CachedStats cached = statsCache.get(userId);
+        if (cached != null && System.currentTimeMillis() - cached.computedAt < statsTtlMs) {
+            return cached.stats;
+        }
+
         List<CollectionItem> collection = getUserCollection(userId);
         List<CollectionItem> ownedItems = collection.stream()
             .filter(item -> !Boolean.TRUE.equals(item.getIsWishlist()))
@@ -116,26 +1014,27 @@ public class CollectionService {
             .mapToInt(CollectionItem::getQuantity)
             .sum();
         
-        double totalValue = getTotalCollectionValue(userId);
+        double totalValue = totalValue(collection);
         
         double totalInvested = ownedItems.stream()
-            .mapToDouble(item -> {
-                if (item.getPurchasePrice() != null) {
-                    return item.getPurchasePrice() * item.getQuantity();
-                }
-                return 0.0;
-            })
+            .mapToDouble(PortfolioAggregator::invested)
             .sum();
         
         double profitLoss = totalValue - totalInvested;
         
-        return new CollectionStats(
+        CollectionStats stats = new CollectionStats(
             ownedItems.size(),
             totalCards,
             totalValue,
             totalInvested,
             profitLoss
         );
+        String oldest = oldestToEvict(statsCache, userId, maxStatsUsers, entry -> entry.computedAt);
+        if (oldest != null) {
+            statsCache.remove(oldest);
+        }
+        statsCache.put(userId, new CachedStats(stats, System.currentTimeMillis()));
+        return stats;
     }
 
     @lombok.Data
@@ -147,4 +1046,144 @@ public class CollectionService {
         private double totalInvested;
         private double profitLoss;
     }
-}
\ No newline at end of file
+
+    /**
+     * Filters, sort and cursor for a collection page. Filters compare
+     * case-insensitively against the item (condition, wishlist) or its card.
+     */
+    @lombok.Data
+    public static class CollectionQuery {
+        private String game;
+        private String set;
+        private String rarity;
+        private String condition;
+        private Boolean wishlist;       // true: wishlist only, false: owned only
+        private String sortBy;          // value, purchasePrice, dateAcquired, profit
+        private String sortDir;         // asc, desc
+        private Integer limit;
+        private String cursor;
+
+        /**
+         * True if any of the paging parameters is set (otherwise the legacy full list is returned)
+         */
+        public boolean isPaged() {
+            return game != null || set != null || rarity != null || condition != null || wishlist != null
+                || sortBy != null || sortDir != null || limit != null || cursor != null;
+        }
+
+        Predicate<CollectionItem> filter() {
+            return item -> {
+                if (wishlist != null && wishlist != Boolean.TRUE.equals(item.getIsWishlist())) {
+                    return false;
+                }
+                if (condition != null && !condition.equalsIgnoreCase(item.getCondition())) {
+                    return false;
+                }
+                Card card = item.getCard();
+                if (game != null && (card == null || !game.equalsIgnoreCase(card.getGame()))) {
+                    return false;
+                }
+                if (set != null && (card == null
+                        || !(set.equalsIgnoreCase(card.getSet()) || set.equalsIgnoreCase(card.getSetCode())))) {
+                    return false;
+                }
+                return rarity == null || (card != null && rarity.equalsIgnoreCase(card.getRarity()));
+            };
+        }
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class CollectionPage {
+        private List<CollectionItem> items;
+        private String nextCursor;       // null on the last page
+        private int total;               // Matches across all pages
+    }
+
+    /**
+     * Outcome of a batch mutation: succeeded item IDs and per-item failures
+     */
+    @lombok.Data
+    public static class BatchMutationResult {
+        private List<String> succeeded = new ArrayList<>();
+        private List<BatchFailure> failed = new ArrayList<>();
+
+        void fail(int index, String itemId, String error) {
+            failed.add(new BatchFailure(index, itemId, error));
+        }
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class BatchFailure {
+        private int index;               // Position in the request body
+        private String itemId;
+        private String error;
+    }
+
+    /**
+     * An item as read in a transaction and as written by it
+     */
+    private static class PatchedHolding {
+        private final CollectionItem before;
+        private final CollectionItem after;
+
+        private PatchedHolding(CollectionItem before, CollectionItem after) {
+            this.before = before;
+            this.after = after;
+        }
+    }
+
+    private static class PendingWrite {
+        private final int index;
+        private final String itemId;
+        private final Consumer<WriteBatch> operation;
+        private final Runnable afterCommit;
+
+        private PendingWrite(int index, String itemId, Consumer<WriteBatch> operation, Runnable afterCommit) {
+            this.index = index;
+            this.itemId = itemId;
+            this.operation = operation;
+            this.afterCommit = afterCommit;
+        }
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class PortfolioAnalytics {
+        private GroupStats total;
+        private Map<String, List<GroupStats>> groups;    // game, set, rarity, color, condition, acquiredMonth
+        private long computedAt;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class GroupStats {
+        private String key;
+        private int uniqueCards;
+        private long totalCards;
+        private double totalValue;
+        private double totalInvested;
+        private double profitLoss;
+    }
+
+    private static class CachedAnalytics {
+        private final PortfolioAnalytics analytics;
+        private final Set<String> cardIds;
+
+        private CachedAnalytics(PortfolioAnalytics analytics, Set<String> cardIds) {
+            this.analytics = analytics;
+            this.cardIds = cardIds;
+        }
+    }
+
+    private static class CachedStats {
+        private final CollectionStats stats;
+        private final long computedAt;
+
+        private CachedStats(CollectionStats stats, long computedAt) {
+            this.stats = stats;
+            this.computedAt = computedAt;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import com.cardcollection.model.CollectionItem;
+import com.cardcollection.model.PriceAggregate;
+import com.cardcollection.model.PriceHistory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.Query;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming exports of collections and price histories as CSV or NDJSON.
+ *
+ * Rows are read from Firestore one page at a time (keyset paging with
+ * startAfter) and written straight to the output stream, which is flushed
+ * after every page, so memory use doesn't depend on the export size and the
+ * client starts receiving data after the first page.
+ */
+@Service
+public class ExportService {
+
+    private static final List<String> COLLECTION_COLUMNS = List.of(
+        "id", "cardId", "cardName", "game", "set", "number", "rarity", "condition", "quantity",
+        "isWishlist", "purchasePrice", "purchaseCurrency", "currentPrice", "dateAcquired", "notes",
+        "createdAt", "updatedAt");
+    private static final List<String> PRICE_COLUMNS = List.of(
+        "id", "cardId", "timestamp", "price", "currency", "condition", "source", "notes", "createdAt");
+
+    private final CollectionService collectionService;
+    private final PriceService priceService;
+    private final PriceRetentionService retentionService;
+    private final FirestoreCallPolicy callPolicy;
+    private final int pageSize;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public ExportService(CollectionService collectionService, PriceService priceService,
+                         PriceRetentionService retentionService, FirestoreCallPolicy callPolicy,
+                         @Value("${export.page-size:500}") int pageSize) {
+        this.collectionService = collectionService;
+        this.priceService = priceService;
+        this.retentionService = retentionService;
+        this.callPolicy = callPolicy;
+        this.pageSize = Math.max(pageSize, 1);
+    }
+
+    public enum Format {
+        CSV("text/csv", "csv"),
+        NDJSON("application/x-ndjson", "ndjson");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType(boolean gzip) {
+            return gzip ? "application/gzip" : contentType;
+        }
+
+        public String fileName(String baseName, boolean gzip) {
+            return baseName + "." + extension + (gzip ? ".gz" : "");
+        }
+
+        public static Format fromParam(String param) {
+            if (param == null || param.isBlank()) {
+                return CSV;
+            }
+            try {
+                return valueOf(param.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unsupported export format: " + param);
+            }
+        }
+    }
+
+    /**
+     * Write a user's whole collection (wishlist included), ordered by item ID
+     */
+    public void exportCollection(String userId, Format format, boolean gzip, OutputStream out) throws IOException {
+        Query query = collectionService.userItemsQuery(userId).orderBy(FieldPath.documentId());
+        PagedReader<CollectionItem> items = new PagedReader<>(query, CollectionService::toItem);
+
+        try (RowWriter writer = new RowWriter(out, format, gzip)) {
+            writer.header(COLLECTION_COLUMNS);
+            for (CollectionItem item = items.next(); item != null; item = items.next()) {
+                if (format == Format.NDJSON) {
+                    writer.json(item);
+                    continue;
+                }
+                Card card = item.getCard();
+                writer.csv(item.getId(), item.getCardId(),
+                    card != null ? card.getName() : null,
+                    card != null ? card.getGame() : null,
+                    card != null ? card.getSet() : null,
+                    card != null ? card.getNumber() : null,
+                    card != null ? card.getRarity() : null,
+                    item.getCondition(), item.getQuantity(), item.getIsWishlist(),
+                    item.getPurchasePrice(), item.getPurchaseCurrency(),
+                    card != null ? card.getCurrentPrice() : null,
+                    item.getDateAcquired(), item.getNotes(), item.getCreatedAt(), item.getUpdatedAt());
+            }
+        }
+    }
+
+    /**
+     * Write a card's price history in timestamp order: compacted aggregates
+     * merged with raw points, as in PriceService.getCardPriceHistory
+     */
+    public void exportPriceHistory(String cardId, Long startTime, Long endTime, Format format, boolean gzip,
+                                   OutputStream out) throws IOException {
+        PagedReader<PriceHistory> aggregated = new PagedReader<>(
+            retentionService.aggregatesQuery(cardId, startTime, endTime),
+            doc -> PriceRetentionService.toPricePoint(doc.toObject(PriceAggregate.class)));
+        PagedReader<PriceHistory> raw = new PagedReader<>(
+            priceService.historyQuery(cardId, startTime, endTime), doc -> doc.toObject(PriceHistory.class));
+
+        try (RowWriter writer = new RowWriter(out, format, gzip)) {
+            writer.header(PRICE_COLUMNS);
+            PriceHistory nextAggregated = aggregated.next();
+            PriceHistory nextRaw = raw.next();
+            while (nextAggregated != null || nextRaw != null) {
+                PriceHistory point;
+                if (nextRaw == null || (nextAggregated != null
+                        && nextAggregated.getTimestamp() <= nextRaw.getTimestamp())) {
+                    point = nextAggregated;
+                    nextAggregated = aggregated.next();
+                } else {
+                    point = nextRaw;
+                    nextRaw = raw.next();
+                }
+
+                if (format == Format.NDJSON) {
+                    writer.json(point);
+                } else {
+                    writer.csv(point.getId(), point.getCardId(), point.getTimestamp(), point.getPrice(),
+                        point.getCurrency(), point.getCondition(), point.getSource(), point.getNotes(),
+                        point.getCreatedAt());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a query page by page; Firestore errors surface as IOException
+     * because they happen while the response is already being written
+     */
+    private class PagedReader<T> {
+        private final Query query;
+        private final Function<DocumentSnapshot, T> mapper;
+        private List<? extends DocumentSnapshot> page = List.of();
+        private int position = 0;
+        private boolean exhausted = false;
+
+        private PagedReader(Query query, Function<DocumentSnapshot, T> mapper) {
+            this.query = query;
+            this.mapper = mapper;
+        }
+
+        /**
+         * The next row, or null after the last one
+         */
+        T next() throws IOException {
+            if (position >= page.size()) {
+                if (exhausted) {
+                    return null;
+                }
+                fetchNextPage();
+                if (page.isEmpty()) {
+                    return null;
+                }
+            }
+            return mapper.apply(page.get(position++));
+        }
+
+        private void fetchNextPage() throws IOException {
+            Query next = query.limit(pageSize);
+            if (!page.isEmpty()) {
+                next = next.startAfter(page.get(page.size() - 1));
+            }
+            try {
+                page = callPolicy.read("export-page", next::get).getDocuments();
+            } catch (ExecutionException e) {
+                throw new IOException("Export query failed: " + e.getMessage(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrupted");
+            }
+            position = 0;
+            exhausted = page.size() < pageSize;
+        }
+    }
+
+    /**
+     * CSV / NDJSON row writer over an optionally gzipped stream; flushes
+     * (through the compressor) every pageSize rows
+     */
+    private class RowWriter implements AutoCloseable {
+        private final Format format;
+        private final GZIPOutputStream gzip;
+        private final Writer writer;
+        private int rowsSinceFlush = 0;
+
+        private RowWriter(OutputStream out, Format format, boolean gzip) throws IOException {
+            this.format = format;
+            this.gzip = gzip ? new GZIPOutputStream(out, 8192, true) : null;
+            this.writer = new BufferedWriter(new OutputStreamWriter(
+                this.gzip != null ? this.gzip : out, StandardCharsets.UTF_8));
+        }
+
+        void header(List<String> columns) throws IOException {
+            if (format == Format.CSV) {
+                writer.write(String.join(",", columns));
+                writer.write('\n');
+            }
+            writer.flush();
+        }
+
+        void csv(Object... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(csvValue(values[i]));
+            }
+            endRow();
+        }
+
+        void json(Object value) throws IOException {
+            writer.write(objectMapper.writeValueAsString(value));
+            endRow();
+        }
+
+        private void endRow() throws IOException {
+            writer.write('\n');
+            if (++rowsSinceFlush >= pageSize) {
+                writer.flush();
+                rowsSinceFlush = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.flush();
+            if (gzip != null) {
+                gzip.finish();
+            }
+        }
+    }
+
+    private static String csvValue(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return '"' + text.replace("\"", "\"\"") + '"';
+    }
+}
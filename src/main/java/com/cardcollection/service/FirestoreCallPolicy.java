@@ -0,0 +1,357 @@
+package com.cardcollection.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.StatusCode;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deadlines, retries and hedging for Firestore calls.
+ *
+ * Every call waits at most until its deadline: the operation's timeout
+ * (firestore.{operation}.timeout-ms, falling back to firestore.default-timeout-ms),
+ * cut short by the deadline of the HTTP request it serves (see
+ * RequestDeadlineFilter). Background jobs, schedulers and the price journal
+ * flusher have no request deadline and get the operation timeout alone.
+ * Exempt are the calls started together and awaited as a group, which this
+ * class can't do: PopularityService.flush's reconcile transactions and
+ * AlertService's fired-alert claims. Reads are retried on transient errors with
+ * exponential backoff and full jitter while the deadline allows. Hedged
+ * reads send a second identical call when the first is slower than the
+ * operation's recent firestore.hedge.percentile latency and take whichever
+ * answers first; hedges are capped at firestore.hedge.budget-percent of calls.
+ *
+ * Writes only get the deadline: they may not be idempotent, so they are
+ * never retried or hedged here.
+ */
+@Component
+public class FirestoreCallPolicy {
+
+    private static final ThreadLocal<Long> REQUEST_DEADLINE = new ThreadLocal<>();
+    private static final Set<StatusCode.Code> TRANSIENT_CODES = EnumSet.of(
+        StatusCode.Code.UNAVAILABLE, StatusCode.Code.RESOURCE_EXHAUSTED,
+        StatusCode.Code.ABORTED, StatusCode.Code.DEADLINE_EXCEEDED);
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int MIN_SAMPLES_FOR_HEDGING = 32;
+
+    private final Environment environment;
+    private final int maxAttempts;
+    private final long baseBackoffMs;
+    private final long maxBackoffMs;
+    private final double hedgePercentile;
+    private final long hedgeMinDelayMs;
+    private final long hedgeMaxDelayMs;
+    private final double hedgeBudgetPercent;
+    private final Map<String, Long> timeouts = new ConcurrentHashMap<>();
+    private final Map<String, OperationCounters> counters = new ConcurrentHashMap<>();
+
+    public FirestoreCallPolicy(Environment environment) {
+        this.environment = environment;
+        this.maxAttempts = Math.max(1, environment.getProperty("firestore.retry.max-attempts", Integer.class, 3));
+        this.baseBackoffMs = environment.getProperty("firestore.retry.base-backoff-ms", Long.class, 50L);
+        this.maxBackoffMs = environment.getProperty("firestore.retry.max-backoff-ms", Long.class, 1000L);
+        this.hedgePercentile = environment.getProperty("firestore.hedge.percentile", Double.class, 95.0);
+        this.hedgeMinDelayMs = environment.getProperty("firestore.hedge.min-delay-ms", Long.class, 10L);
+        this.hedgeMaxDelayMs = environment.getProperty("firestore.hedge.max-delay-ms", Long.class, 1000L);
+        this.hedgeBudgetPercent = environment.getProperty("firestore.hedge.budget-percent", Double.class, 10.0);
+    }
+
+    /**
+     * Deadline (epoch millis) of the HTTP request handled by the current thread, or null for none
+     */
+    public static void setRequestDeadline(Long deadlineAt) {
+        if (deadlineAt == null) {
+            REQUEST_DEADLINE.remove();
+        } else {
+            REQUEST_DEADLINE.set(deadlineAt);
+        }
+    }
+
+    /**
+     * Deadline (epoch millis) of the HTTP request handled by the current thread, or null for none
+     */
+    public static Long requestDeadline() {
+        return REQUEST_DEADLINE.get();
+    }
+
+    /**
+     * Idempotent read: deadline plus retries on transient errors
+     */
+    public <T> T read(String operation, Call<T> call) throws ExecutionException, InterruptedException {
+        return execute(operation, call, true, false);
+    }
+
+    /**
+     * Idempotent point lookup: like read, and hedged when the first call is slow
+     */
+    public <T> T hedgedRead(String operation, Call<T> call) throws ExecutionException, InterruptedException {
+        return execute(operation, call, true, true);
+    }
+
+    /**
+     * Write: deadline only
+     */
+    public <T> T write(String operation, Call<T> call) throws ExecutionException, InterruptedException {
+        return execute(operation, call, false, false);
+    }
+
+    /**
+     * Per-operation call, retry, timeout and hedging counters with recent latency percentiles
+     */
+    public Map<String, CallStats> getStats() {
+        Map<String, CallStats> stats = new LinkedHashMap<>();
+        counters.forEach((operation, c) -> {
+            long[] sorted = c.sortedSamples();
+            stats.put(operation, new CallStats(
+                c.calls.sum(),
+                c.retries.sum(),
+                c.timeouts.sum(),
+                c.failures.sum(),
+                c.hedges.sum(),
+                c.hedgesWon.sum(),
+                percentileMs(sorted, 50),
+                percentileMs(sorted, 95),
+                percentileMs(sorted, 99),
+                sorted.length >= MIN_SAMPLES_FOR_HEDGING ? hedgeDelayNanos(c) / 1_000_000.0 : null
+            ));
+        });
+        return stats;
+    }
+
+    /**
+     * gRPC status code of a failed Firestore call, or null if it isn't an API error
+     */
+    public static StatusCode.Code statusCode(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiException) {
+                return ((ApiException) cause).getStatusCode().getCode();
+            }
+        }
+        return null;
+    }
+
+    private <T> T execute(String operation, Call<T> call, boolean retry, boolean hedge)
+            throws ExecutionException, InterruptedException {
+
+        OperationCounters c = counters.computeIfAbsent(operation, op -> new OperationCounters());
+        c.calls.increment();
+        long deadline = deadlineNanos(operation);
+
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                T value = hedge ? raceWithHedge(call, deadline, c) : await(call.start(), deadline);
+                c.record(System.nanoTime() - start);
+                return value;
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TimeoutException) {
+                    c.timeouts.increment();
+                    throw e;
+                }
+                long backoffMs = ThreadLocalRandom.current().nextLong(
+                    Math.min(maxBackoffMs, baseBackoffMs << Math.min(attempt - 1, 20)) + 1);
+                if (!retry || attempt >= maxAttempts || !isTransient(e.getCause())
+                        || System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMs) >= deadline) {
+                    c.failures.increment();
+                    throw e;
+                }
+                c.retries.increment();
+                Thread.sleep(backoffMs);
+            }
+        }
+    }
+
+    /**
+     * Start the call, and once it has been pending for the hedge delay start
+     * an identical one; the first successful answer wins, the other is cancelled
+     */
+    private <T> T raceWithHedge(Call<T> call, long deadline, OperationCounters c)
+            throws ExecutionException, InterruptedException {
+
+        ApiFuture<T> primary = call.start();
+        if (c.sampleCount() < MIN_SAMPLES_FOR_HEDGING) {
+            return await(primary, deadline);
+        }
+        long hedgeAt = Math.min(System.nanoTime() + hedgeDelayNanos(c), deadline);
+        try {
+            return primary.get(Math.max(0L, hedgeAt - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Slower than usual: hedge below, if the budget allows
+        }
+        if (hedgeAt >= deadline || !c.tryAcquireHedge(hedgeBudgetPercent)) {
+            return await(primary, deadline);
+        }
+
+        ApiFuture<T> hedged = call.start();
+        CompletableFuture<ApiFuture<T>> winner = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        for (ApiFuture<T> candidate : Arrays.asList(primary, hedged)) {
+            candidate.addListener(() -> {
+                try {
+                    candidate.get();
+                    winner.complete(candidate);
+                } catch (ExecutionException e) {
+                    if (failed.incrementAndGet() == 2) {
+                        winner.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+                    }
+                } catch (Exception e) {
+                    if (failed.incrementAndGet() == 2) {
+                        winner.completeExceptionally(e);
+                    }
+                }
+            }, Runnable::run);
+        }
+
+        try {
+            ApiFuture<T> first = winner.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (first == hedged) {
+                c.hedgesWon.increment();
+            }
+            (first == hedged ? primary : hedged).cancel(true);
+            return first.get();
+        } catch (TimeoutException e) {
+            primary.cancel(true);
+            hedged.cancel(true);
+            throw new ExecutionException(new TimeoutException("Firestore call exceeded its deadline"));
+        }
+    }
+
+    private static <T> T await(ApiFuture<T> future, long deadline) throws ExecutionException, InterruptedException {
+        try {
+            return future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new ExecutionException(new TimeoutException("Firestore call exceeded its deadline"));
+        }
+    }
+
+    /**
+     * Absolute nanoTime deadline: the operation timeout, or less if the request's deadline is sooner
+     */
+    private long deadlineNanos(String operation) {
+        long timeoutMs = timeouts.computeIfAbsent(operation, op ->
+            environment.getProperty("firestore." + op + ".timeout-ms", Long.class,
+                environment.getProperty("firestore.default-timeout-ms", Long.class, 5000L)));
+        Long requestDeadline = REQUEST_DEADLINE.get();
+        if (requestDeadline != null) {
+            timeoutMs = Math.min(timeoutMs, Math.max(0L, requestDeadline - System.currentTimeMillis()));
+        }
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    private long hedgeDelayNanos(OperationCounters c) {
+        long delay = c.percentileNanos(hedgePercentile);
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(hedgeMinDelayMs),
+            Math.min(TimeUnit.MILLISECONDS.toNanos(hedgeMaxDelayMs), delay));
+    }
+
+    private static boolean isTransient(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ApiException) {
+                ApiException apiException = (ApiException) cause;
+                return apiException.isRetryable() || TRANSIENT_CODES.contains(apiException.getStatusCode().getCode());
+            }
+        }
+        return false;
+    }
+
+    private static Double percentileMs(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return null;
+        }
+        return sorted[percentileIndex(sorted.length, percentile)] / 1_000_000.0;
+    }
+
+    private static int percentileIndex(int size, double percentile) {
+        return (int) Math.min(size - 1, Math.max(0, Math.ceil(percentile / 100.0 * size) - 1));
+    }
+
+    /**
+     * A Firestore call that can be started more than once (retries, hedges)
+     */
+    @FunctionalInterface
+    public interface Call<T> {
+        ApiFuture<T> start();
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class CallStats {
+        private long calls;
+        private long retries;
+        private long timeouts;           // Gave up at the deadline
+        private long failures;           // Errors returned to the caller (timeouts excluded)
+        private long hedges;             // Duplicate calls sent
+        private long hedgesWon;          // ...that answered before the original
+        private Double p50Ms;            // Over the last 256 successful calls
+        private Double p95Ms;
+        private Double p99Ms;
+        private Double hedgeDelayMs;     // Current delay before hedging (null until enough samples)
+    }
+
+    private static class OperationCounters {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder hedges = new LongAdder();
+        private final LongAdder hedgesWon = new LongAdder();
+        private final long[] samples = new long[LATENCY_SAMPLES];
+        private final AtomicLong recorded = new AtomicLong();
+        private volatile long[] sortedCache = new long[0];
+        private volatile long sortedAt = -1;
+
+        private void record(long latencyNanos) {
+            long n = recorded.getAndIncrement();
+            samples[(int) (n % LATENCY_SAMPLES)] = latencyNanos;
+        }
+
+        private int sampleCount() {
+            return (int) Math.min(recorded.get(), LATENCY_SAMPLES);
+        }
+
+        /**
+         * Sorted copy of the ring buffer, re-sorted at most every 32 new samples
+         */
+        private long[] sortedSamples() {
+            long n = recorded.get();
+            if (sortedAt >= 0 && n - sortedAt < 32) {
+                return sortedCache;
+            }
+            long[] copy = Arrays.copyOf(samples, (int) Math.min(n, LATENCY_SAMPLES));
+            Arrays.sort(copy);
+            sortedCache = copy;
+            sortedAt = n;
+            return copy;
+        }
+
+        private long percentileNanos(double percentile) {
+            long[] sorted = sortedSamples();
+            return sorted.length == 0 ? 0L : sorted[percentileIndex(sorted.length, percentile)];
+        }
+
+        private boolean tryAcquireHedge(double budgetPercent) {
+            if ((hedges.sum() + 1) * 100.0 > calls.sum() * budgetPercent) {
+                return false;
+            }
+            hedges.increment();
+            return true;
+        }
+    }
+}
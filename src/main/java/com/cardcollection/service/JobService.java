@@ -0,0 +1,273 @@
+package com.cardcollection.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Runs bulk and admin work off the request threads.
+ *
+ * Jobs go to their own bounded, low-priority pool (jobs.parallelism workers,
+ * jobs.queue-capacity waiting) so long imports can't starve interactive
+ * requests. Progress, cancellation and results are tracked in memory and
+ * dropped jobs.retention-ms after they finish.
+ */
+@Service
+public class JobService {
+
+    public static final String STATE_QUEUED = "QUEUED";
+    public static final String STATE_RUNNING = "RUNNING";
+    public static final String STATE_SUCCEEDED = "SUCCEEDED";
+    public static final String STATE_FAILED = "FAILED";
+    public static final String STATE_CANCELLED = "CANCELLED";
+
+    private final ThreadPoolExecutor executor;
+    private final long retentionMs;
+    private final Map<String, JobHandle> jobs = new ConcurrentHashMap<>();
+
+    public JobService(@Value("${jobs.parallelism:2}") int parallelism,
+                      @Value("${jobs.queue-capacity:50}") int queueCapacity,
+                      @Value("${jobs.retention-ms:3600000}") long retentionMs) {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "bulk-job-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        this.retentionMs = retentionMs;
+    }
+
+    /**
+     * Queue a job; throws RejectedExecutionException when the queue is full
+     */
+    public JobStatus submit(String type, JobTask task) {
+        return submit(type, task, null);
+    }
+
+    /**
+     * Queue a job whose caller set something up for it; onCancelledBeforeStart
+     * undoes that if the job is cancelled (or the pool shut down) before it runs
+     */
+    public JobStatus submit(String type, JobTask task, Runnable onCancelledBeforeStart) {
+        JobHandle handle = new JobHandle(UUID.randomUUID().toString(), type, onCancelledBeforeStart);
+        jobs.put(handle.id, handle);
+        try {
+            handle.future = executor.submit(() -> run(handle, task));
+        } catch (RuntimeException e) {
+            jobs.remove(handle.id);
+            throw e;
+        }
+        System.out.println("✅ Job submitted: " + type + " (ID: " + handle.id + ")");
+        return handle.status();
+    }
+
+    public JobStatus getJob(String jobId) {
+        JobHandle handle = jobs.get(jobId);
+        return handle != null ? handle.status() : null;
+    }
+
+    public List<JobStatus> listJobs() {
+        return jobs.values().stream()
+            .map(JobHandle::status)
+            .sorted(Comparator.comparingLong(JobStatus::getSubmittedAt).reversed())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Result of a finished job, or null
+     */
+    public Object getResult(String jobId) {
+        JobHandle handle = jobs.get(jobId);
+        return handle != null ? handle.result : null;
+    }
+
+    /**
+     * Ask a job to stop. A queued job is taken off the queue and is CANCELLED
+     * straight away; a running job stays RUNNING until it stops at its next
+     * checkpoint (or finishes anyway).
+     */
+    public JobStatus cancel(String jobId) {
+        JobHandle handle = jobs.get(jobId);
+        if (handle == null) {
+            return null;
+        }
+        handle.cancelled = true;
+        if (handle.cancelIfQueued() && handle.future instanceof Runnable) {
+            // Free its queue slot; if it's already been picked up, it sees it was cancelled and returns
+            executor.remove((Runnable) handle.future);
+        }
+        return handle.status();
+    }
+
+    @Scheduled(fixedDelayString = "${jobs.cleanup-interval-ms:60000}")
+    public void evictFinishedJobs() {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        jobs.values().removeIf(handle -> handle.finishedAt != null && handle.finishedAt < cutoff);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobs.values().forEach(handle -> handle.cancelled = true);
+        executor.shutdown();
+    }
+
+    private void run(JobHandle handle, JobTask task) {
+        if (!handle.start()) {
+            return;
+        }
+        try {
+            handle.result = task.run(handle);
+            handle.finish(STATE_SUCCEEDED, null);
+            System.out.println("✅ Job finished: " + handle.type + " (ID: " + handle.id + ")");
+        } catch (CancellationException e) {
+            handle.finish(STATE_CANCELLED, null);
+            System.out.println("✅ Job cancelled: " + handle.type + " (ID: " + handle.id + ")");
+        } catch (Exception e) {
+            handle.finish(STATE_FAILED, e.getMessage());
+            System.err.println("❌ Job failed: " + handle.type + " (ID: " + handle.id + "): " + e.getMessage());
+        }
+    }
+
+    /**
+     * Work submitted as a job
+     */
+    @FunctionalInterface
+    public interface JobTask {
+        Object run(JobContext context) throws Exception;
+    }
+
+    /**
+     * What a running job can see of itself: progress reporting and cancellation
+     */
+    public interface JobContext {
+        void setTotal(long total);
+
+        void advance(long done);
+
+        boolean isCancelled();
+
+        /**
+         * Throw CancellationException if the job was cancelled
+         */
+        default void checkCancelled() {
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+        }
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class JobStatus {
+        private String id;
+        private String type;
+        private String state;            // QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+        private long total;
+        private long completed;
+        private long submittedAt;
+        private Long startedAt;
+        private Long finishedAt;
+        private String error;
+    }
+
+    private static class JobHandle implements JobContext {
+        private final String id;
+        private final String type;
+        private final Runnable onCancelledBeforeStart;
+        private final long submittedAt = System.currentTimeMillis();
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private volatile String state = STATE_QUEUED;
+        private volatile boolean cancelled = false;
+        private volatile Future<?> future;
+        private volatile Object result;
+        private volatile Long startedAt;
+        private volatile Long finishedAt;
+        private volatile String error;
+
+        private JobHandle(String id, String type, Runnable onCancelledBeforeStart) {
+            this.id = id;
+            this.type = type;
+            this.onCancelledBeforeStart = onCancelledBeforeStart;
+        }
+
+        @Override
+        public void setTotal(long total) {
+            this.total.set(total);
+        }
+
+        @Override
+        public void advance(long done) {
+            completed.addAndGet(done);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Move from QUEUED to RUNNING, unless the job was cancelled while queued
+         */
+        private synchronized boolean start() {
+            if (cancelled) {
+                cancelIfQueued();
+                return false;
+            }
+            state = STATE_RUNNING;
+            startedAt = System.currentTimeMillis();
+            return true;
+        }
+
+        /**
+         * Finish a job that never started as CANCELLED and run its cleanup
+         * hook, once; false if it already started or finished
+         */
+        private synchronized boolean cancelIfQueued() {
+            if (!STATE_QUEUED.equals(state) || finishedAt != null) {
+                return false;
+            }
+            finish(STATE_CANCELLED, null);
+            if (onCancelledBeforeStart != null) {
+                try {
+                    onCancelledBeforeStart.run();
+                } catch (RuntimeException e) {
+                    System.err.println("❌ Cleanup of cancelled job failed: " + type + " (ID: " + id + "): "
+                        + e.getMessage());
+                }
+            }
+            return true;
+        }
+
+        private synchronized void finish(String finalState, String errorMessage) {
+            if (finishedAt != null) {
+                return;
+            }
+            state = finalState;
+            error = errorMessage;
+            finishedAt = System.currentTimeMillis();
+        }
+
+        private JobStatus status() {
+            return new JobStatus(id, type, state, total.get(), completed.get(),
+                submittedAt, startedAt, finishedAt, error);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.cardcollection.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Default sink: writes fired alerts to the application log
+ */
+@Component
+public class LogAlertSink implements AlertSink {
+
+    @Override
+    public void deliver(Notification notification) {
+        System.out.println("🔔 Alert " + notification.getAlert().getId() + " for user "
+            + notification.getAlert().getUserId() + ": " + notification.getMessage());
+    }
+}
@@ -0,0 +1,334 @@
+package com.cardcollection.service;
+
+import java.util.Arrays;
+
+/**
+ * Sorted primitive index of one numeric card attribute.
+ *
+ * Entries are ordered by (value, id) and split into blocks of parallel
+ * value / ID arrays. Readers always see an immutable snapshot, writers
+ * replace it under the catalog lock, so range lookups are binary searches and
+ * never block. An update copies only the block it touches plus the block
+ * table, so it costs O(BLOCK_SIZE + n / BLOCK_SIZE) instead of O(n).
+ */
+class NumericIndex {
+
+    static final int BLOCK_SIZE = 512;
+
+    private volatile Snapshot snapshot = Snapshot.of(new Block[0]);
+
+    /**
+     * Replace the whole index with the given entries (unsorted)
+     */
+    void rebuild(double[] values, String[] ids) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int cmp = Double.compare(values[a], values[b]);
+            return cmp != 0 ? cmp : ids[a].compareTo(ids[b]);
+        });
+
+        double[] sortedValues = new double[values.length];
+        String[] sortedIds = new String[ids.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedValues[i] = values[order[i]];
+            sortedIds[i] = ids[order[i]];
+        }
+        restore(sortedValues, sortedIds);
+    }
+
+    /**
+     * Restore an index from arrays that are already sorted by (value, id)
+     */
+    void restore(double[] sortedValues, String[] sortedIds) {
+        Block[] blocks = new Block[(sortedValues.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        for (int b = 0; b < blocks.length; b++) {
+            int from = b * BLOCK_SIZE;
+            int to = Math.min(from + BLOCK_SIZE, sortedValues.length);
+            blocks[b] = new Block(Arrays.copyOfRange(sortedValues, from, to), Arrays.copyOfRange(sortedIds, from, to));
+        }
+        snapshot = Snapshot.of(blocks);
+    }
+
+    /**
+     * Move a card from its old value to its new value (either may be null)
+     */
+    void update(String id, Double oldValue, Double newValue) {
+        if (oldValue == null && newValue == null) {
+            return;
+        }
+        if (oldValue != null && oldValue.equals(newValue)) {
+            return;
+        }
+
+        Block[] blocks = snapshot.blocks;
+        if (oldValue != null) {
+            blocks = remove(blocks, oldValue, id);
+        }
+        if (newValue != null) {
+            blocks = insert(blocks, newValue, id);
+        }
+        snapshot = Snapshot.of(blocks);
+    }
+
+    /**
+     * Cards whose value lies in [min, max]; null bounds are open
+     */
+    Slice range(Double min, Double max) {
+        Snapshot current = snapshot;
+        int from = min == null ? 0 : current.lowerBound(min, false);
+        int to = max == null ? current.size() : current.lowerBound(max, true);
+        return new Slice(current, from, Math.max(from, to));
+    }
+
+    Slice all() {
+        Snapshot current = snapshot;
+        return new Slice(current, 0, current.size());
+    }
+
+    int size() {
+        return snapshot.size();
+    }
+
+    int blockCount() {
+        return snapshot.blocks.length;
+    }
+
+    private static Block[] remove(Block[] blocks, double value, String id) {
+        int b = blockFor(blocks, value, id);
+        if (b >= blocks.length) {
+            return blocks;
+        }
+        Block block = blocks[b];
+        int pos = block.find(value, id);
+        if (pos < 0) {
+            return blocks;
+        }
+        if (block.size() == 1) {
+            Block[] result = new Block[blocks.length - 1];
+            System.arraycopy(blocks, 0, result, 0, b);
+            System.arraycopy(blocks, b + 1, result, b, blocks.length - b - 1);
+            return result;
+        }
+        Block[] result = blocks.clone();
+        result[b] = block.without(pos);
+        return result;
+    }
+
+    private static Block[] insert(Block[] blocks, double value, String id) {
+        if (blocks.length == 0) {
+            return new Block[] { new Block(new double[] { value }, new String[] { id }) };
+        }
+        // Past the last block's end means appending to the last block
+        int b = Math.min(blockFor(blocks, value, id), blocks.length - 1);
+        Block block = blocks[b];
+        int pos = block.find(value, id);
+        if (pos >= 0) {
+            return blocks;
+        }
+        Block grown = block.with(-pos - 1, value, id);
+        if (grown.size() <= 2 * BLOCK_SIZE) {
+            Block[] result = blocks.clone();
+            result[b] = grown;
+            return result;
+        }
+
+        int half = grown.size() / 2;
+        Block[] result = new Block[blocks.length + 1];
+        System.arraycopy(blocks, 0, result, 0, b);
+        result[b] = grown.part(0, half);
+        result[b + 1] = grown.part(half, grown.size());
+        System.arraycopy(blocks, b + 1, result, b + 2, blocks.length - b - 1);
+        return result;
+    }
+
+    /**
+     * First block whose last entry is >= (value, id), or blocks.length if none
+     */
+    private static int blockFor(Block[] blocks, double value, String id) {
+        int low = 0;
+        int high = blocks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            Block block = blocks[mid];
+            int last = block.size() - 1;
+            int cmp = Double.compare(block.values[last], value);
+            if (cmp == 0) {
+                cmp = block.ids[last].compareTo(id);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static final class Block {
+        private final double[] values;
+        private final String[] ids;
+
+        private Block(double[] values, String[] ids) {
+            this.values = values;
+            this.ids = ids;
+        }
+
+        int size() {
+            return values.length;
+        }
+
+        /**
+         * Position of (value, id), or -(insertion point + 1)
+         */
+        int find(double value, String id) {
+            int low = 0;
+            int high = values.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = Double.compare(values[mid], value);
+                if (cmp == 0) {
+                    cmp = ids[mid].compareTo(id);
+                }
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * First position whose value is >= value (or > value when strict)
+         */
+        int lowerBound(double value, boolean strict) {
+            int low = 0;
+            int high = values.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] < value || (strict && values[mid] == value)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        Block without(int pos) {
+            double[] v = new double[values.length - 1];
+            String[] s = new String[ids.length - 1];
+            System.arraycopy(values, 0, v, 0, pos);
+            System.arraycopy(ids, 0, s, 0, pos);
+            System.arraycopy(values, pos + 1, v, pos, values.length - pos - 1);
+            System.arraycopy(ids, pos + 1, s, pos, ids.length - pos - 1);
+            return new Block(v, s);
+        }
+
+        Block with(int pos, double value, String id) {
+            double[] v = new double[values.length + 1];
+            String[] s = new String[ids.length + 1];
+            System.arraycopy(values, 0, v, 0, pos);
+            System.arraycopy(ids, 0, s, 0, pos);
+            v[pos] = value;
+            s[pos] = id;
+            System.arraycopy(values, pos, v, pos + 1, values.length - pos);
+            System.arraycopy(ids, pos, s, pos + 1, ids.length - pos);
+            return new Block(v, s);
+        }
+
+        Block part(int from, int to) {
+            return new Block(Arrays.copyOfRange(values, from, to), Arrays.copyOfRange(ids, from, to));
+        }
+    }
+
+    private static final class Snapshot {
+        private final Block[] blocks;
+        private final int[] starts;      // starts[b] = global position of block b's first entry; last = size
+
+        private Snapshot(Block[] blocks, int[] starts) {
+            this.blocks = blocks;
+            this.starts = starts;
+        }
+
+        static Snapshot of(Block[] blocks) {
+            int[] starts = new int[blocks.length + 1];
+            for (int b = 0; b < blocks.length; b++) {
+                starts[b + 1] = starts[b] + blocks[b].size();
+            }
+            return new Snapshot(blocks, starts);
+        }
+
+        int size() {
+            return starts[blocks.length];
+        }
+
+        /**
+         * Global position of the first value >= value (or > value when strict)
+         */
+        int lowerBound(double value, boolean strict) {
+            int low = 0;
+            int high = blocks.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                double last = blocks[mid].values[blocks[mid].size() - 1];
+                if (last < value || (strict && last == value)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low == blocks.length ? size() : starts[low] + blocks[low].lowerBound(value, strict);
+        }
+
+        /**
+         * Block holding global position p
+         */
+        int blockOf(int p) {
+            int b = Arrays.binarySearch(starts, 0, blocks.length, p);
+            if (b >= 0) {
+                return b;
+            }
+            return -b - 2;
+        }
+    }
+
+    /**
+     * Contiguous run of the index, in ascending value order
+     */
+    static final class Slice {
+        private final Snapshot snapshot;
+        private final int from;
+        private final int to;
+
+        private Slice(Snapshot snapshot, int from, int to) {
+            this.snapshot = snapshot;
+            this.from = from;
+            this.to = to;
+        }
+
+        int size() {
+            return to - from;
+        }
+
+        /**
+         * ID at position i of the slice, walking ascending or descending
+         */
+        String idAt(int i, boolean descending) {
+            int p = descending ? to - 1 - i : from + i;
+            int b = snapshot.blockOf(p);
+            return snapshot.blocks[b].ids[p - snapshot.starts[b]];
+        }
+
+        double valueAt(int i, boolean descending) {
+            int p = descending ? to - 1 - i : from + i;
+            int b = snapshot.blockOf(p);
+            return snapshot.blocks[b].values[p - snapshot.starts[b]];
+        }
+    }
+}
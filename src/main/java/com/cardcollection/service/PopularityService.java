@@ -0,0 +1,436 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import com.google.api.core.ApiFuture;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cross-user popularity counters ("most collected" / "most wishlisted").
+ *
+ * A card counts each collector once, however many holdings (conditions)
+ * they have of it. Collection changes only mark the (user, card, wishlist)
+ * pair as changed. A scheduled flush reconciles each changed pair in a
+ * transaction: if whether the user holds the card no longer matches their
+ * marker document (card_collectors), the marker is created or deleted and
+ * one of popularity.shards shard documents of the card
+ * (card_counters/{cardId}/shards/{n}) is incremented or decremented.
+ * Reconciling is idempotent, so repeated or racing changes can't count a
+ * collector twice. Changed pairs are only held in memory until the flush;
+ * a periodic sweep re-derives them from the holdings' updatedAt and the
+ * holding tombstones, so changes a node lost by stopping early still land.
+ *
+ * Rankings are kept in memory on every node. The first materialization
+ * reads all shards; later ones only read shards with updatedAt since the
+ * previous run (held back by the sync clock skew, see ChangeLog), which
+ * needs a collection group index on shards.updatedAt.
+ */
+@Service
+public class PopularityService {
+
+    public static final String TYPE_COLLECTED = "collected";
+    public static final String TYPE_WISHLISTED = "wishlisted";
+
+    private static final String COUNTERS_COLLECTION = "card_counters";
+    private static final String SHARDS_COLLECTION = "shards";
+    private static final String COLLECTORS_COLLECTION = "card_collectors";
+    private static final String HOLDINGS_COLLECTION = "collections";
+    private static final String STATE_COLLECTION = "system";
+    private static final String SWEEP_DOCUMENT = "popularity_sweep";
+    // Distinct collectors; the older per-holding "collected" / "wishlisted" shard fields are ignored
+    private static final String FIELD_COLLECTORS = "collectors";
+    private static final String FIELD_WISHLISTERS = "wishlisters";
+    private static final int MAX_CONCURRENT_RECONCILES = 50;
+    private static final int BACKFILL_PAGE_SIZE = 500;
+
+    private final Firestore firestore;
+    private final CardCatalog cardCatalog;
+    private final ChangeLog changeLog;
+    private final FirestoreCallPolicy callPolicy;
+    private final JobService jobService;
+    private final int shards;
+    private final int topK;
+    private final Set<CollectorKey> changed = ConcurrentHashMap.newKeySet();
+
+    // Materialization state, only touched by materialize()
+    private final Map<String, long[]> shardCounts = new HashMap<>();    // shard path -> [collectors, wishlisters]
+    private final Map<String, long[]> totals = new HashMap<>();         // cardId -> [collectors, wishlisters]
+    private long syncedAt;
+
+    private volatile Rankings rankings = new Rankings(Collections.emptyList(), Collections.emptyList(),
+        Collections.emptyMap(), 0L);
+
+    public PopularityService(Firestore firestore, CardCatalog cardCatalog, ChangeLog changeLog,
+                             FirestoreCallPolicy callPolicy, JobService jobService,
+                             @Value("${popularity.shards:10}") int shards,
+                             @Value("${popularity.top-k:100}") int topK) {
+        this.firestore = firestore;
+        this.cardCatalog = cardCatalog;
+        this.changeLog = changeLog;
+        this.callPolicy = callPolicy;
+        this.jobService = jobService;
+        this.shards = Math.max(shards, 1);
+        this.topK = topK;
+    }
+
+    /**
+     * Note that a holding of the card appeared or disappeared for the user,
+     * in the collection or on the wishlist; the next flush recounts them
+     */
+    public void record(String userId, String cardId, boolean wishlist) {
+        if (userId == null || cardId == null || cardId.isEmpty()) {
+            return;
+        }
+        changed.add(new CollectorKey(userId, cardId, wishlist));
+    }
+
+    /**
+     * Reconcile the changed (user, card) pairs with the counter shards
+     */
+    @Scheduled(fixedDelayString = "${popularity.flush-interval-ms:2000}")
+    public void flush() {
+        reconcileChanged();
+    }
+
+    /**
+     * Find the pairs whose change a node may have lost (it stopped before
+     * flushing them) from what Firestore already records, and reconcile them:
+     * every holding written since the last sweep, and every counted card of
+     * users who deleted a holding since (the tombstone names the user, not
+     * the card). The watermark is shared by all nodes in system/popularity_sweep
+     * and only moves once the sweep's pairs are reconciled.
+     */
+    @Scheduled(fixedDelayString = "${popularity.sweep-interval-ms:300000}",
+               initialDelayString = "${popularity.sweep-initial-delay-ms:30000}")
+    public void sweep() {
+        try {
+            DocumentReference stateRef = firestore.collection(STATE_COLLECTION).document(SWEEP_DOCUMENT);
+            DocumentSnapshot state = callPolicy.read("popularity-sweep", stateRef::get);
+            Long sweptUntil = state.exists() ? state.getLong("sweptUntil") : null;
+            ChangeLog.Window window = changeLog.open(sweptUntil != null ? sweptUntil : 0L);
+
+            if (window.isReset()) {
+                // First sweep, or its tombstones are purged: start here (submitBackfill recounts the past)
+                System.out.println("⏭️ Popularity sweep starting from now, nothing to re-derive");
+            } else {
+                long pairs = recordChangedSince(window.since());
+                int failed = reconcileChanged();
+                if (failed > 0) {
+                    System.err.println("❌ Popularity sweep left " + failed + " collectors unreconciled, will retry");
+                    return;
+                }
+                System.out.println("✅ Popularity sweep reconciled " + pairs + " changed collectors");
+            }
+
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("sweptUntil", window.next());
+            fields.put("updatedAt", System.currentTimeMillis());
+            callPolicy.write("popularity-sweep", () -> stateRef.set(fields));
+        } catch (Exception e) {
+            System.err.println("❌ Popularity sweep failed: " + e.getMessage());
+        }
+    }
+
+    private long recordChangedSince(long since) throws ExecutionException, InterruptedException {
+        long pairs = 0;
+        DocumentSnapshot last = null;
+        while (true) {
+            Query page = firestore.collection(HOLDINGS_COLLECTION)
+                .whereGreaterThanOrEqualTo("updatedAt", since)
+                .orderBy("updatedAt")
+                .limit(BACKFILL_PAGE_SIZE);
+            if (last != null) {
+                page = page.startAfter(last);
+            }
+            List<QueryDocumentSnapshot> documents = callPolicy.read("popularity-sweep", page::get).getDocuments();
+            for (DocumentSnapshot document : documents) {
+                record(document.getString("userId"), document.getString("cardId"),
+                    Boolean.TRUE.equals(document.getBoolean("isWishlist")));
+            }
+            pairs += documents.size();
+            if (documents.size() < BACKFILL_PAGE_SIZE) {
+                break;
+            }
+            last = documents.get(documents.size() - 1);
+        }
+
+        for (String userId : changeLog.usersWithDeletionsSince(ChangeLog.KIND_COLLECTION_ITEM, since)) {
+            Query markers = firestore.collection(COLLECTORS_COLLECTION).whereEqualTo("userId", userId);
+            for (DocumentSnapshot marker : callPolicy.read("popularity-sweep", markers::get).getDocuments()) {
+                record(userId, marker.getString("cardId"), Boolean.TRUE.equals(marker.getBoolean("wishlist")));
+                pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Reconcile and clear the changed pairs; returns how many failed (they stay marked)
+     */
+    private synchronized int reconcileChanged() {
+        List<CollectorKey> drained = new ArrayList<>();
+        for (Iterator<CollectorKey> it = changed.iterator(); it.hasNext(); ) {
+            drained.add(it.next());
+            it.remove();
+        }
+
+        int failed = 0;
+        String lastError = null;
+        for (int start = 0; start < drained.size(); start += MAX_CONCURRENT_RECONCILES) {
+            List<CollectorKey> chunk = drained.subList(start, Math.min(start + MAX_CONCURRENT_RECONCILES, drained.size()));
+            List<ApiFuture<Long>> futures = new ArrayList<>(chunk.size());
+            // Started together, so not through FirestoreCallPolicy, which waits on one call at a time
+            for (CollectorKey key : chunk) {
+                futures.add(firestore.runTransaction(transaction -> reconcile(transaction, key)));
+            }
+            for (int i = 0; i < chunk.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    changed.addAll(drained.subList(start + i, drained.size()));
+                    return failed + drained.size() - start - i;
+                } catch (Exception e) {
+                    // Recounted with the next flush
+                    changed.add(chunk.get(i));
+                    failed++;
+                    lastError = e.getMessage();
+                }
+            }
+        }
+        if (failed > 0) {
+            System.err.println("❌ Popularity flush failed for " + failed + " collectors, will retry: " + lastError);
+        }
+        return failed;
+    }
+
+    /**
+     * Recount the user for every holding they have, for counters written
+     * before collectors were counted once per card. Safe to run again.
+     */
+    public JobService.JobStatus submitBackfill() {
+        return jobService.submit("popularity-backfill", context -> {
+            long holdings = 0;
+            DocumentSnapshot last = null;
+            while (true) {
+                context.checkCancelled();
+                Query page = firestore.collection(HOLDINGS_COLLECTION)
+                    .orderBy(FieldPath.documentId())
+                    .limit(BACKFILL_PAGE_SIZE);
+                if (last != null) {
+                    page = page.startAfter(last);
+                }
+                List<QueryDocumentSnapshot> documents = callPolicy.read("popularity-backfill", page::get).getDocuments();
+                for (DocumentSnapshot document : documents) {
+                    record(document.getString("userId"), document.getString("cardId"),
+                        Boolean.TRUE.equals(document.getBoolean("isWishlist")));
+                }
+                // Reconcile each page before reading the next, so the backlog stays small
+                flush();
+                holdings += documents.size();
+                context.advance(documents.size());
+                if (documents.size() < BACKFILL_PAGE_SIZE) {
+                    break;
+                }
+                last = documents.get(documents.size() - 1);
+            }
+            System.out.println("✅ Popularity backfill recounted " + holdings + " holdings");
+            return Map.of("holdings", holdings);
+        });
+    }
+
+    /**
+     * Fold the shards changed since the last run into the totals and rebuild
+     * the top-K rankings
+     */
+    @Scheduled(fixedDelayString = "${popularity.materialize-interval-ms:60000}",
+               initialDelayString = "${popularity.materialize-initial-delay-ms:10000}")
+    public synchronized void materialize() {
+        try {
+            ChangeLog.Window window = changeLog.open(syncedAt);
+            Query query = firestore.collectionGroup(SHARDS_COLLECTION);
+            if (!window.isReset()) {
+                query = query.whereGreaterThanOrEqualTo("updatedAt", window.since());
+            }
+            Query shardQuery = query;
+            List<QueryDocumentSnapshot> changedShards = callPolicy.read("popularity-shards", shardQuery::get).getDocuments();
+
+            if (window.isReset()) {
+                shardCounts.clear();
+                totals.clear();
+            }
+            for (DocumentSnapshot shard : changedShards) {
+                String cardId = shard.getString("cardId");
+                if (cardId == null) {
+                    continue;
+                }
+                long[] counts = { count(shard, FIELD_COLLECTORS), count(shard, FIELD_WISHLISTERS) };
+                long[] previous = shardCounts.put(shard.getReference().getPath(), counts);
+                long[] total = totals.computeIfAbsent(cardId, id -> new long[2]);
+                total[0] += counts[0] - (previous != null ? previous[0] : 0L);
+                total[1] += counts[1] - (previous != null ? previous[1] : 0L);
+            }
+            syncedAt = window.next();
+
+            Map<String, Long> collectedCounts = new HashMap<>();
+            totals.forEach((cardId, total) -> collectedCounts.put(cardId, total[0]));
+            rankings = new Rankings(top(totals, 0), top(totals, 1), collectedCounts, System.currentTimeMillis());
+            System.out.println("✅ Popularity rankings materialized (" + changedShards.size() + " shards read, "
+                + totals.size() + " cards)");
+        } catch (Exception e) {
+            System.err.println("❌ Popularity materialization failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Top cards by collected or wishlisted count, as of the last materialization
+     */
+    public List<PopularCard> getTopCards(String type, int limit) {
+        List<PopularCard> ranking;
+        if (type == null || TYPE_COLLECTED.equalsIgnoreCase(type)) {
+            ranking = rankings.collected;
+        } else if (TYPE_WISHLISTED.equalsIgnoreCase(type)) {
+            ranking = rankings.wishlisted;
+        } else {
+            throw new IllegalArgumentException("Unsupported popularity type: " + type);
+        }
+        return ranking.subList(0, Math.max(0, Math.min(limit, ranking.size())));
+    }
+
+    /**
+     * How many users have the card in their collection, as of the last materialization
+     */
+    public long getCollectedCount(String cardId) {
+        return rankings.collectedCounts.getOrDefault(cardId, 0L);
+    }
+
+    public long getMaterializedAt() {
+        return rankings.materializedAt;
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private List<PopularCard> top(Map<String, long[]> totals, int slot) {
+        PriorityQueue<Map.Entry<String, long[]>> heap = new PriorityQueue<>(
+            Comparator.comparingLong((Map.Entry<String, long[]> entry) -> entry.getValue()[slot]));
+        for (Map.Entry<String, long[]> entry : totals.entrySet()) {
+            if (entry.getValue()[slot] <= 0) {
+                continue;
+            }
+            heap.offer(entry);
+            if (heap.size() > topK) {
+                heap.poll();
+            }
+        }
+
+        List<PopularCard> ranking = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            Map.Entry<String, long[]> entry = heap.poll();
+            Card card = cardCatalog.get(entry.getKey());
+            ranking.add(new PopularCard(entry.getKey(), card != null ? card.getName() : null, entry.getValue()[slot]));
+        }
+        Collections.reverse(ranking);
+        return Collections.unmodifiableList(ranking);
+    }
+
+    /**
+     * Bring one collector's marker and the card's counter in line with
+     * whether the user still holds the card; returns the change applied
+     */
+    private long reconcile(Transaction transaction, CollectorKey key) throws Exception {
+        Query holdings = firestore.collection(HOLDINGS_COLLECTION)
+            .whereEqualTo("userId", key.getUserId())
+            .whereEqualTo("cardId", key.getCardId())
+            .whereEqualTo("isWishlist", key.isWishlist())
+            .limit(1);
+        DocumentReference markerRef = firestore.collection(COLLECTORS_COLLECTION).document(
+            CollectionService.digestId(key.getUserId() + '\u0000' + key.getCardId() + '\u0000'
+                + (key.isWishlist() ? "wishlist" : "owned")));
+
+        boolean holds = !transaction.get(holdings).get().isEmpty();
+        boolean counted = transaction.get(markerRef).get().exists();
+        if (holds == counted) {
+            return 0L;
+        }
+
+        long now = System.currentTimeMillis();
+        long delta = holds ? 1L : -1L;
+        if (holds) {
+            Map<String, Object> marker = new HashMap<>();
+            marker.put("userId", key.getUserId());
+            marker.put("cardId", key.getCardId());
+            marker.put("wishlist", key.isWishlist());
+            marker.put("countedAt", now);
+            transaction.set(markerRef, marker);
+        } else {
+            transaction.delete(markerRef);
+        }
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("cardId", key.getCardId());
+        fields.put(key.isWishlist() ? FIELD_WISHLISTERS : FIELD_COLLECTORS, FieldValue.increment(delta));
+        fields.put("updatedAt", now);
+        transaction.set(shardRef(key.getCardId(), ThreadLocalRandom.current().nextInt(shards)), fields,
+            SetOptions.merge());
+        return delta;
+    }
+
+    private static long count(DocumentSnapshot shard, String field) {
+        Long value = shard.getLong(field);
+        return value != null ? value : 0L;
+    }
+
+    private DocumentReference shardRef(String cardId, int shard) {
+        return firestore.collection(COUNTERS_COLLECTION).document(cardId)
+            .collection(SHARDS_COLLECTION).document(String.valueOf(shard));
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class PopularCard {
+        private String cardId;
+        private String name;
+        private long count;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    private static class CollectorKey {
+        private String userId;
+        private String cardId;
+        private boolean wishlist;
+    }
+
+    private static class Rankings {
+        private final List<PopularCard> collected;
+        private final List<PopularCard> wishlisted;
+        private final Map<String, Long> collectedCounts;
+        private final long materializedAt;
+
+        private Rankings(List<PopularCard> collected, List<PopularCard> wishlisted,
+                         Map<String, Long> collectedCounts, long materializedAt) {
+            this.collected = collected;
+            this.wishlisted = wishlisted;
+            this.collectedCounts = collectedCounts;
+            this.materializedAt = materializedAt;
+        }
+    }
+}
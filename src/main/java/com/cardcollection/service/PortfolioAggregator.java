@@ -0,0 +1,211 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import com.cardcollection.model.CollectionItem;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Group-by aggregation of owned collection items. Every grouping is filled in
+ * the same pass over the items, into mutable accumulators holding primitives;
+ * above the parallel threshold the list is split fork-join style and the
+ * partial results merged.
+ */
+class PortfolioAggregator {
+
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM").withZone(ZoneOffset.UTC);
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private final int parallelThreshold;
+
+    PortfolioAggregator(int parallelThreshold) {
+        this.parallelThreshold = Math.max(parallelThreshold, 1);
+    }
+
+    /**
+     * Aggregate the owned (non-wishlist) items; unitPrices holds the market
+     * price per card ID, cards without one count as zero value
+     */
+    Partial aggregate(List<CollectionItem> items, Map<String, Double> unitPrices) {
+        if (items.size() < parallelThreshold) {
+            return aggregateRange(items, 0, items.size(), unitPrices);
+        }
+        return ForkJoinPool.commonPool().invoke(new AggregateTask(items, 0, items.size(), unitPrices));
+    }
+
+    private static Partial aggregateRange(List<CollectionItem> items, int from, int to, Map<String, Double> unitPrices) {
+        Partial partial = new Partial();
+        for (int i = from; i < to; i++) {
+            CollectionItem item = items.get(i);
+            if (Boolean.TRUE.equals(item.getIsWishlist())) {
+                continue;
+            }
+            int quantity = item.getQuantity() != null ? item.getQuantity() : 1;
+            Double unitPrice = item.getCardId() != null ? unitPrices.get(item.getCardId()) : null;
+            double value = unitPrice != null ? unitPrice * quantity : 0.0;
+            double invested = invested(item);
+
+            partial.total.add(quantity, value, invested);
+            Card card = item.getCard();
+            for (Dimension dimension : Dimension.values()) {
+                partial.group(dimension, dimension.keyOf(item, card)).add(quantity, value, invested);
+            }
+        }
+        return partial;
+    }
+
+    /**
+     * What was paid for an item: the stored total over its copies with a known
+     * price (a merged holding's average price times its quantity would also
+     * count the unpriced copies), or price times quantity for items written
+     * before totals were kept
+     */
+    static double invested(CollectionItem item) {
+        if (item.getPurchaseTotal() != null) {
+            return item.getPurchaseTotal();
+        }
+        if (item.getPurchasePrice() == null) {
+            return 0.0;
+        }
+        return item.getPurchasePrice() * (item.getQuantity() != null ? item.getQuantity() : 1);
+    }
+
+    /**
+     * Dimensions every analytics call groups by
+     */
+    enum Dimension {
+        GAME,
+        SET,
+        RARITY,
+        COLOR,
+        CONDITION,
+        ACQUIRED_MONTH;
+
+        String keyOf(CollectionItem item, Card card) {
+            String key;
+            switch (this) {
+                case GAME:
+                    key = card != null ? card.getGame() : null;
+                    break;
+                case SET:
+                    key = card != null ? (card.getSetCode() != null ? card.getSetCode() : card.getSet()) : null;
+                    break;
+                case RARITY:
+                    key = card != null ? card.getRarity() : null;
+                    break;
+                case COLOR:
+                    key = card != null ? card.getColor() : null;
+                    break;
+                case CONDITION:
+                    key = item.getCondition();
+                    break;
+                case ACQUIRED_MONTH:
+                    key = item.getDateAcquired() != null ? MONTH.format(Instant.ofEpochMilli(item.getDateAcquired())) : null;
+                    break;
+                default:
+                    key = null;
+            }
+            return key != null && !key.isEmpty() ? key : UNKNOWN;
+        }
+
+        String paramName() {
+            return this == ACQUIRED_MONTH ? "acquiredMonth" : name().toLowerCase();
+        }
+    }
+
+    /**
+     * Running totals for one group
+     */
+    static class Accumulator {
+        int items;
+        long quantity;
+        double value;
+        double invested;
+
+        void add(int itemQuantity, double itemValue, double itemInvested) {
+            items++;
+            quantity += itemQuantity;
+            value += itemValue;
+            invested += itemInvested;
+        }
+
+        void merge(Accumulator other) {
+            items += other.items;
+            quantity += other.quantity;
+            value += other.value;
+            invested += other.invested;
+        }
+    }
+
+    /**
+     * Result of aggregating a slice of the collection
+     */
+    static class Partial {
+        final Accumulator total = new Accumulator();
+        final Map<Dimension, Map<String, Accumulator>> groups = new EnumMap<>(Dimension.class);
+
+        Partial() {
+            for (Dimension dimension : Dimension.values()) {
+                groups.put(dimension, new HashMap<>());
+            }
+        }
+
+        Accumulator group(Dimension dimension, String key) {
+            return groups.get(dimension).computeIfAbsent(key, k -> new Accumulator());
+        }
+
+        Partial merge(Partial other) {
+            total.merge(other.total);
+            other.groups.forEach((dimension, byKey) ->
+                byKey.forEach((key, accumulator) -> group(dimension, key).merge(accumulator)));
+            return this;
+        }
+
+        /**
+         * Groups of one dimension, most valuable first
+         */
+        List<Map.Entry<String, Accumulator>> sorted(Dimension dimension) {
+            List<Map.Entry<String, Accumulator>> entries = new ArrayList<>(groups.get(dimension).entrySet());
+            entries.sort(Comparator.comparingDouble((Map.Entry<String, Accumulator> entry) -> entry.getValue().value)
+                .reversed()
+                .thenComparing(Map.Entry::getKey));
+            return entries;
+        }
+    }
+
+    private class AggregateTask extends RecursiveTask<Partial> {
+        private final List<CollectionItem> items;
+        private final int from;
+        private final int to;
+        private final Map<String, Double> unitPrices;
+
+        private AggregateTask(List<CollectionItem> items, int from, int to, Map<String, Double> unitPrices) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.unitPrices = unitPrices;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= parallelThreshold) {
+                return aggregateRange(items, from, to, unitPrices);
+            }
+            int mid = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(items, from, mid, unitPrices);
+            left.fork();
+            Partial right = new AggregateTask(items, mid, to, unitPrices).compute();
+            return left.join().merge(right);
+        }
+    }
+}
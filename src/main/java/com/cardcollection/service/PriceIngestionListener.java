@@ -0,0 +1,13 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.PriceHistory;
+
+/**
+ * Hook called once for every price point accepted by PriceService.
+ * Implementations run on the ingesting thread, so they must be quick and
+ * must not throw.
+ */
+public interface PriceIngestionListener {
+
+    void onPricePoint(PriceHistory pricePoint);
+}
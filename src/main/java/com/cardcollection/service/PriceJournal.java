@@ -0,0 +1,779 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.PriceHistory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteBatch;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Optional write-behind journal for price ingestion (prices.journal.enabled).
+ *
+ * Appends are acknowledged once they are fsynced to a local segment file; a
+ * single writer thread group-commits everything queued behind the current
+ * fsync. A flusher thread drains the journal to Firestore in batches keyed by
+ * PriceHistory.id (so replays overwrite instead of duplicating) and records
+ * how far it got in a checkpoint file. After a crash the flusher resumes from
+ * the checkpoint: delivery is at-least-once.
+ *
+ * Record layout: int length, int crc32(payload), payload (PriceHistory JSON).
+ * Segments are named segment-{sequence}.log and rotated at
+ * prices.journal.segment-max-bytes; fully flushed segments are deleted.
+ *
+ * A chunk that fails prices.journal.max-flush-attempts times in a row is
+ * retried one record at a time; records Firestore rejects (or that can't be
+ * read back) are appended to dead-letter.ndjson and skipped, so one bad
+ * record can't stall everything acknowledged after it.
+ */
+@Component
+public class PriceJournal {
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String DEAD_LETTER_FILE = "dead-letter.ndjson";
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    private static final int MAX_BATCH_WRITES = 500;
+    private static final int MAX_DOCUMENT_ID_BYTES = 1500;
+    // Errors that say this record is bad, as opposed to Firestore being unavailable or misconfigured
+    private static final Set<StatusCode.Code> RECORD_ERROR_CODES = EnumSet.of(
+        StatusCode.Code.INVALID_ARGUMENT, StatusCode.Code.FAILED_PRECONDITION, StatusCode.Code.OUT_OF_RANGE);
+
+    private final Firestore firestore;
+    private final FirestoreCallPolicy callPolicy;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentMaxBytes;
+    private final int flushBatchSize;
+    private final long flushIdleMs;
+    private final long retryBackoffMs;
+    private final int maxFlushAttempts;
+    private final long appendTimeoutMs;
+
+    private final LinkedBlockingQueue<PendingAppend> appendQueue = new LinkedBlockingQueue<>();
+    private final AtomicLong pendingRecords = new AtomicLong();
+    private final AtomicLong appendedRecords = new AtomicLong();
+    private final AtomicLong flushedRecords = new AtomicLong();
+    private final AtomicLong deadLetteredRecords = new AtomicLong();
+    private volatile Position durable;
+    private volatile Position checkpoint;
+    private volatile String lastFlushError;
+    private volatile boolean running;
+    private volatile Throwable writerFailure;
+    private volatile Consumer<List<PriceHistory>> flushListener = points -> { };
+    private Thread writerThread;
+    private Thread flusherThread;
+
+    // Owned by the writer thread
+    private FileChannel activeChannel;
+    private long activeSegment;
+    private long activeOffset;
+
+    public PriceJournal(Firestore firestore, FirestoreCallPolicy callPolicy,
+                        @Value("${prices.journal.enabled:false}") boolean enabled,
+                        @Value("${prices.journal.dir:data/price-journal}") String directory,
+                        @Value("${prices.journal.segment-max-bytes:67108864}") long segmentMaxBytes,
+                        @Value("${prices.journal.flush-batch-size:500}") int flushBatchSize,
+                        @Value("${prices.journal.flush-idle-ms:200}") long flushIdleMs,
+                        @Value("${prices.journal.retry-backoff-ms:2000}") long retryBackoffMs,
+                        @Value("${prices.journal.max-flush-attempts:5}") int maxFlushAttempts,
+                        @Value("${prices.journal.append-timeout-ms:10000}") long appendTimeoutMs) {
+        this.firestore = firestore;
+        this.callPolicy = callPolicy;
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.flushBatchSize = Math.min(Math.max(flushBatchSize, 1), MAX_BATCH_WRITES);
+        this.flushIdleMs = flushIdleMs;
+        this.retryBackoffMs = retryBackoffMs;
+        this.maxFlushAttempts = Math.max(maxFlushAttempts, 1);
+        this.appendTimeoutMs = appendTimeoutMs;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Called with every batch of points once it is in Firestore (including
+     * points replayed after a restart)
+     */
+    public void setFlushListener(Consumer<List<PriceHistory>> flushListener) {
+        this.flushListener = flushListener;
+    }
+
+    /**
+     * Append price points and wait (at most prices.journal.append-timeout-ms)
+     * until they are durable on local disk. Points without an ID get one; an
+     * ID Firestore would reject is refused here rather than at flush time.
+     *
+     * On timeout, points the writer hasn't started on are taken back out of
+     * the queue, so a retry doesn't store them twice. Points it was already
+     * writing can't be recalled; the error says how many.
+     */
+    public void append(List<PriceHistory> pricePoints) throws ExecutionException, InterruptedException {
+        if (!running) {
+            throw new IllegalStateException("Price journal is not running");
+        }
+        if (writerFailure != null) {
+            throw new IllegalStateException("Price journal writer stopped: " + writerFailure);
+        }
+        for (PriceHistory pricePoint : pricePoints) {
+            if (pricePoint.getId() == null || pricePoint.getId().isEmpty()) {
+                pricePoint.setId(UUID.randomUUID().toString());
+            } else if (!isValidDocumentId(pricePoint.getId())) {
+                throw new IllegalArgumentException("Invalid price point ID: " + pricePoint.getId());
+            }
+        }
+
+        List<PendingAppend> appends = new ArrayList<>(pricePoints.size());
+        for (PriceHistory pricePoint : pricePoints) {
+            PendingAppend pending = new PendingAppend();
+            try {
+                pending.payload = objectMapper.writeValueAsBytes(pricePoint);
+                appendQueue.add(pending);
+            } catch (IOException e) {
+                pending.ack.completeExceptionally(e);
+            }
+            appends.add(pending);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(appendTimeoutMs);
+        for (PendingAppend pending : appends) {
+            try {
+                pending.ack.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                int taken = cancel(appends);
+                throw new ExecutionException(new TimeoutException(
+                    "Price journal append not acknowledged within " + appendTimeoutMs + "ms"
+                        + (taken > 0 ? " (" + taken + " of " + appends.size()
+                            + " points were already written or being written and may still be stored)" : "")));
+            } catch (ExecutionException | InterruptedException e) {
+                // The call fails as a whole, so points queued behind the failed one aren't written either
+                cancel(appends);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Take back every append the writer hasn't started on; returns how many
+     * it had already taken and not failed
+     */
+    private int cancel(List<PendingAppend> appends) {
+        int taken = 0;
+        for (PendingAppend pending : appends) {
+            if (pending.taken.compareAndSet(false, true)) {
+                appendQueue.remove(pending);
+                pending.ack.cancel(false);
+            } else if (!pending.ack.isCompletedExceptionally()) {
+                taken++;
+            }
+        }
+        return taken;
+    }
+
+    /**
+     * Whether Firestore accepts the string as a document ID
+     */
+    static boolean isValidDocumentId(String id) {
+        return !id.isEmpty()
+            && id.indexOf('/') < 0
+            && !id.equals(".") && !id.equals("..")
+            && !(id.startsWith("__") && id.endsWith("__"))
+            && id.getBytes(StandardCharsets.UTF_8).length <= MAX_DOCUMENT_ID_BYTES;
+    }
+
+    public JournalStats getStats() {
+        long segments = 0;
+        if (enabled) {
+            try {
+                segments = listSegments().size();
+            } catch (IOException e) {
+                segments = -1;
+            }
+        }
+        return new JournalStats(enabled, segments, pendingRecords.get(), appendedRecords.get(),
+            flushedRecords.get(), deadLetteredRecords.get(), lastFlushError);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments();
+        checkpoint = readCheckpoint(segments);
+
+        if (segments.isEmpty()) {
+            activeSegment = checkpoint.segment + 1;
+            activeOffset = 0;
+            checkpoint = new Position(activeSegment, 0L);
+        } else {
+            activeSegment = segments.get(segments.size() - 1);
+            activeOffset = recoverTail(activeSegment);
+        }
+        activeChannel = FileChannel.open(segmentPath(activeSegment),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        activeChannel.position(activeOffset);
+        durable = new Position(activeSegment, activeOffset);
+
+        long unflushed = countRecords(checkpoint, durable);
+        pendingRecords.set(unflushed);
+        if (unflushed > 0) {
+            System.out.println("✅ Price journal: replaying " + unflushed + " unflushed price points");
+        }
+
+        running = true;
+        writerThread = new Thread(this::writeLoop, "price-journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        flusherThread = new Thread(this::flushLoop, "price-journal-flusher");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // Let the writer finish what it acknowledged; anything unflushed is replayed next start
+        writerThread.join(5000);
+        flusherThread.interrupt();
+        flusherThread.join(5000);
+        try {
+            if (activeChannel != null) {
+                activeChannel.close();
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Price journal close failed: " + e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingAppend> group = new ArrayList<>();
+        try {
+            while (running || !appendQueue.isEmpty()) {
+                try {
+                    PendingAppend first = appendQueue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    group.clear();
+                    group.add(first);
+                    appendQueue.drainTo(group, 4096);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                writeGroup(group);
+            }
+        } catch (RuntimeException | Error e) {
+            writerFailure = e;
+            System.err.println("❌ Price journal writer stopped: " + e);
+            group.forEach(pending -> pending.ack.completeExceptionally(e));
+            throw e;
+        } finally {
+            // Nothing will write these any more; fail them instead of leaving callers waiting
+            IllegalStateException stopped = new IllegalStateException("Price journal writer stopped");
+            for (PendingAppend pending = appendQueue.poll(); pending != null; pending = appendQueue.poll()) {
+                pending.ack.completeExceptionally(stopped);
+            }
+        }
+    }
+
+    /**
+     * Write and fsync one group. If that fails, the group is cut off the end
+     * of the journal again, so records whose append failed are never flushed
+     * and activeOffset matches the file.
+     */
+    private void writeGroup(List<PendingAppend> group) {
+        // Appends that timed out and were cancelled meanwhile are skipped
+        group.removeIf(pending -> !pending.taken.compareAndSet(false, true));
+        if (group.isEmpty()) {
+            return;
+        }
+        try {
+            if (activeChannel == null) {
+                rollbackTo(durable);
+            }
+            for (PendingAppend pending : group) {
+                if (activeOffset >= segmentMaxBytes) {
+                    rotate();
+                }
+                writeRecord(pending.payload);
+            }
+            activeChannel.force(false);
+            durable = new Position(activeSegment, activeOffset);
+            pendingRecords.addAndGet(group.size());
+            appendedRecords.addAndGet(group.size());
+            group.forEach(pending -> pending.ack.complete(null));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("❌ Price journal write failed: " + e.getMessage());
+            group.forEach(pending -> pending.ack.completeExceptionally(e));
+            try {
+                rollbackTo(durable);
+            } catch (IOException rollbackError) {
+                // activeChannel stays null, so the next group tries again before writing
+                System.err.println("❌ Price journal rollback failed: " + rollbackError.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Drop everything written after a durable position (including segments
+     * rotated into since) and reopen the journal there
+     */
+    private void rollbackTo(Position position) throws IOException {
+        if (activeChannel != null) {
+            FileChannel channel = activeChannel;
+            activeChannel = null;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Reopened below
+            }
+        }
+        for (long segment = activeSegment; segment > position.segment; segment--) {
+            Files.deleteIfExists(segmentPath(segment));
+        }
+        activeSegment = position.segment;
+        activeOffset = position.offset;
+
+        FileChannel channel = FileChannel.open(segmentPath(activeSegment),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(activeOffset);
+            channel.position(activeOffset);
+            channel.force(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        activeChannel = channel;
+    }
+
+    private void writeRecord(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        record.putInt(payload.length);
+        record.putInt((int) crc.getValue());
+        record.put(payload);
+        record.flip();
+        while (record.hasRemaining()) {
+            activeChannel.write(record);
+        }
+        activeOffset += HEADER_BYTES + payload.length;
+    }
+
+    private void rotate() throws IOException {
+        activeChannel.force(false);
+        activeChannel.close();
+        activeSegment++;
+        activeOffset = 0;
+        activeChannel = FileChannel.open(segmentPath(activeSegment),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private void flushLoop() {
+        int failedAttempts = 0;
+        while (running) {
+            try {
+                Position from = checkpoint;
+                Position to = durable;
+                if (from.compareTo(to) >= 0) {
+                    Thread.sleep(flushIdleMs);
+                    continue;
+                }
+
+                boolean isolate = failedAttempts >= maxFlushAttempts;
+                Chunk chunk = read(from, to, flushBatchSize, isolate);
+                List<PriceHistory> flushed = isolate ? flushOneByOne(chunk) : flushBatch(chunk);
+
+                checkpoint = chunk.end;
+                writeCheckpoint(chunk.end);
+                deleteSegmentsBefore(chunk.end.segment);
+                pendingRecords.addAndGet(-chunk.records.size());
+                flushedRecords.addAndGet(flushed.size());
+                failedAttempts = 0;
+                lastFlushError = null;
+                if (!flushed.isEmpty()) {
+                    flushListener.accept(flushed);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!running) {
+                    // stop() interrupted a read (ClosedByInterruptException); the rest is replayed next start
+                    return;
+                }
+                failedAttempts++;
+                lastFlushError = e.getMessage();
+                System.err.println("❌ Price journal flush failed (attempt " + failedAttempts + "), retrying: "
+                    + e.getMessage());
+                try {
+                    Thread.sleep(retryBackoffMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<PriceHistory> flushBatch(Chunk chunk) throws ExecutionException, InterruptedException {
+        List<PriceHistory> points = new ArrayList<>(chunk.records.size());
+        for (Record record : chunk.records) {
+            points.add(record.point);
+        }
+        if (!points.isEmpty()) {
+            WriteBatch batch = firestore.batch();
+            for (PriceHistory point : points) {
+                batch.set(firestore.collection("prices").document(point.getId()), point);
+            }
+            callPolicy.write("price-write", batch::commit);
+        }
+        return points;
+    }
+
+    /**
+     * Write a chunk that keeps failing record by record, dead-lettering the
+     * records that are themselves the problem. Any other error (Firestore
+     * down, credentials) is rethrown and the chunk is retried as usual.
+     */
+    private List<PriceHistory> flushOneByOne(Chunk chunk) throws ExecutionException, InterruptedException, IOException {
+        List<PriceHistory> flushed = new ArrayList<>();
+        for (Record record : chunk.records) {
+            if (record.point == null) {
+                deadLetter(record, record.error);
+                continue;
+            }
+            try {
+                DocumentReference docRef = firestore.collection("prices").document(record.point.getId());
+                callPolicy.write("price-write", () -> docRef.set(record.point));
+                flushed.add(record.point);
+            } catch (IllegalArgumentException e) {
+                deadLetter(record, e.getMessage());
+            } catch (ExecutionException e) {
+                if (!RECORD_ERROR_CODES.contains(FirestoreCallPolicy.statusCode(e))) {
+                    throw e;
+                }
+                deadLetter(record, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            }
+        }
+        return flushed;
+    }
+
+    private void deadLetter(Record record, String reason) throws IOException {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("deadLetteredAt", System.currentTimeMillis());
+        entry.put("segment", record.segment);
+        entry.put("offset", record.offset);
+        entry.put("error", reason);
+        entry.put("record", record.payload != null ? new String(record.payload, StandardCharsets.UTF_8) : null);
+        String json = objectMapper.writeValueAsString(entry) + "\n";
+        ByteBuffer line = ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(directory.resolve(DEAD_LETTER_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            channel.force(false);
+        }
+        deadLetteredRecords.incrementAndGet();
+        System.err.println("❌ Price journal: dead-lettered record at segment " + record.segment
+            + " offset " + record.offset + ": " + reason);
+    }
+
+    /**
+     * Read up to max records between two positions, moving on to the next
+     * segment when one is exhausted. With salvage, records that can't be read
+     * back are returned without a point instead of failing the read; a
+     * corrupt header loses the record boundaries, so the rest of that segment
+     * becomes one such record (and the segment file is kept as corrupt-*).
+     */
+    private Chunk read(Position from, Position to, int max, boolean salvage) throws IOException {
+        List<Record> records = new ArrayList<>();
+        long segment = from.segment;
+        long offset = from.offset;
+
+        while (records.size() < max && new Position(segment, offset).compareTo(to) < 0) {
+            Path path = segmentPath(segment);
+            if (!Files.exists(path)) {
+                segment++;
+                offset = 0;
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long limit = segment == to.segment ? to.offset : channel.size();
+                while (records.size() < max && offset < limit) {
+                    byte[] payload = readRecord(channel, offset);
+                    if (payload == null) {
+                        if (!salvage) {
+                            throw new IOException("Corrupt record in " + path + " at offset " + offset);
+                        }
+                        Files.copy(path, directory.resolve("corrupt-" + path.getFileName()),
+                            StandardCopyOption.REPLACE_EXISTING);
+                        records.add(new Record(segment, offset, null, null,
+                            "Corrupt record, skipped " + (limit - offset) + " bytes"));
+                        offset = limit;
+                        break;
+                    }
+                    records.add(parse(segment, offset, payload, salvage));
+                    offset += HEADER_BYTES + payload.length;
+                }
+                if (offset >= limit && segment < to.segment) {
+                    segment++;
+                    offset = 0;
+                }
+            }
+        }
+        return new Chunk(records, new Position(segment, offset));
+    }
+
+    private Record parse(long segment, long offset, byte[] payload, boolean salvage) throws IOException {
+        try {
+            return new Record(segment, offset, payload, objectMapper.readValue(payload, PriceHistory.class), null);
+        } catch (IOException e) {
+            if (!salvage) {
+                throw e;
+            }
+            return new Record(segment, offset, payload, null, "Unreadable record: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Payload of the record at offset, or null if it is truncated or fails its checksum
+     */
+    private static byte[] readRecord(FileChannel channel, long offset) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        if (!readFully(channel, header, offset)) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(channel, payload, offset + HEADER_BYTES)) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array());
+        return (int) crc.getValue() == checksum ? payload.array() : null;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the end of the last complete record of the newest segment and cut
+     * off whatever a crash left half-written after it
+     */
+    private long recoverTail(long segment) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentPath(segment),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long offset = 0;
+            byte[] payload;
+            while (offset < channel.size() && (payload = readRecord(channel, offset)) != null) {
+                offset += HEADER_BYTES + payload.length;
+            }
+            if (offset < channel.size()) {
+                System.err.println("❌ Price journal: truncating torn write in segment " + segment
+                    + " at offset " + offset);
+                channel.truncate(offset);
+                channel.force(true);
+            }
+            return offset;
+        }
+    }
+
+    /**
+     * Number of records between two positions, walking the record headers only
+     */
+    private long countRecords(Position from, Position to) throws IOException {
+        long count = 0;
+        for (long segment = from.segment; segment <= to.segment; segment++) {
+            Path path = segmentPath(segment);
+            if (!Files.exists(path)) {
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                long offset = segment == from.segment ? from.offset : 0L;
+                long limit = segment == to.segment ? to.offset : channel.size();
+                ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+                while (offset < limit) {
+                    header.clear();
+                    if (!readFully(channel, header, offset)) {
+                        break;
+                    }
+                    header.flip();
+                    offset += HEADER_BYTES + header.getInt();
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private Position readCheckpoint(List<Long> segments) throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        if (Files.exists(path)) {
+            String[] parts = new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim().split(" ");
+            return new Position(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        }
+        return new Position(segments.isEmpty() ? 1L : segments.get(0), 0L);
+    }
+
+    private void writeCheckpoint(Position position) throws IOException {
+        Path path = directory.resolve(CHECKPOINT_FILE);
+        Path tempPath = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        Files.write(tempPath, (position.segment + " " + position.offset).getBytes(StandardCharsets.UTF_8));
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void deleteSegmentsBefore(long segment) throws IOException {
+        for (Long sequence : listSegments()) {
+            if (sequence < segment) {
+                Files.deleteIfExists(segmentPath(sequence));
+            }
+        }
+    }
+
+    private List<Long> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class JournalStats {
+        private boolean enabled;
+        private long segments;
+        private long pendingRecords;     // Durable locally, not yet in Firestore
+        private long appendedRecords;    // Since startup
+        private long flushedRecords;     // Since startup
+        private long deadLetteredRecords; // Since startup, see dead-letter.ndjson
+        private String lastFlushError;
+    }
+
+    private static class PendingAppend {
+        private byte[] payload;
+        private final CompletableFuture<Void> ack = new CompletableFuture<>();
+        // Set by the writer before writing the record, or by append to cancel it; whoever sets it first wins
+        private final AtomicBoolean taken = new AtomicBoolean();
+    }
+
+    /**
+     * A point in the journal: segment sequence and byte offset within it
+     */
+    private static class Position implements Comparable<Position> {
+        private final long segment;
+        private final long offset;
+
+        private Position(long segment, long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            int bySegment = Long.compare(segment, other.segment);
+            return bySegment != 0 ? bySegment : Long.compare(offset, other.offset);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Position && compareTo((Position) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(segment) * 31 + Long.hashCode(offset);
+        }
+    }
+
+    private static class Chunk {
+        private final List<Record> records;
+        private final Position end;
+
+        private Chunk(List<Record> records, Position end) {
+            this.records = records;
+            this.end = end;
+        }
+    }
+
+    private static class Record {
+        private final long segment;
+        private final long offset;
+        private final byte[] payload;          // Null if the record is corrupt
+        private final PriceHistory point;      // Null if it couldn't be read back
+        private final String error;
+
+        private Record(long segment, long offset, byte[] payload, PriceHistory point, String error) {
+            this.segment = segment;
+            this.offset = offset;
+            this.payload = payload;
+            this.point = point;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,534 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.PriceAggregate;
+import com.cardcollection.model.PriceHistory;
+import com.google.cloud.firestore.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Retention policy for the prices collection.
+ *
+ * Raw points older than prices.retention.raw-max-age-days are folded into
+ * DAILY aggregates, and DAILY aggregates older than
+ * prices.retention.weekly-after-days into WEEKLY ones. Each step writes the
+ * aggregates, deletes the compacted documents and moves the checkpoint in one
+ * Firestore transaction, so an interrupted run resumes without double counting.
+ * Runs are throttled and bounded, and go through the background job pool.
+ *
+ * Only one node compacts at a time: a run takes a lease on the checkpoint
+ * document (prices.retention.lease-ms, renewed by every page) and each page's
+ * transaction checks it still holds it. Points without a price or card ID
+ * can't be aggregated; they are left in place and counted. Aggregates are
+ * kept per condition and currency.
+ */
+@Service
+public class PriceRetentionService {
+
+    public static final String DAILY = "DAILY";
+    public static final String WEEKLY = "WEEKLY";
+
+    private static final String PRICES_COLLECTION = "prices";
+    private static final String AGGREGATES_COLLECTION = "price_aggregates";
+    private static final String CHECKPOINT_COLLECTION = "system";
+    private static final String CHECKPOINT_DOCUMENT = "price_retention";
+    private static final long ONE_DAY = 24 * 60 * 60 * 1000L;
+
+    private final Firestore firestore;
+    private final JobService jobService;
+    private final FirestoreCallPolicy callPolicy;
+    private final boolean enabled;
+    private final int rawMaxAgeDays;
+    private final int weeklyAfterDays;
+    private final int batchSize;
+    private final long throttleMs;
+    private final int maxBatchesPerRun;
+    private final long leaseMs;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public PriceRetentionService(Firestore firestore, JobService jobService, FirestoreCallPolicy callPolicy,
+                                 @Value("${prices.retention.enabled:true}") boolean enabled,
+                                 @Value("${prices.retention.raw-max-age-days:90}") int rawMaxAgeDays,
+                                 @Value("${prices.retention.weekly-after-days:365}") int weeklyAfterDays,
+                                 @Value("${prices.retention.batch-size:200}") int batchSize,
+                                 @Value("${prices.retention.throttle-ms:250}") long throttleMs,
+                                 @Value("${prices.retention.max-batches-per-run:100}") int maxBatchesPerRun,
+                                 @Value("${prices.retention.lease-ms:120000}") long leaseMs) {
+        this.firestore = firestore;
+        this.jobService = jobService;
+        this.callPolicy = callPolicy;
+        this.enabled = enabled;
+        this.rawMaxAgeDays = rawMaxAgeDays;
+        this.weeklyAfterDays = weeklyAfterDays;
+        // Each batch holds up to batchSize deletes + batchSize aggregates + the checkpoint
+        this.batchSize = Math.min(batchSize, 249);
+        this.throttleMs = throttleMs;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+        this.leaseMs = leaseMs;
+    }
+
+    @Scheduled(fixedDelayString = "${prices.retention.interval-ms:3600000}",
+               initialDelayString = "${prices.retention.initial-delay-ms:600000}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            submitRun();
+        } catch (RejectedExecutionException | IllegalStateException e) {
+            System.out.println("⏭️ Price retention run skipped: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start a compaction run as a background job
+     */
+    public JobService.JobStatus submitRun() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A retention run is already in progress");
+        }
+        // Released when the run ends, or by the cleanup hook if it's cancelled while queued
+        try {
+            return jobService.submit("price-retention", context -> {
+                try {
+                    return runOnce(context);
+                } finally {
+                    running.set(false);
+                }
+            }, () -> running.set(false));
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * One bounded pass: compact old raw points, then roll old dailies into weeks
+     */
+    Map<String, Object> runOnce(JobService.JobContext context) throws ExecutionException, InterruptedException {
+        long now = System.currentTimeMillis();
+        long rawCutoff = startOfDay(now - rawMaxAgeDays * ONE_DAY);
+        long dailyCutoff = startOfWeek(now - weeklyAfterDays * ONE_DAY);
+
+        DocumentReference checkpointRef = firestore.collection(CHECKPOINT_COLLECTION).document(CHECKPOINT_DOCUMENT);
+        DocumentSnapshot checkpoint = acquireLease(checkpointRef);
+        if (checkpoint == null) {
+            System.out.println("⏭️ Price retention run skipped: another node holds the lease");
+            return Map.of("skipped", "Another node is compacting");
+        }
+        try {
+            return compact(context, checkpointRef, checkpoint, rawCutoff, dailyCutoff);
+        } catch (Exception e) {
+            // Let the next run (here or on another node) start right away instead of after the lease expires
+            try {
+                releaseLease(checkpointRef, Map.of());
+            } catch (Exception releaseError) {
+                System.err.println("❌ Price retention lease release failed: " + releaseError.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    private Map<String, Object> compact(JobService.JobContext context, DocumentReference checkpointRef,
+                                        DocumentSnapshot checkpoint, long rawCutoff, long dailyCutoff)
+            throws ExecutionException, InterruptedException {
+
+        long rawCursor = checkpoint.exists() && checkpoint.getLong("rawCursor") != null ? checkpoint.getLong("rawCursor") : 0L;
+        long dailyCursor = checkpoint.exists() && checkpoint.getLong("dailyCursor") != null ? checkpoint.getLong("dailyCursor") : 0L;
+
+        int batches = 0;
+        long rawCompacted = 0;
+        long rawSkipped = 0;
+        long dailiesRolledUp = 0;
+        boolean rawDone = false;
+        boolean dailyDone = false;
+        DocumentSnapshot lastDoc = null;
+
+        while (!rawDone && batches < maxBatchesPerRun) {
+            context.checkCancelled();
+            Query query = firestore
+                .collection(PRICES_COLLECTION)
+                .whereGreaterThanOrEqualTo("timestamp", rawCursor)
+                .whereLessThan("timestamp", rawCutoff)
+                .orderBy("timestamp")
+                .limit(batchSize);
+            // Points left in place (see compactPage) must not be read again in this run
+            Query pageQuery = lastDoc != null ? query.startAfter(lastDoc) : query;
+            QuerySnapshot page = callPolicy.read("price-compaction", pageQuery::get);
+
+            if (page.isEmpty()) {
+                rawDone = true;
+                break;
+            }
+
+            lastDoc = page.getDocuments().get(page.size() - 1);
+            long cursor = lastDoc.getLong("timestamp");
+            PageOutcome outcome = compactPage(checkpointRef, page, doc -> {
+                PriceHistory point = doc.toObject(PriceHistory.class);
+                if (point.getPrice() == null || point.getCardId() == null) {
+                    return null;
+                }
+                long bucketStart = startOfDay(point.getTimestamp());
+                return singlePoint(point, DAILY, bucketStart, bucketStart + ONE_DAY);
+            }, checkpointFields(cursor, dailyCursor, System.currentTimeMillis()));
+            rawCursor = cursor;
+
+            rawCompacted += outcome.compacted;
+            rawSkipped += outcome.skipped;
+            context.advance(page.size());
+            batches++;
+            Thread.sleep(throttleMs);
+        }
+
+        lastDoc = null;
+        while (rawDone && !dailyDone && batches < maxBatchesPerRun) {
+            context.checkCancelled();
+            Query query = firestore
+                .collection(AGGREGATES_COLLECTION)
+                .whereEqualTo("granularity", DAILY)
+                .whereGreaterThanOrEqualTo("bucketStart", dailyCursor)
+                .whereLessThan("bucketStart", dailyCutoff)
+                .orderBy("bucketStart")
+                .limit(batchSize);
+            Query pageQuery = lastDoc != null ? query.startAfter(lastDoc) : query;
+            QuerySnapshot page = callPolicy.read("price-compaction", pageQuery::get);
+
+            if (page.isEmpty()) {
+                dailyDone = true;
+                break;
+            }
+
+            lastDoc = page.getDocuments().get(page.size() - 1);
+            long cursor = lastDoc.getLong("bucketStart");
+            PageOutcome outcome = compactPage(checkpointRef, page, doc -> {
+                PriceAggregate daily = doc.toObject(PriceAggregate.class);
+                long weekStart = startOfWeek(daily.getBucketStart());
+                return copyInto(daily, WEEKLY, weekStart, weekStart + 7 * ONE_DAY);
+            }, checkpointFields(rawCursor, cursor, System.currentTimeMillis()));
+            dailyCursor = cursor;
+
+            dailiesRolledUp += outcome.compacted;
+            context.advance(page.size());
+            batches++;
+            Thread.sleep(throttleMs);
+        }
+
+        // A finished pass starts from the beginning next time, so late back-filled points are picked up
+        releaseLease(checkpointRef, checkpointFields(rawDone ? 0L : rawCursor, dailyDone ? 0L : dailyCursor,
+            System.currentTimeMillis()));
+
+        System.out.println("✅ Price retention: compacted " + rawCompacted + " raw points, rolled up "
+            + dailiesRolledUp + " daily aggregates");
+        if (rawSkipped > 0) {
+            System.err.println("❌ Price retention: kept " + rawSkipped + " raw points without a price or card ID");
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("rawCompacted", rawCompacted);
+        result.put("rawSkipped", rawSkipped);
+        result.put("dailiesRolledUp", dailiesRolledUp);
+        result.put("complete", rawDone && dailyDone);
+        return result;
+    }
+
+    /**
+     * Take (or renew) the compaction lease; the checkpoint, or null if another node holds it
+     */
+    private DocumentSnapshot acquireLease(DocumentReference checkpointRef) throws ExecutionException, InterruptedException {
+        return callPolicy.write("price-compaction", () -> firestore.runTransaction(transaction -> {
+            DocumentSnapshot checkpoint = transaction.get(checkpointRef).get();
+            long now = System.currentTimeMillis();
+            Long expiresAt = checkpoint.exists() ? checkpoint.getLong("leaseExpiresAt") : null;
+            if (expiresAt != null && expiresAt > now && !nodeId.equals(checkpoint.getString("leaseOwner"))) {
+                return null;
+            }
+            transaction.set(checkpointRef, leaseFields(now + leaseMs), SetOptions.merge());
+            return checkpoint;
+        }));
+    }
+
+    /**
+     * Store the final cursors and give up the lease, unless it was already lost
+     */
+    private void releaseLease(DocumentReference checkpointRef, Map<String, Object> fields)
+            throws ExecutionException, InterruptedException {
+
+        callPolicy.write("price-compaction", () -> firestore.runTransaction(transaction -> {
+            DocumentSnapshot checkpoint = transaction.get(checkpointRef).get();
+            if (nodeId.equals(checkpoint.getString("leaseOwner"))) {
+                Map<String, Object> released = new HashMap<>(fields);
+                released.putAll(leaseFields(0L));
+                transaction.set(checkpointRef, released, SetOptions.merge());
+            }
+            return null;
+        }));
+    }
+
+    /**
+     * Fold one page into aggregates in a transaction that checks the lease,
+     * re-reads the page (documents another attempt already compacted are
+     * gone) and the stored aggregates, then writes the merged aggregates,
+     * deletes what it folded in and moves the checkpoint (renewing the lease).
+     * Documents the mapper returns null for are left in place.
+     */
+    private PageOutcome compactPage(DocumentReference checkpointRef, QuerySnapshot page,
+                                    Function<DocumentSnapshot, PriceAggregate> toPartial,
+                                    Map<String, Object> checkpointFields)
+            throws ExecutionException, InterruptedException {
+
+        DocumentReference[] pageRefs = page.getDocuments().stream()
+            .map(DocumentSnapshot::getReference)
+            .toArray(DocumentReference[]::new);
+
+        return callPolicy.write("price-compaction", () -> firestore.runTransaction(transaction -> {
+            DocumentSnapshot checkpoint = transaction.get(checkpointRef).get();
+            if (!nodeId.equals(checkpoint.getString("leaseOwner"))) {
+                throw new IllegalStateException("Price retention lease was taken over by another node");
+            }
+
+            Map<String, PriceAggregate> partials = new LinkedHashMap<>();
+            List<DocumentReference> compacted = new ArrayList<>();
+            int skipped = 0;
+            for (DocumentSnapshot doc : transaction.getAll(pageRefs).get()) {
+                if (!doc.exists()) {
+                    continue;
+                }
+                PriceAggregate partial = toPartial.apply(doc);
+                if (partial == null) {
+                    skipped++;
+                    continue;
+                }
+                partials.merge(partial.getId(), partial, PriceRetentionService::merge);
+                compacted.add(doc.getReference());
+            }
+
+            if (!partials.isEmpty()) {
+                DocumentReference[] aggregateRefs = partials.keySet().stream()
+                    .map(id -> firestore.collection(AGGREGATES_COLLECTION).document(id))
+                    .toArray(DocumentReference[]::new);
+                for (DocumentSnapshot existing : transaction.getAll(aggregateRefs).get()) {
+                    if (existing.exists()) {
+                        partials.merge(existing.getId(), existing.toObject(PriceAggregate.class),
+                            PriceRetentionService::merge);
+                    }
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            for (PriceAggregate aggregate : partials.values()) {
+                if (aggregate.getCreatedAt() == null) {
+                    aggregate.setCreatedAt(now);
+                }
+                aggregate.setUpdatedAt(now);
+                transaction.set(firestore.collection(AGGREGATES_COLLECTION).document(aggregate.getId()), aggregate);
+            }
+            compacted.forEach(transaction::delete);
+            Map<String, Object> fields = new HashMap<>(checkpointFields);
+            fields.putAll(leaseFields(now + leaseMs));
+            transaction.set(checkpointRef, fields, SetOptions.merge());
+            return new PageOutcome(compacted.size(), skipped);
+        }));
+    }
+
+    /**
+     * Aggregated history of a card as price points (one per day/week, priced at
+     * the bucket average), optionally limited to buckets starting in [startTime, endTime]
+     */
+    public List<PriceHistory> getAggregatedHistory(String cardId, Long startTime, Long endTime)
+            throws ExecutionException, InterruptedException {
+
+        Query query = aggregatesQuery(cardId, startTime, endTime);
+        return callPolicy.read("price-history", query::get).getDocuments().stream()
+            .map(doc -> toPricePoint(doc.toObject(PriceAggregate.class)))
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Aggregates of a card ordered by bucket start, optionally limited to buckets starting in [startTime, endTime]
+     */
+    Query aggregatesQuery(String cardId, Long startTime, Long endTime) {
+        Query query = firestore
+            .collection(AGGREGATES_COLLECTION)
+            .whereEqualTo("cardId", cardId);
+        if (startTime != null) {
+            query = query.whereGreaterThanOrEqualTo("bucketStart", startTime);
+        }
+        if (endTime != null) {
+            query = query.whereLessThanOrEqualTo("bucketStart", endTime);
+        }
+        return query.orderBy("bucketStart");
+    }
+
+    /**
+     * Last compacted price at or before the given time, or null: the close of
+     * the latest bucket that closed by then, stamped with its close time
+     */
+    public PriceHistory getAggregatedPriceAt(String cardId, long time) throws ExecutionException, InterruptedException {
+        Query query = firestore
+            .collection(AGGREGATES_COLLECTION)
+            .whereEqualTo("cardId", cardId)
+            .whereLessThanOrEqualTo("closeTimestamp", time)
+            .orderBy("closeTimestamp", Query.Direction.DESCENDING)
+            .limit(1);
+        QuerySnapshot querySnapshot = callPolicy.hedgedRead("price-at", query::get);
+
+        if (querySnapshot.isEmpty()) {
+            return null;
+        }
+        return toClosePoint(querySnapshot.getDocuments().get(0).toObject(PriceAggregate.class));
+    }
+
+    private static Map<String, Object> checkpointFields(long rawCursor, long dailyCursor, long now) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("rawCursor", rawCursor);
+        fields.put("dailyCursor", dailyCursor);
+        fields.put("updatedAt", now);
+        return fields;
+    }
+
+    private Map<String, Object> leaseFields(long expiresAt) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("leaseOwner", nodeId);
+        fields.put("leaseExpiresAt", expiresAt);
+        return fields;
+    }
+
+    private static PriceAggregate singlePoint(PriceHistory point, String granularity, long bucketStart, long bucketEnd) {
+        PriceAggregate aggregate = new PriceAggregate();
+        aggregate.setCardId(point.getCardId());
+        aggregate.setCondition(point.getCondition());
+        aggregate.setCurrency(point.getCurrency());
+        aggregate.setGranularity(granularity);
+        aggregate.setBucketStart(bucketStart);
+        aggregate.setBucketEnd(bucketEnd);
+        aggregate.setId(aggregateId(aggregate));
+        aggregate.setOpen(point.getPrice());
+        aggregate.setHigh(point.getPrice());
+        aggregate.setLow(point.getPrice());
+        aggregate.setClose(point.getPrice());
+        aggregate.setOpenTimestamp(point.getTimestamp());
+        aggregate.setCloseTimestamp(point.getTimestamp());
+        aggregate.setSum(point.getPrice());
+        aggregate.setCount(1L);
+        return aggregate;
+    }
+
+    private static PriceAggregate copyInto(PriceAggregate source, String granularity, long bucketStart, long bucketEnd) {
+        PriceAggregate aggregate = new PriceAggregate();
+        aggregate.setCardId(source.getCardId());
+        aggregate.setCondition(source.getCondition());
+        aggregate.setCurrency(source.getCurrency());
+        aggregate.setGranularity(granularity);
+        aggregate.setBucketStart(bucketStart);
+        aggregate.setBucketEnd(bucketEnd);
+        aggregate.setId(aggregateId(aggregate));
+        aggregate.setOpen(source.getOpen());
+        aggregate.setHigh(source.getHigh());
+        aggregate.setLow(source.getLow());
+        aggregate.setClose(source.getClose());
+        aggregate.setOpenTimestamp(source.getOpenTimestamp());
+        aggregate.setCloseTimestamp(source.getCloseTimestamp());
+        aggregate.setSum(source.getSum());
+        aggregate.setCount(source.getCount());
+        return aggregate;
+    }
+
+    /**
+     * Combine two aggregates of the same bucket
+     */
+    private static PriceAggregate merge(PriceAggregate a, PriceAggregate b) {
+        PriceAggregate merged = copyInto(a, a.getGranularity(), a.getBucketStart(), a.getBucketEnd());
+        merged.setCreatedAt(a.getCreatedAt() != null ? a.getCreatedAt() : b.getCreatedAt());
+        if (b.getOpenTimestamp() < a.getOpenTimestamp()) {
+            merged.setOpen(b.getOpen());
+            merged.setOpenTimestamp(b.getOpenTimestamp());
+        }
+        if (b.getCloseTimestamp() > a.getCloseTimestamp()) {
+            merged.setClose(b.getClose());
+            merged.setCloseTimestamp(b.getCloseTimestamp());
+        }
+        merged.setHigh(Math.max(a.getHigh(), b.getHigh()));
+        merged.setLow(Math.min(a.getLow(), b.getLow()));
+        merged.setSum(a.getSum() + b.getSum());
+        merged.setCount(a.getCount() + b.getCount());
+        return merged;
+    }
+
+    static PriceHistory toPricePoint(PriceAggregate aggregate) {
+        PriceHistory point = new PriceHistory();
+        point.setId(aggregate.getId());
+        point.setCardId(aggregate.getCardId());
+        point.setPrice(aggregate.getCount() > 0 ? aggregate.getSum() / aggregate.getCount() : aggregate.getClose());
+        point.setCurrency(aggregate.getCurrency());
+        point.setCondition(aggregate.getCondition());
+        point.setSource("aggregate:" + aggregate.getGranularity());
+        point.setTimestamp(aggregate.getBucketStart());
+        point.setNotes("open " + aggregate.getOpen() + ", high " + aggregate.getHigh() + ", low " + aggregate.getLow()
+            + ", close " + aggregate.getClose() + " over " + aggregate.getCount() + " points");
+        point.setCreatedAt(aggregate.getCreatedAt());
+        return point;
+    }
+
+    /**
+     * The bucket's last price as a point at the time it was recorded
+     */
+    static PriceHistory toClosePoint(PriceAggregate aggregate) {
+        PriceHistory point = toPricePoint(aggregate);
+        point.setPrice(aggregate.getClose());
+        point.setTimestamp(aggregate.getCloseTimestamp());
+        return point;
+    }
+
+    /**
+     * One aggregate per card, bucket, condition and currency, so prices in different currencies never mix
+     */
+    static String aggregateId(PriceAggregate aggregate) {
+        return aggregate.getCardId() + "_" + aggregate.getGranularity() + "_" + aggregate.getBucketStart()
+            + "_" + keyPart(aggregate.getCondition()) + "_" + keyPart(aggregate.getCurrency());
+    }
+
+    private static String keyPart(String value) {
+        String part = value != null ? value.replaceAll("[^A-Za-z0-9]", "") : "";
+        return part.isEmpty() ? "any" : part;
+    }
+
+    private static long startOfDay(long time) {
+        return Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate()
+            .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static long startOfWeek(long time) {
+        LocalDate day = Instant.ofEpochMilli(time).atZone(ZoneOffset.UTC).toLocalDate();
+        return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+            .atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+    }
+
+    private static class PageOutcome {
+        private final int compacted;
+        private final int skipped;
+
+        private PageOutcome(int compacted, int skipped) {
+            this.compacted = compacted;
+            this.skipped = skipped;
+        }
+    }
+}
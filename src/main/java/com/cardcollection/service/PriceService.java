@@ -3,10 +3,17 @@ package com.cardcollection.service;
 import com.cardcollection.model.Card;
 import com.cardcollection.model.PriceHistory;
 import com.google.cloud.firestore.*;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
@@ -15,24 +22,183 @@ public class PriceService {
 
     private final Firestore firestore;
     private final CardService cardService;
+    private final CardCatalog cardCatalog;
+    private final RequestCoalescer coalescer;
+    private final ObjectProvider<PriceIngestionListener> ingestionListeners;
+    private final JobService jobService;
+    private final PriceRetentionService retentionService;
+    private final PriceJournal priceJournal;
+    private final FirestoreCallPolicy callPolicy;
+    private final Map<String, PriceHistory> latestPrices = new ConcurrentHashMap<>();
     private static final String COLLECTION_NAME = "prices";
+    private static final String LATEST_PRICE_GROUP = "latest-price";
+    private static final String PRICE_HISTORY_GROUP = "price-history";
+    private static final int MAX_BATCH_WRITES = 500;
+    private static final int SIMULATION_CARDS_PER_BATCH = 15;   // 15 x 31 points stays under one batch
 
-    public PriceService(Firestore firestore, CardService cardService) {
+    public PriceService(Firestore firestore, CardService cardService, CardCatalog cardCatalog,
+                        RequestCoalescer coalescer, ObjectProvider<PriceIngestionListener> ingestionListeners,
+                        JobService jobService, PriceRetentionService retentionService,
+                        PriceJournal priceJournal, FirestoreCallPolicy callPolicy) {
         this.firestore = firestore;
         this.cardService = cardService;
+        this.cardCatalog = cardCatalog;
+        this.coalescer = coalescer;
+        this.ingestionListeners = ingestionListeners;
+        this.jobService = jobService;
+        this.retentionService = retentionService;
+        this.priceJournal = priceJournal;
+        this.callPolicy = callPolicy;
+        priceJournal.setFlushListener(this::onJournalFlushed);
     }
 
     /**
-     * Add a price point for a card
+     * Add a price point for a card. With the journal enabled this returns once
+     * the point is durable on local disk; it reaches Firestore shortly after.
      */
     public PriceHistory addPricePoint(PriceHistory priceHistory) 
             throws ExecutionException, InterruptedException {
         
+        applyDefaults(priceHistory, System.currentTimeMillis());
+        
+        if (priceJournal.isEnabled()) {
+            priceJournal.append(List.of(priceHistory));
+        } else {
+            DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(priceHistory.getId());
+            callPolicy.write("price-write", () -> docRef.set(priceHistory));
+        }
+        coalescer.invalidate(LATEST_PRICE_GROUP, priceHistory.getCardId());
+        coalescer.invalidate(PRICE_HISTORY_GROUP, priceHistory.getCardId());
+        rememberLatest(priceHistory);
+        notifyListeners(priceHistory);
+        
+        System.out.println("✅ Price point added for card: " + priceHistory.getCardId() + " - $" + priceHistory.getPrice());
+        return priceHistory;
+    }
+
+    /**
+     * Add many price points with one Firestore batch commit per 500 points
+     */
+    public List<PriceHistory> addPricePoints(List<PriceHistory> pricePoints)
+            throws ExecutionException, InterruptedException {
+
+        long now = System.currentTimeMillis();
+        for (int start = 0; start < pricePoints.size(); start += MAX_BATCH_WRITES) {
+            List<PriceHistory> chunk = pricePoints.subList(start, Math.min(start + MAX_BATCH_WRITES, pricePoints.size()));
+            for (PriceHistory priceHistory : chunk) {
+                applyDefaults(priceHistory, now);
+            }
+            if (priceJournal.isEnabled()) {
+                priceJournal.append(chunk);
+            } else {
+                WriteBatch batch = firestore.batch();
+                for (PriceHistory priceHistory : chunk) {
+                    batch.set(firestore.collection(COLLECTION_NAME).document(priceHistory.getId()), priceHistory);
+                }
+                callPolicy.write("price-write", batch::commit);
+            }
+
+            for (PriceHistory priceHistory : chunk) {
+                coalescer.invalidate(LATEST_PRICE_GROUP, priceHistory.getCardId());
+                coalescer.invalidate(PRICE_HISTORY_GROUP, priceHistory.getCardId());
+                rememberLatest(priceHistory);
+                notifyListeners(priceHistory);
+            }
+        }
+        return pricePoints;
+    }
+
+    /**
+     * Set currentPrice on many cards in one batch, without reading them first
+     */
+    public void updateCardCurrentPrices(Map<String, Double> pricesByCard)
+            throws ExecutionException, InterruptedException {
+
+        long now = System.currentTimeMillis();
+        WriteBatch batch = firestore.batch();
+        for (Map.Entry<String, Double> entry : pricesByCard.entrySet()) {
+            Map<String, Object> updates = new HashMap<>();
+            updates.put("currentPrice", entry.getValue());
+            updates.put("updatedAt", now);
+            batch.update(firestore.collection("cards").document(entry.getKey()), updates);
+        }
+        callPolicy.write("card-write", batch::commit);
+
+        for (Map.Entry<String, Double> entry : pricesByCard.entrySet()) {
+            Card cached = cardCatalog.get(entry.getKey());
+            if (cached != null) {
+                // Copy so the catalog can still see the old value when re-indexing
+                Card updated = new Card();
+                BeanUtils.copyProperties(cached, updated);
+                updated.setCurrentPrice(entry.getValue());
+                updated.setUpdatedAt(now);
+                cardCatalog.put(updated);
+            }
+            coalescer.invalidate(CardService.CARD_GROUP, entry.getKey());
+        }
+    }
+
+    /**
+     * Add 30 days of simulated price history for every card as a background job
+     */
+    public JobService.JobStatus submitSimulatedHistoryForAllCards() {
+        return jobService.submit("price-history-simulation", context -> {
+            List<Card> allCards = cardService.getAllCards();
+            context.setTotal(allCards.size());
+
+            long now = System.currentTimeMillis();
+            long oneDay = 24 * 60 * 60 * 1000L;
+            int totalPointsAdded = 0;
+
+            for (int start = 0; start < allCards.size(); start += SIMULATION_CARDS_PER_BATCH) {
+                context.checkCancelled();
+                List<Card> group = allCards.subList(start, Math.min(start + SIMULATION_CARDS_PER_BATCH, allCards.size()));
+                List<PriceHistory> points = new ArrayList<>();
+                Map<String, Double> currentPrices = new HashMap<>();
+
+                for (Card card : group) {
+                    // Use current price as base, or default to $20-$100 random
+                    double basePrice = card.getCurrentPrice() != null ?
+                        card.getCurrentPrice() :
+                        (20.0 + Math.random() * 80.0);
+
+                    for (int i = 30; i >= 0; i--) {
+                        PriceHistory priceHistory = new PriceHistory();
+                        priceHistory.setCardId(card.getId());
+
+                        // Simulate price fluctuation
+                        double fluctuation = (Math.random() - 0.5) * (basePrice * 0.2); // +/- 20%
+                        double trendIncrease = (30 - i) * (basePrice * 0.01); // Gradual 1% increase per day
+
+                        priceHistory.setPrice(basePrice + fluctuation + trendIncrease);
+                        priceHistory.setCondition("Near Mint");
+                        priceHistory.setSource("simulated");
+                        priceHistory.setCurrency("USD");
+                        priceHistory.setTimestamp(now - (i * oneDay));
+                        points.add(priceHistory);
+                    }
+                    // The i == 0 point is the newest one
+                    currentPrices.put(card.getId(), points.get(points.size() - 1).getPrice());
+                }
+
+                addPricePoints(points);
+                updateCardCurrentPrices(currentPrices);
+                totalPointsAdded += points.size();
+                context.advance(group.size());
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("cards", allCards.size());
+            result.put("pricePoints", totalPointsAdded);
+            return result;
+        });
+    }
+
+    private void applyDefaults(PriceHistory priceHistory, long now) {
         if (priceHistory.getId() == null || priceHistory.getId().isEmpty()) {
             priceHistory.setId(UUID.randomUUID().toString());
         }
         
-        long now = System.currentTimeMillis();
         priceHistory.setCreatedAt(now);
         
         if (priceHistory.getTimestamp() == null) {
@@ -46,30 +212,45 @@ public class PriceService {
         if (priceHistory.getCondition() == null) {
             priceHistory.setCondition("Near Mint");
         }
-        
-        DocumentReference docRef = firestore.collection(COLLECTION_NAME).document(priceHistory.getId());
-        docRef.set(priceHistory).get();
-        
-        System.out.println("✅ Price point added for card: " + priceHistory.getCardId() + " - $" + priceHistory.getPrice());
-        return priceHistory;
     }
 
     /**
-     * Get price history for a specific card
+     * Journaled points are now in Firestore: drop cached reads that may have
+     * missed them (also covers points replayed after a restart)
+     */
+    private void onJournalFlushed(List<PriceHistory> pricePoints) {
+        for (PriceHistory priceHistory : pricePoints) {
+            coalescer.invalidate(LATEST_PRICE_GROUP, priceHistory.getCardId());
+            coalescer.invalidate(PRICE_HISTORY_GROUP, priceHistory.getCardId());
+            rememberLatest(priceHistory);
+        }
+    }
+
+    private void notifyListeners(PriceHistory priceHistory) {
+        ingestionListeners.orderedStream().forEach(listener -> {
+            try {
+                listener.onPricePoint(priceHistory);
+            } catch (Exception e) {
+                System.err.println("❌ Price listener failed for card " + priceHistory.getCardId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Get price history for a specific card (compacted aggregates first, then raw points)
      */
     public List<PriceHistory> getCardPriceHistory(String cardId) 
             throws ExecutionException, InterruptedException {
         
-        QuerySnapshot querySnapshot = firestore
-            .collection(COLLECTION_NAME)
-            .whereEqualTo("cardId", cardId)
-            .orderBy("timestamp", Query.Direction.ASCENDING)
-            .get()
-            .get();
+        return coalescer.execute(PRICE_HISTORY_GROUP, cardId, () -> {
+            Query query = historyQuery(cardId, null, null);
+            QuerySnapshot querySnapshot = callPolicy.read("price-history", query::get);
 
-        return querySnapshot.getDocuments().stream()
-            .map(doc -> doc.toObject(PriceHistory.class))
-            .collect(Collectors.toList());
+            List<PriceHistory> raw = querySnapshot.getDocuments().stream()
+                .map(doc -> doc.toObject(PriceHistory.class))
+                .collect(Collectors.toList());
+            return stitch(retentionService.getAggregatedHistory(cardId, null, null), raw);
+        });
     }
 
     /**
@@ -78,18 +259,50 @@ public class PriceService {
     public List<PriceHistory> getCardPriceHistory(String cardId, Long startTime, Long endTime) 
             throws ExecutionException, InterruptedException {
         
-        Query query = firestore
-            .collection(COLLECTION_NAME)
-            .whereEqualTo("cardId", cardId)
-            .whereGreaterThanOrEqualTo("timestamp", startTime)
-            .whereLessThanOrEqualTo("timestamp", endTime)
-            .orderBy("timestamp", Query.Direction.ASCENDING);
-
-        QuerySnapshot querySnapshot = query.get().get();
+        Query query = historyQuery(cardId, startTime, endTime);
+        QuerySnapshot querySnapshot = callPolicy.read("price-history", query::get);
 
-        return querySnapshot.getDocuments().stream()
+        List<PriceHistory> raw = querySnapshot.getDocuments().stream()
             .map(doc -> doc.toObject(PriceHistory.class))
             .collect(Collectors.toList());
+        return stitch(retentionService.getAggregatedHistory(cardId, startTime, endTime), raw);
+    }
+
+    /**
+     * Raw price points of a card in timestamp order, optionally limited to [startTime, endTime]
+     */
+    Query historyQuery(String cardId, Long startTime, Long endTime) {
+        Query query = firestore
+            .collection(COLLECTION_NAME)
+            .whereEqualTo("cardId", cardId);
+        if (startTime != null) {
+            query = query.whereGreaterThanOrEqualTo("timestamp", startTime);
+        }
+        if (endTime != null) {
+            query = query.whereLessThanOrEqualTo("timestamp", endTime);
+        }
+        return query.orderBy("timestamp", Query.Direction.ASCENDING);
+    }
+
+    /**
+     * Merge aggregated and raw points into one timestamp-ordered series
+     */
+    private static List<PriceHistory> stitch(List<PriceHistory> aggregated, List<PriceHistory> raw) {
+        if (aggregated.isEmpty()) {
+            return raw;
+        }
+        List<PriceHistory> merged = new ArrayList<>(aggregated.size() + raw.size());
+        int a = 0;
+        int r = 0;
+        while (a < aggregated.size() || r < raw.size()) {
+            if (r >= raw.size() || (a < aggregated.size()
+                    && aggregated.get(a).getTimestamp() <= raw.get(r).getTimestamp())) {
+                merged.add(aggregated.get(a++));
+            } else {
+                merged.add(raw.get(r++));
+            }
+        }
+        return merged;
     }
 
     /**
@@ -98,18 +311,67 @@ public class PriceService {
     public PriceHistory getLatestPrice(String cardId) 
             throws ExecutionException, InterruptedException {
         
-        QuerySnapshot querySnapshot = firestore
+        return coalescer.execute(LATEST_PRICE_GROUP, cardId, () -> {
+            Query query = firestore
+                .collection(COLLECTION_NAME)
+                .whereEqualTo("cardId", cardId)
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .limit(1);
+            QuerySnapshot querySnapshot = callPolicy.hedgedRead("price-latest", query::get);
+
+            if (!querySnapshot.getDocuments().isEmpty()) {
+                PriceHistory latest = querySnapshot.getDocuments().get(0).toObject(PriceHistory.class);
+                rememberLatest(latest);
+                return latest;
+            }
+            // Every raw point may already be compacted for a card that hasn't been priced in a while
+            return retentionService.getAggregatedPriceAt(cardId, System.currentTimeMillis());
+        });
+    }
+
+    /**
+     * Latest known price per card on this node (warm data for snapshots and
+     * push consumers; getLatestPrice remains the authoritative read)
+     */
+    public Collection<PriceHistory> getKnownLatestPrices() {
+        return latestPrices.values();
+    }
+
+    /**
+     * Latest known price for one card on this node, or null
+     */
+    public PriceHistory getKnownLatestPrice(String cardId) {
+        return latestPrices.get(cardId);
+    }
+
+    /**
+     * Seed the latest-price map, e.g. from a catalog snapshot
+     */
+    public void restoreLatestPrices(Collection<PriceHistory> prices) {
+        prices.forEach(this::rememberLatest);
+    }
+
+    /**
+     * Fold in price points written (by any node) since the given time
+     */
+    public int catchUpLatestPrices(long sinceCreatedAt) throws ExecutionException, InterruptedException {
+        Query query = firestore
             .collection(COLLECTION_NAME)
-            .whereEqualTo("cardId", cardId)
-            .orderBy("timestamp", Query.Direction.DESCENDING)
-            .limit(1)
-            .get()
-            .get();
+            .whereGreaterThanOrEqualTo("createdAt", sinceCreatedAt);
+        QuerySnapshot querySnapshot = callPolicy.read("price-catch-up", query::get);
 
-        if (!querySnapshot.getDocuments().isEmpty()) {
-            return querySnapshot.getDocuments().get(0).toObject(PriceHistory.class);
+        for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
+            rememberLatest(doc.toObject(PriceHistory.class));
         }
-        return null;
+        return querySnapshot.size();
+    }
+
+    private void rememberLatest(PriceHistory price) {
+        if (price == null || price.getCardId() == null || price.getTimestamp() == null) {
+            return;
+        }
+        latestPrices.merge(price.getCardId(), price,
+            (current, candidate) -> candidate.getTimestamp() >= current.getTimestamp() ? candidate : current);
     }
 
     /**
@@ -129,21 +391,22 @@ public class PriceService {
         }
         
         // Get price from X days ago
-        QuerySnapshot querySnapshot = firestore
+        Query query = firestore
             .collection(COLLECTION_NAME)
             .whereEqualTo("cardId", cardId)
             .whereLessThanOrEqualTo("timestamp", pastTime)
             .orderBy("timestamp", Query.Direction.DESCENDING)
-            .limit(1)
-            .get()
-            .get();
+            .limit(1);
+        QuerySnapshot querySnapshot = callPolicy.hedgedRead("price-at", query::get);
         
-        if (querySnapshot.getDocuments().isEmpty()) {
+        PriceHistory oldPrice = querySnapshot.getDocuments().isEmpty()
+            ? retentionService.getAggregatedPriceAt(cardId, pastTime)    // raw points may have been compacted
+            : querySnapshot.getDocuments().get(0).toObject(PriceHistory.class);
+
+        if (oldPrice == null) {
             return new PriceChange(currentPrice.getPrice(), currentPrice.getPrice(), 0.0, 0.0);
         }
         
-        PriceHistory oldPrice = querySnapshot.getDocuments().get(0).toObject(PriceHistory.class);
-        
         double change = currentPrice.getPrice() - oldPrice.getPrice();
         double changePercent = (change / oldPrice.getPrice()) * 100;
         
@@ -169,7 +432,9 @@ public class PriceService {
                 card.setUpdatedAt(System.currentTimeMillis());
                 
                 DocumentReference docRef = firestore.collection("cards").document(cardId);
-                docRef.set(card).get();
+                callPolicy.write("card-write", () -> docRef.set(card));
+                cardCatalog.put(card);
+                coalescer.invalidate(CardService.CARD_GROUP, cardId);
                 
                 System.out.println("✅ Updated current price for " + card.getName() + " to $" + latestPrice.getPrice());
             }
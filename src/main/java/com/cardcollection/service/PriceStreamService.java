@@ -0,0 +1,352 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.PriceHistory;
+import com.google.cloud.firestore.*;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes price updates to SSE subscribers.
+ *
+ * Each card has one shared channel: it is fed by the local ingestion hook and,
+ * optionally, by a single Firestore listener (for points written on other
+ * nodes), no matter how many clients watch it. Every client keeps only the
+ * newest pending price per card, so a slow client gets conflated updates
+ * instead of an ever-growing queue. A small dispatcher pool does all sends,
+ * with at most one queued or running task per client (heartbeats are skipped
+ * while one is). SseEmitter.send blocks, so a client whose send takes longer
+ * than prices.stream.send-timeout-ms is dropped to free its dispatcher thread.
+ */
+@Service
+public class PriceStreamService implements PriceIngestionListener {
+
+    private static final String COLLECTION_NAME = "prices";
+
+    private final Firestore firestore;
+    private final PriceService priceService;
+    private final boolean firestoreListeners;
+    private final int maxCardsPerClient;
+    private final long emitterTimeoutMs;
+    private final long sendTimeoutMs;
+    private final ExecutorService dispatcher;
+    private final Map<String, CardChannel> channels = new ConcurrentHashMap<>();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    public PriceStreamService(Firestore firestore, PriceService priceService,
+                              @Value("${prices.stream.firestore-listeners:true}") boolean firestoreListeners,
+                              @Value("${prices.stream.max-cards-per-client:200}") int maxCardsPerClient,
+                              @Value("${prices.stream.timeout-ms:1800000}") long emitterTimeoutMs,
+                              @Value("${prices.stream.dispatcher-threads:4}") int dispatcherThreads,
+                              @Value("${prices.stream.send-timeout-ms:10000}") long sendTimeoutMs) {
+        this.firestore = firestore;
+        this.priceService = priceService;
+        this.firestoreListeners = firestoreListeners;
+        this.maxCardsPerClient = maxCardsPerClient;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.sendTimeoutMs = sendTimeoutMs;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatcherThreads, runnable -> {
+            Thread thread = new Thread(runnable, "price-stream-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Open an SSE stream for the given cards; the latest known price of each
+     * card is sent straight away
+     */
+    public SseEmitter subscribe(Collection<String> cardIds) {
+        Set<String> ids = new LinkedHashSet<>(cardIds);
+        ids.removeIf(id -> id == null || id.isEmpty());
+        if (ids.isEmpty() || ids.size() > maxCardsPerClient) {
+            throw new IllegalArgumentException("Subscribe to between 1 and " + maxCardsPerClient + " cards");
+        }
+
+        SseEmitter emitter = new SseEmitter(emitterTimeoutMs);
+        Subscriber subscriber = new Subscriber(emitter, ids);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(error -> unsubscribe(subscriber));
+
+        subscribers.add(subscriber);
+        for (String cardId : ids) {
+            CardChannel channel = attach(cardId, subscriber);
+            PriceHistory latest = channel.latest != null ? channel.latest : priceService.getKnownLatestPrice(cardId);
+            if (latest != null) {
+                subscriber.offer(latest);
+            }
+        }
+        return emitter;
+    }
+
+    /**
+     * Local ingestion hook: fan the new point out to the card's subscribers
+     */
+    @Override
+    public void onPricePoint(PriceHistory pricePoint) {
+        publish(pricePoint);
+    }
+
+    public StreamStats getStats() {
+        int listeners = (int) channels.values().stream().filter(channel -> channel.registration != null).count();
+        return new StreamStats(subscribers.size(), channels.size(), listeners);
+    }
+
+    /**
+     * Keep idle connections (and proxies in front of them) alive
+     */
+    @Scheduled(fixedDelayString = "${prices.stream.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeat();
+        }
+    }
+
+    /**
+     * Drop clients whose current send has been blocked for too long
+     */
+    @Scheduled(fixedDelayString = "${prices.stream.send-check-ms:1000}")
+    public void dropStalledSubscribers() {
+        long now = System.currentTimeMillis();
+        for (Subscriber subscriber : subscribers) {
+            long startedAt = subscriber.sendStartedAt;
+            if (startedAt > 0 && now - startedAt > sendTimeoutMs) {
+                System.err.println("❌ Dropping price stream client, send blocked for " + (now - startedAt) + "ms");
+                subscriber.abort();
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        channels.values().forEach(channel -> {
+            if (channel.registration != null) {
+                channel.registration.remove();
+            }
+        });
+        dispatcher.shutdownNow();
+    }
+
+    private void publish(PriceHistory pricePoint) {
+        CardChannel channel = channels.get(pricePoint.getCardId());
+        if (channel == null || !channel.advance(pricePoint)) {
+            return;
+        }
+        for (Subscriber subscriber : channel.subscribers) {
+            subscriber.offer(pricePoint);
+        }
+    }
+
+    private synchronized CardChannel attach(String cardId, Subscriber subscriber) {
+        CardChannel channel = channels.computeIfAbsent(cardId, CardChannel::new);
+        channel.subscribers.add(subscriber);
+        if (firestoreListeners && channel.registration == null) {
+            channel.registration = firestore
+                .collection(COLLECTION_NAME)
+                .whereEqualTo("cardId", cardId)
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .limit(1)
+                .addSnapshotListener((snapshot, error) -> {
+                    if (error != null || snapshot == null) {
+                        return;
+                    }
+                    for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                        publish(doc.toObject(PriceHistory.class));
+                    }
+                });
+        }
+        return channel;
+    }
+
+    private synchronized void unsubscribe(Subscriber subscriber) {
+        if (!subscribers.remove(subscriber)) {
+            return;
+        }
+        subscriber.closed = true;
+        for (String cardId : subscriber.cardIds) {
+            CardChannel channel = channels.get(cardId);
+            if (channel == null) {
+                continue;
+            }
+            channel.subscribers.remove(subscriber);
+            if (channel.subscribers.isEmpty()) {
+                if (channel.registration != null) {
+                    channel.registration.remove();
+                }
+                channels.remove(cardId);
+            }
+        }
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class StreamStats {
+        private int subscribers;
+        private int channels;
+        private int firestoreListeners;
+    }
+
+    /**
+     * Shared per-card state: its subscribers, its Firestore listener and the
+     * newest point seen (used to drop the duplicate that arrives from both
+     * the local hook and the listener)
+     */
+    private static class CardChannel {
+        private final String cardId;
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        private volatile ListenerRegistration registration;
+        private volatile PriceHistory latest;
+
+        private CardChannel(String cardId) {
+            this.cardId = cardId;
+        }
+
+        private synchronized boolean advance(PriceHistory pricePoint) {
+            if (pricePoint.getTimestamp() == null) {
+                return false;
+            }
+            if (latest != null) {
+                if (pricePoint.getTimestamp() < latest.getTimestamp()) {
+                    return false;
+                }
+                if (pricePoint.getId() != null && pricePoint.getId().equals(latest.getId())) {
+                    return false;
+                }
+            }
+            latest = pricePoint;
+            return true;
+        }
+    }
+
+    /**
+     * One SSE client. Pending updates are conflated per card, so the buffer
+     * never holds more than one price per subscribed card.
+     */
+    private class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<String> cardIds;
+        private final Map<String, PriceHistory> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final Object sendState = new Object();
+        private Thread sender;                       // guarded by sendState
+        private volatile long sendStartedAt;         // 0 when no send is in flight
+        private volatile boolean closed = false;
+
+        private Subscriber(SseEmitter emitter, Set<String> cardIds) {
+            this.emitter = emitter;
+            this.cardIds = cardIds;
+        }
+
+        private void offer(PriceHistory pricePoint) {
+            if (closed) {
+                return;
+            }
+            pending.put(pricePoint.getCardId(), pricePoint);
+            if (scheduled.compareAndSet(false, true)) {
+                dispatcher.execute(this::drain);
+            }
+        }
+
+        /**
+         * Send a heartbeat unless a send is already queued or running, which
+         * keeps the connection alive anyway
+         */
+        private void heartbeat() {
+            if (closed || !scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            dispatcher.execute(() -> {
+                if (send(SseEmitter.event().comment("heartbeat"))) {
+                    drain();
+                }
+            });
+        }
+
+        private void drain() {
+            do {
+                for (String cardId : pending.keySet()) {
+                    PriceHistory pricePoint = pending.remove(cardId);
+                    if (pricePoint != null && !send(SseEmitter.event()
+                            .name("price")
+                            .id(pricePoint.getId())
+                            .data(pricePoint))) {
+                        return;
+                    }
+                }
+                scheduled.set(false);
+            } while (!pending.isEmpty() && scheduled.compareAndSet(false, true));
+        }
+
+        private boolean send(SseEmitter.SseEventBuilder event) {
+            if (closed) {
+                return false;
+            }
+            synchronized (sendState) {
+                sender = Thread.currentThread();
+                sendStartedAt = System.currentTimeMillis();
+            }
+            try {
+                synchronized (this) {
+                    emitter.send(event);
+                }
+                if (closed) {
+                    // Aborted while this send was blocked
+                    emitter.completeWithError(timedOut());
+                    return false;
+                }
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                unsubscribe(this);
+                emitter.completeWithError(e);
+                return false;
+            } finally {
+                synchronized (sendState) {
+                    sender = null;
+                    sendStartedAt = 0L;
+                    if (closed) {
+                        // Clear an interrupt from abort() before the thread serves other clients
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Drop this client and interrupt its blocked send. The emitter is
+         * locked while that send runs, so the sending thread completes it
+         * once the send returns or fails.
+         */
+        private void abort() {
+            unsubscribe(this);
+            synchronized (sendState) {
+                if (sender != null) {
+                    sender.interrupt();
+                    return;
+                }
+            }
+            emitter.completeWithError(timedOut());
+        }
+
+        private IOException timedOut() {
+            return new IOException("Price stream send timed out after " + sendTimeoutMs + "ms");
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.cardcollection.service;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight layer for hot reads.
+ *
+ * Concurrent calls with the same group + key share one in-flight backend call,
+ * and the result is reused for a short per-group TTL. Groups are configured
+ * with coalescing.{group}.ttl-ms / coalescing.{group}.enabled, falling back
+ * to coalescing.default-ttl-ms / coalescing.enabled.
+ *
+ * Results are shared between callers, so they must be treated as read-only.
+ * A caller joining an in-flight call waits at most until its request's
+ * deadline (see RequestDeadlineFilter), or coalescing.max-wait-ms outside a
+ * request, and then fails with a TimeoutException like its own call would.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final Environment environment;
+    private final int maxCachedResults;
+    private final long maxWaitMs;
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, CachedResult> recent = new ConcurrentHashMap<>();
+    private final Map<String, GroupCounters> counters = new ConcurrentHashMap<>();
+    private final Map<String, GroupConfig> configs = new ConcurrentHashMap<>();
+
+    public RequestCoalescer(Environment environment) {
+        this.environment = environment;
+        this.maxCachedResults = environment.getProperty("coalescing.max-cached-results", Integer.class, 10000);
+        this.maxWaitMs = environment.getProperty("coalescing.max-wait-ms", Long.class, 30000L);
+    }
+
+    /**
+     * Run the loader once per in-flight key; concurrent callers wait on the same result
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String group, String key, Loader<T> loader)
+            throws ExecutionException, InterruptedException {
+
+        GroupConfig config = configFor(group);
+        GroupCounters groupCounters = counters.computeIfAbsent(group, g -> new GroupCounters());
+        groupCounters.requests.increment();
+
+        if (!config.enabled) {
+            groupCounters.backendCalls.increment();
+            return loader.load();
+        }
+
+        String fullKey = group + ":" + key;
+        long now = System.currentTimeMillis();
+        CachedResult cached = recent.get(fullKey);
+        if (cached != null && cached.expiresAt > now) {
+            groupCounters.cacheHits.increment();
+            return (T) cached.value;
+        }
+
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(fullKey, future);
+        if (existing != null) {
+            groupCounters.coalesced.increment();
+            return (T) await(existing);
+        }
+
+        groupCounters.backendCalls.increment();
+        try {
+            T value = loader.load();
+            // Only cache if nobody invalidated the key while we were loading
+            if (inFlight.remove(fullKey, future) && config.ttlMs > 0) {
+                cache(fullKey, value, System.currentTimeMillis() + config.ttlMs);
+            }
+            future.complete(value);
+            return value;
+        } catch (ExecutionException e) {
+            inFlight.remove(fullKey, future);
+            future.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+            throw e;
+        } catch (InterruptedException | RuntimeException e) {
+            inFlight.remove(fullKey, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Drop the cached result for a key after a write; callers already waiting
+     * keep their result, new callers go to the backend
+     */
+    public void invalidate(String group, String key) {
+        String fullKey = group + ":" + key;
+        recent.remove(fullKey);
+        inFlight.remove(fullKey);
+    }
+
+    /**
+     * Per-group duplicate-suppression counters
+     */
+    public Map<String, CoalescingStats> getStats() {
+        Map<String, CoalescingStats> stats = new LinkedHashMap<>();
+        counters.forEach((group, c) -> {
+            long requests = c.requests.sum();
+            long backendCalls = c.backendCalls.sum();
+            stats.put(group, new CoalescingStats(
+                requests,
+                backendCalls,
+                c.coalesced.sum(),
+                c.cacheHits.sum(),
+                requests > 0 ? 1.0 - (double) backendCalls / requests : 0.0
+            ));
+        });
+        return stats;
+    }
+
+    /**
+     * Wait for another caller's load, bounded by this caller's deadline
+     */
+    private Object await(CompletableFuture<Object> existing) throws ExecutionException, InterruptedException {
+        Long requestDeadline = FirestoreCallPolicy.requestDeadline();
+        long waitMs = requestDeadline != null
+            ? Math.min(maxWaitMs, requestDeadline - System.currentTimeMillis())
+            : maxWaitMs;
+        try {
+            return existing.get(Math.max(0L, waitMs), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new ExecutionException(new TimeoutException("Deadline exceeded waiting for a coalesced call"));
+        }
+    }
+
+    private void cache(String fullKey, Object value, long expiresAt) {
+        if (recent.size() >= maxCachedResults) {
+            long now = System.currentTimeMillis();
+            recent.values().removeIf(entry -> entry.expiresAt <= now);
+            if (recent.size() >= maxCachedResults) {
+                return;
+            }
+        }
+        recent.put(fullKey, new CachedResult(value, expiresAt));
+    }
+
+    private GroupConfig configFor(String group) {
+        return configs.computeIfAbsent(group, g -> {
+            boolean enabled = environment.getProperty("coalescing." + g + ".enabled", Boolean.class,
+                environment.getProperty("coalescing.enabled", Boolean.class, true));
+            long ttlMs = environment.getProperty("coalescing." + g + ".ttl-ms", Long.class,
+                environment.getProperty("coalescing.default-ttl-ms", Long.class, 500L));
+            return new GroupConfig(enabled, ttlMs);
+        });
+    }
+
+    /**
+     * Backend call wrapped by the coalescer
+     */
+    @FunctionalInterface
+    public interface Loader<T> {
+        T load() throws ExecutionException, InterruptedException;
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class CoalescingStats {
+        private long requests;
+        private long backendCalls;
+        private long coalesced;          // Joined an in-flight call
+        private long cacheHits;          // Served from the short result TTL
+        private double suppressionRatio; // Share of requests that never hit the backend
+    }
+
+    private static class GroupCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder backendCalls = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+        private final LongAdder cacheHits = new LongAdder();
+    }
+
+    private static class GroupConfig {
+        private final boolean enabled;
+        private final long ttlMs;
+
+        private GroupConfig(boolean enabled, long ttlMs) {
+            this.enabled = enabled;
+            this.ttlMs = ttlMs;
+        }
+    }
+
+    private static class CachedResult {
+        private final Object value;
+        private final long expiresAt;
+
+        private CachedResult(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * MinHash / LSH model of card similarity.
+ *
+ * Each card becomes a set of feature tokens (tags, color, attribute, set,
+ * effect keywords, team, league, ...). A MinHash signature of BANDS x ROWS
+ * values is split into bands; cards sharing any band bucket (within the same
+ * game) are candidates, and candidates are ranked by exact Jaccard
+ * similarity of their token sets (the most frequently colliding candidates
+ * first, so oversized buckets stay cheap). Top-K neighbours are kept per
+ * card so lookups are a single map read.
+ *
+ * build() may use many threads; upsert() and remove() must be called from one
+ * thread at a time. Readers can call neighbours() concurrently with both.
+ */
+class SimilarityIndex {
+
+    static final int BANDS = 20;
+    static final int ROWS = 2;
+    private static final int HASHES = BANDS * ROWS;
+    private static final int MAX_BUCKET_SCAN = 200;      // Ids read per bucket; very common feature sets make huge buckets
+    private static final int MAX_CANDIDATES = 200;       // Scored exactly, chosen by number of shared buckets
+    private static final Pattern BRACKETED = Pattern.compile("\\[([^\\]]+)\\]");
+    private static final Pattern WORD = Pattern.compile("[a-z]{5,}");
+    private static final Set<String> STOP_WORDS = Set.of(
+        "their", "there", "which", "during", "other", "cards", "until", "being", "opponent", "opponents");
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < HASHES; i++) {
+            seed = mix(seed + i);
+            SEEDS[i] = seed;
+        }
+    }
+
+    private final int topK;
+    private final double minScore;
+    private final Map<String, Set<String>> tokens = new ConcurrentHashMap<>();
+    private final Map<String, long[]> bucketKeys = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> buckets = new ConcurrentHashMap<>();
+    private final Map<String, List<Neighbour>> neighbours = new ConcurrentHashMap<>();
+
+    SimilarityIndex(int topK, double minScore) {
+        this.topK = topK;
+        this.minScore = minScore;
+    }
+
+    /**
+     * Build the full model; signatures and neighbour lists are computed in parallel
+     */
+    static SimilarityIndex build(Collection<Card> cards, int topK, double minScore) {
+        SimilarityIndex index = new SimilarityIndex(topK, minScore);
+        cards.parallelStream().forEach(card -> {
+            Set<String> cardTokens = features(card);
+            if (cardTokens.isEmpty()) {
+                return;
+            }
+            long[] keys = bandKeys(card.getGame(), cardTokens);
+            index.tokens.put(card.getId(), cardTokens);
+            index.bucketKeys.put(card.getId(), keys);
+            for (long key : keys) {
+                index.buckets.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(card.getId());
+            }
+        });
+        index.tokens.keySet().parallelStream().forEach(id ->
+            index.neighbours.put(id, index.rank(id, index.tokens.get(id))));
+        return index;
+    }
+
+    List<Neighbour> neighbours(String cardId) {
+        return neighbours.getOrDefault(cardId, Collections.emptyList());
+    }
+
+    int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Add or re-index one card and fold it into its candidates' neighbour
+     * lists. Returns false if its features didn't change.
+     */
+    boolean upsert(Card card) {
+        Set<String> cardTokens = features(card);
+        Set<String> previous = tokens.get(card.getId());
+        if (cardTokens.equals(previous)) {
+            return false;
+        }
+        remove(card.getId());
+        if (cardTokens.isEmpty()) {
+            return true;
+        }
+
+        long[] keys = bandKeys(card.getGame(), cardTokens);
+        tokens.put(card.getId(), cardTokens);
+        bucketKeys.put(card.getId(), keys);
+        for (long key : keys) {
+            buckets.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(card.getId());
+        }
+
+        List<Neighbour> ranked = rank(card.getId(), cardTokens);
+        neighbours.put(card.getId(), ranked);
+        for (Neighbour neighbour : ranked) {
+            offer(neighbour.getCardId(), new Neighbour(card.getId(), neighbour.getScore()));
+        }
+        return true;
+    }
+
+    /**
+     * Drop a card from the buckets and from the lists of its own neighbours.
+     * Lists elsewhere that still mention it are filtered by the caller
+     * (removed cards are gone from the catalog) until the next rebuild.
+     */
+    void remove(String cardId) {
+        long[] keys = bucketKeys.remove(cardId);
+        tokens.remove(cardId);
+        List<Neighbour> previous = neighbours.remove(cardId);
+        if (keys == null) {
+            return;
+        }
+        for (long key : keys) {
+            Set<String> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(cardId);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+        for (Neighbour mate : previous != null ? previous : Collections.<Neighbour>emptyList()) {
+            String id = mate.getCardId();
+            neighbours.computeIfPresent(id, (key, list) -> {
+                if (list.stream().noneMatch(neighbour -> neighbour.getCardId().equals(cardId))) {
+                    return list;
+                }
+                List<Neighbour> updated = new ArrayList<>(list);
+                updated.removeIf(neighbour -> neighbour.getCardId().equals(cardId));
+                return Collections.unmodifiableList(updated);
+            });
+        }
+    }
+
+    /**
+     * Top-K cards sharing an LSH bucket with the given token set, by exact Jaccard
+     */
+    private List<Neighbour> rank(String cardId, Set<String> cardTokens) {
+        Map<String, Integer> collisions = new HashMap<>();
+        for (long key : bucketKeys.get(cardId)) {
+            Set<String> bucket = buckets.get(key);
+            if (bucket == null) {
+                continue;
+            }
+            int scanned = 0;
+            for (String id : bucket) {
+                if (++scanned > MAX_BUCKET_SCAN) {
+                    break;
+                }
+                collisions.merge(id, 1, Integer::sum);
+            }
+        }
+        collisions.remove(cardId);
+
+        Collection<String> candidates = collisions.keySet();
+        if (collisions.size() > MAX_CANDIDATES) {
+            candidates = collisions.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(MAX_CANDIDATES)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        }
+
+        List<Neighbour> ranked = new ArrayList<>();
+        for (String candidate : candidates) {
+            Set<String> other = tokens.get(candidate);
+            if (other == null) {
+                continue;
+            }
+            double score = jaccard(cardTokens, other);
+            if (score >= minScore) {
+                ranked.add(new Neighbour(candidate, score));
+            }
+        }
+        ranked.sort(ORDER);
+        return Collections.unmodifiableList(ranked.size() > topK ? new ArrayList<>(ranked.subList(0, topK)) : ranked);
+    }
+
+    /**
+     * Insert or refresh one neighbour in a card's top-K list
+     */
+    private void offer(String cardId, Neighbour candidate) {
+        neighbours.computeIfPresent(cardId, (key, list) -> {
+            List<Neighbour> updated = new ArrayList<>(list.size() + 1);
+            for (Neighbour neighbour : list) {
+                if (!neighbour.getCardId().equals(candidate.getCardId())) {
+                    updated.add(neighbour);
+                }
+            }
+            updated.add(candidate);
+            updated.sort(ORDER);
+            return Collections.unmodifiableList(updated.size() > topK ? new ArrayList<>(updated.subList(0, topK)) : updated);
+        });
+    }
+
+    private static final Comparator<Neighbour> ORDER = Comparator
+        .comparingDouble(Neighbour::getScore).reversed()
+        .thenComparing(Neighbour::getCardId);
+
+    /**
+     * Feature tokens of a card; the prefix keeps e.g. a team and a tag with the same text apart
+     */
+    static Set<String> features(Card card) {
+        Set<String> features = new HashSet<>();
+        add(features, "color", card.getColor());
+        add(features, "attribute", card.getAttribute());
+        add(features, "type", card.getCardType());
+        add(features, "set", card.getSetCode() != null ? card.getSetCode() : card.getSet());
+        add(features, "team", card.getTeam());
+        add(features, "league", card.getLeague());
+        add(features, "position", card.getPosition());
+        if (card.getTags() != null) {
+            card.getTags().forEach(tag -> add(features, "tag", tag));
+        }
+        if (card.getEffect() != null) {
+            String effect = card.getEffect().toLowerCase(Locale.ROOT);
+            Matcher bracketed = BRACKETED.matcher(effect);
+            while (bracketed.find()) {
+                add(features, "keyword", bracketed.group(1));
+            }
+            Matcher word = WORD.matcher(effect);
+            while (word.find()) {
+                if (!STOP_WORDS.contains(word.group())) {
+                    features.add("word:" + word.group());
+                }
+            }
+        }
+        return features;
+    }
+
+    private static void add(Set<String> features, String kind, String value) {
+        if (value != null && !value.isBlank()) {
+            features.add(kind + ":" + value.trim().toLowerCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * One bucket key per band: MinHash rows of the band hashed together with the game
+     */
+    private static long[] bandKeys(String game, Set<String> features) {
+        long[] signature = new long[HASHES];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (String feature : features) {
+            long base = mix(feature.hashCode() * 0xC2B2AE3D27D4EB4FL + feature.length());
+            for (int i = 0; i < HASHES; i++) {
+                long hash = mix(base ^ SEEDS[i]);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+
+        long gameHash = game != null ? game.hashCode() : 0L;
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long key = mix(gameHash * 31 + band);
+            for (int row = 0; row < ROWS; row++) {
+                key = mix(key ^ signature[band * ROWS + row]);
+            }
+            keys[band] = key;
+        }
+        return keys;
+    }
+
+    private static double jaccard(Set<String> a, Set<String> b) {
+        Set<String> smaller = a.size() <= b.size() ? a : b;
+        Set<String> larger = smaller == a ? b : a;
+        int shared = 0;
+        for (String token : smaller) {
+            if (larger.contains(token)) {
+                shared++;
+            }
+        }
+        int union = a.size() + b.size() - shared;
+        return union == 0 ? 0.0 : (double) shared / union;
+    }
+
+    /**
+     * 64-bit finalizer (splitmix64)
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    static class Neighbour {
+        private String cardId;
+        private double score;            // Jaccard similarity of the feature sets
+    }
+}
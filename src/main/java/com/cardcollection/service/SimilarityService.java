@@ -0,0 +1,183 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * "Cards like this" recommendations.
+ *
+ * A SimilarityIndex over the whole catalog is built by a background job
+ * (at startup and whenever the catalog is reloaded) and then kept current
+ * card by card from CardCatalog change events, on a single updater thread.
+ * Lookups only read the precomputed neighbour lists.
+ */
+@Service
+public class SimilarityService implements CardChangeListener {
+
+    private final CardCatalog cardCatalog;
+    private final JobService jobService;
+    private final int topK;
+    private final double minScore;
+    private final ExecutorService updater;
+    private final Set<String> changedDuringRebuild = ConcurrentHashMap.newKeySet();
+    private volatile SimilarityIndex index;
+    private volatile boolean rebuilding = false;
+
+    public SimilarityService(CardCatalog cardCatalog, JobService jobService,
+                             @Value("${similarity.top-k:20}") int topK,
+                             @Value("${similarity.min-score:0.15}") double minScore) {
+        this.cardCatalog = cardCatalog;
+        this.jobService = jobService;
+        this.topK = topK;
+        this.minScore = minScore;
+        this.updater = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "similarity-updater");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Up to limit most similar cards, best first (empty until the first build finishes)
+     */
+    public List<SimilarCard> getSimilarCards(String cardId, int limit) {
+        SimilarityIndex current = index;
+        if (current == null) {
+            return List.of();
+        }
+        List<SimilarCard> similar = new ArrayList<>();
+        for (SimilarityIndex.Neighbour neighbour : current.neighbours(cardId)) {
+            if (similar.size() >= limit) {
+                break;
+            }
+            Card card = cardCatalog.get(neighbour.getCardId());
+            if (card != null) {
+                similar.add(new SimilarCard(card.getId(), card.getName(), neighbour.getScore()));
+            }
+        }
+        return similar;
+    }
+
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * Rebuild the whole model as a background job
+     */
+    public JobService.JobStatus submitRebuild() {
+        return jobService.submit("similarity-rebuild", context -> {
+            rebuilding = true;
+            changedDuringRebuild.clear();
+            try {
+                cardCatalog.ensureLoaded();
+                long start = System.currentTimeMillis();
+                SimilarityIndex built = SimilarityIndex.build(new ArrayList<>(cardCatalog.all()), topK, minScore);
+                context.checkCancelled();
+
+                // Swap on the updater thread, then replay what changed while we were building
+                updater.submit(() -> {
+                    index = built;
+                    rebuilding = false;
+                    for (String cardId : new ArrayList<>(changedDuringRebuild)) {
+                        apply(cardId);
+                    }
+                    changedDuringRebuild.clear();
+                }).get();
+
+                Map<String, Object> result = new HashMap<>();
+                result.put("cards", built.size());
+                result.put("millis", System.currentTimeMillis() - start);
+                System.out.println("✅ Similarity index built: " + built.size() + " cards in "
+                    + result.get("millis") + "ms");
+                return result;
+            } finally {
+                rebuilding = false;
+            }
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        submitRebuildQuietly();
+    }
+
+    @Override
+    public void onCardChanged(Card card) {
+        enqueue(card.getId());
+    }
+
+    @Override
+    public void onCardRemoved(String cardId) {
+        enqueue(cardId);
+    }
+
+    @Override
+    public void onCatalogReloaded() {
+        if (index != null) {
+            submitRebuildQuietly();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        updater.shutdownNow();
+    }
+
+    private void enqueue(String cardId) {
+        try {
+            updater.execute(() -> apply(cardId));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Bring one card up to date in the current model (updater thread only)
+     */
+    private void apply(String cardId) {
+        if (rebuilding) {
+            changedDuringRebuild.add(cardId);
+        }
+        SimilarityIndex current = index;
+        if (current == null) {
+            return;
+        }
+        Card card = cardCatalog.get(cardId);
+        if (card != null) {
+            current.upsert(card);
+        } else {
+            current.remove(cardId);
+        }
+    }
+
+    private void submitRebuildQuietly() {
+        try {
+            submitRebuild();
+        } catch (RejectedExecutionException e) {
+            System.err.println("❌ Similarity rebuild not scheduled: " + e.getMessage());
+        }
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class SimilarCard {
+        private String cardId;
+        private String name;
+        private double score;            // 0..1, share of common features
+    }
+}
@@ -0,0 +1,183 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Typeahead suggestions over card name, player name, team and set.
+ *
+ * Lookups read an immutable SuggestionTrie held in a volatile field. Card
+ * changes don't touch it: they schedule a rebuild (debounced, so a bulk
+ * import causes one rebuild rather than thousands) on a background thread,
+ * which swaps the new trie in when done. Readers never wait.
+ */
+@Service
+public class SuggestService implements CardChangeListener {
+
+    private final CardCatalog cardCatalog;
+    private final PopularityService popularityService;
+    private final int topK;
+    private final long debounceMs;
+    private final ScheduledExecutorService rebuilder;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean(false);
+    private volatile SuggestionTrie trie;
+
+    public SuggestService(CardCatalog cardCatalog, PopularityService popularityService,
+                          @Value("${suggest.top-k:10}") int topK,
+                          @Value("${suggest.rebuild-debounce-ms:1000}") long debounceMs) {
+        this.cardCatalog = cardCatalog;
+        this.popularityService = popularityService;
+        this.topK = topK;
+        this.debounceMs = debounceMs;
+        this.rebuilder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "suggest-rebuilder");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Up to limit suggestions for the prefix, best first (empty until the first build finishes)
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        SuggestionTrie current = trie;
+        if (current == null || prefix == null || limit <= 0) {
+            return List.of();
+        }
+        List<Suggestion> suggestions = new ArrayList<>();
+        for (SuggestionTrie.Entry entry : current.suggest(prefix, Math.min(limit, topK))) {
+            suggestions.add(new Suggestion(entry.getText(), entry.getField(), entry.getCardId(), entry.getScore()));
+        }
+        return suggestions;
+    }
+
+    public boolean isReady() {
+        return trie != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        scheduleRebuild(0);
+    }
+
+    /**
+     * Pick up new popularity rankings even when no card changed
+     */
+    @Scheduled(fixedDelayString = "${suggest.refresh-interval-ms:300000}",
+               initialDelayString = "${suggest.refresh-interval-ms:300000}")
+    public void refresh() {
+        scheduleRebuild(0);
+    }
+
+    @Override
+    public void onCardChanged(Card card) {
+        scheduleRebuild(debounceMs);
+    }
+
+    @Override
+    public void onCardRemoved(String cardId) {
+        scheduleRebuild(debounceMs);
+    }
+
+    @Override
+    public void onCatalogReloaded() {
+        scheduleRebuild(debounceMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuilder.shutdownNow();
+    }
+
+    private void scheduleRebuild(long delayMs) {
+        if (!rebuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            rebuilder.schedule(this::rebuild, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            rebuildScheduled.set(false);
+        }
+    }
+
+    private void rebuild() {
+        // Cleared first so a change arriving during the build schedules another one
+        rebuildScheduled.set(false);
+        try {
+            cardCatalog.ensureLoaded();
+            long start = System.currentTimeMillis();
+            SuggestionTrie built = SuggestionTrie.build(entries(), topK);
+            trie = built;
+            System.out.println("✅ Suggestion index built: " + built.size() + " terms, " + built.nodeCount()
+                + " nodes in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            System.err.println("❌ Suggestion index build failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One entry per card name / player name; teams and sets once each, scored by their best card
+     */
+    private List<SuggestionTrie.Entry> entries() {
+        List<SuggestionTrie.Entry> entries = new ArrayList<>();
+        Map<String, Double> teams = new HashMap<>();
+        Map<String, Double> sets = new HashMap<>();
+        for (Card card : cardCatalog.all()) {
+            double score = score(card);
+            if (hasText(card.getName())) {
+                entries.add(new SuggestionTrie.Entry(card.getName(), "name", card.getId(), score));
+            }
+            if (hasText(card.getPlayerName()) && !card.getPlayerName().equals(card.getName())) {
+                entries.add(new SuggestionTrie.Entry(card.getPlayerName(), "playerName", card.getId(), score));
+            }
+            if (hasText(card.getTeam())) {
+                teams.merge(card.getTeam(), score, Math::max);
+            }
+            if (hasText(card.getSet())) {
+                sets.merge(card.getSet(), score, Math::max);
+            }
+        }
+        teams.forEach((team, score) -> entries.add(new SuggestionTrie.Entry(team, "team", null, score)));
+        sets.forEach((set, score) -> entries.add(new SuggestionTrie.Entry(set, "set", null, score)));
+        return entries;
+    }
+
+    /**
+     * Popularity dominates; price breaks ties between equally collected cards
+     */
+    private double score(Card card) {
+        double collected = Math.max(0L, popularityService.getCollectedCount(card.getId()));
+        double price = card.getCurrentPrice() != null ? Math.max(0.0, card.getCurrentPrice()) : 0.0;
+        return Math.log1p(collected) * 10 + Math.log1p(price);
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    public static class Suggestion {
+        private String text;
+        private String field;            // name, playerName, team, set
+        private String cardId;           // null for team / set suggestions
+        private double score;
+    }
+}
@@ -0,0 +1,263 @@
+package com.cardcollection.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable prefix trie for typeahead, flattened into arrays once built.
+ *
+ * Every entry is reachable from the start of each of its words ("luffy"
+ * finds "Monkey.D.Luffy"). Each node stores the IDs of the top-K entries
+ * below it by score, so a lookup is one walk down the prefix plus a copy of
+ * at most K entries, independent of how many terms match. Terms are only
+ * indexed MAX_DEPTH characters deep; nodes at that depth keep all their
+ * entries, so longer prefixes are answered by filtering that (short) list.
+ */
+class SuggestionTrie {
+
+    static final int MAX_DEPTH = 16;
+
+    private final List<Entry> entries;
+    private final int[] childStart;
+    private final int[] childCount;
+    private final char[] childChars;
+    private final int[] childNodes;
+    private final int[] topStart;
+    private final int[] topCount;
+    private final int[] topEntries;
+
+    private SuggestionTrie(List<Entry> entries, int[] childStart, int[] childCount, char[] childChars,
+                           int[] childNodes, int[] topStart, int[] topCount, int[] topEntries) {
+        this.entries = entries;
+        this.childStart = childStart;
+        this.childCount = childCount;
+        this.childChars = childChars;
+        this.childNodes = childNodes;
+        this.topStart = topStart;
+        this.topCount = topCount;
+        this.topEntries = topEntries;
+    }
+
+    /**
+     * Build a trie keeping the topK best entries per node
+     */
+    static SuggestionTrie build(List<Entry> entries, int topK) {
+        List<Entry> ranked = new ArrayList<>(entries);
+        // Entry ids are positions in score order, so "best" is simply "smallest id"
+        ranked.sort((a, b) -> a.score != b.score ? Double.compare(b.score, a.score) : a.text.compareTo(b.text));
+
+        BuildNode root = new BuildNode(0);
+        for (int id = 0; id < ranked.size(); id++) {
+            String normalized = normalize(ranked.get(id).text);
+            int wordStart = 0;
+            while (wordStart < normalized.length()) {
+                insert(root, normalized, wordStart, id);
+                int nextSpace = normalized.indexOf(' ', wordStart);
+                if (nextSpace < 0) {
+                    break;
+                }
+                wordStart = nextSpace + 1;
+            }
+        }
+
+        List<BuildNode> order = new ArrayList<>();
+        int childTotal = 0;
+        int topTotal = 0;
+        List<BuildNode> queue = new ArrayList<>();
+        queue.add(root);
+        for (int i = 0; i < queue.size(); i++) {
+            BuildNode node = queue.get(i);
+            node.index = order.size();
+            order.add(node);
+            queue.addAll(node.children.values());
+            childTotal += node.children.size();
+        }
+        for (int i = order.size() - 1; i >= 0; i--) {
+            BuildNode node = order.get(i);
+            node.top = topOf(node, node.depth == MAX_DEPTH ? Integer.MAX_VALUE : topK);
+            topTotal += node.top.length;
+        }
+
+        int nodes = order.size();
+        int[] childStart = new int[nodes];
+        int[] childCount = new int[nodes];
+        char[] childChars = new char[childTotal];
+        int[] childNodes = new int[childTotal];
+        int[] topStart = new int[nodes];
+        int[] topCount = new int[nodes];
+        int[] topEntries = new int[topTotal];
+        int childOffset = 0;
+        int topOffset = 0;
+        for (BuildNode node : order) {
+            childStart[node.index] = childOffset;
+            childCount[node.index] = node.children.size();
+            for (Map.Entry<Character, BuildNode> child : node.children.entrySet()) {
+                childChars[childOffset] = child.getKey();
+                childNodes[childOffset] = child.getValue().index;
+                childOffset++;
+            }
+            topStart[node.index] = topOffset;
+            topCount[node.index] = node.top.length;
+            System.arraycopy(node.top, 0, topEntries, topOffset, node.top.length);
+            topOffset += node.top.length;
+        }
+
+        return new SuggestionTrie(ranked, childStart, childCount, childChars, childNodes,
+            topStart, topCount, topEntries);
+    }
+
+    /**
+     * Best entries with a word starting with the prefix, highest score first
+     */
+    List<Entry> suggest(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        if (normalized.isEmpty()) {
+            return List.of();
+        }
+
+        int node = 0;
+        int depth = Math.min(normalized.length(), MAX_DEPTH);
+        for (int i = 0; i < depth; i++) {
+            node = child(node, normalized.charAt(i));
+            if (node < 0) {
+                return List.of();
+            }
+        }
+
+        List<Entry> result = new ArrayList<>(Math.min(limit, topCount[node]));
+        for (int i = 0; i < topCount[node] && result.size() < limit; i++) {
+            Entry entry = entries.get(topEntries[topStart[node] + i]);
+            if (normalized.length() <= MAX_DEPTH || hasWordStartingWith(normalize(entry.text), normalized)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    int nodeCount() {
+        return childStart.length;
+    }
+
+    /**
+     * Lower-case, with every run of non-alphanumerics collapsed into one space
+     */
+    static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                normalized.append(c);
+                pendingSpace = false;
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private int child(int node, char c) {
+        int low = childStart[node];
+        int high = low + childCount[node] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (childChars[mid] < c) {
+                low = mid + 1;
+            } else if (childChars[mid] > c) {
+                high = mid - 1;
+            } else {
+                return childNodes[mid];
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasWordStartingWith(String text, String prefix) {
+        return text.startsWith(prefix) || text.contains(" " + prefix);
+    }
+
+    private static void insert(BuildNode root, String text, int from, int id) {
+        BuildNode node = root;
+        int end = Math.min(text.length(), from + MAX_DEPTH);
+        for (int i = from; i < end; i++) {
+            int depth = node.depth + 1;
+            node = node.children.computeIfAbsent(text.charAt(i), c -> new BuildNode(depth));
+        }
+        node.terminal.add(id);
+    }
+
+    /**
+     * Merge the node's own entries with its children's top lists; all lists
+     * are sorted ascending by id (= by score), so this is a K-way merge
+     */
+    private static int[] topOf(BuildNode node, int topK) {
+        Set<Integer> merged = new LinkedHashSet<>();
+        int[] own = node.terminal.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+        List<int[]> lists = new ArrayList<>();
+        lists.add(own);
+        for (BuildNode child : node.children.values()) {
+            lists.add(child.top);
+        }
+        int[] cursors = new int[lists.size()];
+        while (merged.size() < topK) {
+            int best = -1;
+            int bestList = -1;
+            for (int l = 0; l < lists.size(); l++) {
+                int[] list = lists.get(l);
+                while (cursors[l] < list.length && merged.contains(list[cursors[l]])) {
+                    cursors[l]++;
+                }
+                if (cursors[l] < list.length && (best < 0 || list[cursors[l]] < best)) {
+                    best = list[cursors[l]];
+                    bestList = l;
+                }
+            }
+            if (bestList < 0) {
+                break;
+            }
+            merged.add(best);
+            cursors[bestList]++;
+        }
+        node.terminal = null;
+        return merged.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * One suggestable term: a card name / player name (with its card) or a
+     * team / set value shared by many cards (no card ID)
+     */
+    @lombok.Data
+    @lombok.AllArgsConstructor
+    static class Entry {
+        private String text;
+        private String field;            // name, playerName, team, set
+        private String cardId;
+        private double score;
+    }
+
+    private static class BuildNode {
+        private final TreeMap<Character, BuildNode> children = new TreeMap<>();
+        private List<Integer> terminal = new ArrayList<>(1);
+        private final int depth;
+        private int[] top;
+        private int index;
+
+        private BuildNode(int depth) {
+            this.depth = depth;
+        }
+    }
+}
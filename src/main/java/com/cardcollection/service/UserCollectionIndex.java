@@ -0,0 +1,184 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.CollectionItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Immutable in-memory view of one user's collection, with lazily built sort
+ * orders so pages can be served by keyset: a binary search to the cursor,
+ * then a forward scan until the page is full.
+ *
+ * Missing sort values (no price, no purchase price) always sort last, and
+ * ties are broken by item ID so every position in an order is unique.
+ */
+class UserCollectionIndex {
+
+    private final List<CollectionItem> items;
+    private final long loadedAt;
+    private final Map<String, Entry[]> orders = new ConcurrentHashMap<>();
+
+    UserCollectionIndex(List<CollectionItem> items, long loadedAt) {
+        this.items = items;
+        this.loadedAt = loadedAt;
+    }
+
+    List<CollectionItem> items() {
+        return items;
+    }
+
+    long loadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * Up to limit items matching the filter, in the given order, strictly after
+     * the cursor position (null for the first page). The last entry of the
+     * returned page is the next cursor position.
+     */
+    List<Entry> page(SortKey sortKey, boolean descending, Predicate<CollectionItem> filter,
+                     Entry after, int limit) {
+
+        Entry[] order = orders.computeIfAbsent(sortKey.name() + (descending ? ":desc" : ":asc"),
+            key -> sorted(sortKey, descending));
+        Comparator<Entry> comparator = comparator(descending);
+
+        int start = 0;
+        if (after != null) {
+            int low = 0;
+            int high = order.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (comparator.compare(order[mid], after) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            start = low;
+        }
+
+        List<Entry> page = new ArrayList<>(Math.min(limit, 64));
+        for (int i = start; i < order.length && page.size() < limit; i++) {
+            if (filter.test(order[i].item)) {
+                page.add(order[i]);
+            }
+        }
+        return page;
+    }
+
+    int count(Predicate<CollectionItem> filter) {
+        int count = 0;
+        for (CollectionItem item : items) {
+            if (filter.test(item)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private Entry[] sorted(SortKey sortKey, boolean descending) {
+        Entry[] order = new Entry[items.size()];
+        for (int i = 0; i < order.length; i++) {
+            CollectionItem item = items.get(i);
+            order[i] = new Entry(sortKey.valueOf(item), item.getId(), item);
+        }
+        Arrays.sort(order, comparator(descending));
+        return order;
+    }
+
+    private static Comparator<Entry> comparator(boolean descending) {
+        return (a, b) -> {
+            boolean aMissing = Double.isNaN(a.value);
+            boolean bMissing = Double.isNaN(b.value);
+            if (aMissing != bMissing) {
+                return aMissing ? 1 : -1;
+            }
+            if (!aMissing) {
+                int byValue = descending ? Double.compare(b.value, a.value) : Double.compare(a.value, b.value);
+                if (byValue != 0) {
+                    return byValue;
+                }
+            }
+            return a.id.compareTo(b.id);
+        };
+    }
+
+    /**
+     * Sortable fields of a collection item; NaN means "no value"
+     */
+    enum SortKey {
+        VALUE,
+        PURCHASE_PRICE,
+        DATE_ACQUIRED,
+        PROFIT;
+
+        double valueOf(CollectionItem item) {
+            int quantity = item.getQuantity() != null ? item.getQuantity() : 1;
+            switch (this) {
+                case VALUE:
+                    return marketValue(item, quantity);
+                case PURCHASE_PRICE:
+                    return item.getPurchasePrice() != null ? item.getPurchasePrice() : Double.NaN;
+                case DATE_ACQUIRED:
+                    return item.getDateAcquired() != null ? item.getDateAcquired() : Double.NaN;
+                case PROFIT:
+                    double value = marketValue(item, quantity);
+                    return item.getPurchasePrice() != null ? value - PortfolioAggregator.invested(item) : Double.NaN;
+                default:
+                    return Double.NaN;
+            }
+        }
+
+        private static double marketValue(CollectionItem item, int quantity) {
+            if (item.getCard() == null || item.getCard().getCurrentPrice() == null) {
+                return Double.NaN;
+            }
+            return item.getCard().getCurrentPrice() * quantity;
+        }
+
+        /**
+         * Parse a sortBy parameter (value, purchasePrice, dateAcquired, profit)
+         */
+        static SortKey fromParam(String param) {
+            if (param == null) {
+                return DATE_ACQUIRED;
+            }
+            switch (param.toLowerCase()) {
+                case "value":
+                    return VALUE;
+                case "purchaseprice":
+                case "purchase_price":
+                    return PURCHASE_PRICE;
+                case "dateacquired":
+                case "date_acquired":
+                    return DATE_ACQUIRED;
+                case "profit":
+                    return PROFIT;
+                default:
+                    throw new IllegalArgumentException("Unsupported sortBy: " + param);
+            }
+        }
+    }
+
+    /**
+     * One position in a sort order
+     */
+    static class Entry {
+        final double value;
+        final String id;
+        final CollectionItem item;
+
+        Entry(double value, String id, CollectionItem item) {
+            this.value = value;
+            this.id = id;
+            this.item = item;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class CardServiceTest {
+
+    private final CardService cardService = new CardService(null, catalog(List.of(
+        card("a", 1, 5000), card("b", 2, 3000), card("c", 3, 5000),
+        card("d", 4, 3000), card("e", 5, 5000), card("f", 6, 7000))), null, null, null, null, 500);
+
+    @Test
+    void indexWalkAndComparatorOrderTiesTheSameWay() throws Exception {
+        for (String sortDir : new String[] { "asc", "desc" }) {
+            // Range on the sort field: results come straight from the power index
+            CardService.SearchCriteria walked = criteria(sortDir);
+            walked.setMinPower(0.0);
+            // Range on another field: results are sorted with the comparator
+            CardService.SearchCriteria sorted = criteria(sortDir);
+            sorted.setMinCost(0.0);
+
+            List<String> expected = "asc".equals(sortDir)
+                ? List.of("b", "d", "a", "c", "e", "f")
+                : List.of("f", "e", "c", "a", "d", "b");
+            assertEquals(expected, ids(cardService.searchCards(walked)));
+            assertEquals(expected, ids(cardService.searchCards(sorted)));
+            assertEquals(expected, ids(cardService.searchCards(criteria(sortDir))));
+        }
+    }
+
+    @Test
+    void pagesFollowTheSameTieOrder() throws Exception {
+        List<String> seen = new ArrayList<>();
+        for (int page = 0; page < 3; page++) {
+            CardService.SearchCriteria criteria = criteria("desc");
+            criteria.setMinCost(0.0);
+            criteria.setPage(page);
+            criteria.setSize(2);
+            seen.addAll(ids(cardService.searchCards(criteria)));
+        }
+        assertEquals(List.of("f", "e", "c", "a", "d", "b"), seen);
+    }
+
+    @Test
+    void cardsFoundInTheCatalogAreCopies() throws Exception {
+        Card found = cardService.findCardsByIds(List.of("a")).get("a");
+        found.setCurrentPrice(99.0);
+        found.setName("Changed");
+
+        Card again = cardService.findCardsByIds(List.of("a")).get("a");
+        assertEquals("Card a", again.getName());
+        assertNull(again.getCurrentPrice());
+    }
+
+    private static CardService.SearchCriteria criteria(String sortDir) {
+        CardService.SearchCriteria criteria = new CardService.SearchCriteria();
+        criteria.setSortBy("power");
+        criteria.setSortDir(sortDir);
+        return criteria;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CardCatalog catalog(List<Card> cards) {
+        ObjectProvider<CardChangeListener> noListeners = (ObjectProvider<CardChangeListener>) Proxy.newProxyInstance(
+            CardServiceTest.class.getClassLoader(), new Class<?>[] { ObjectProvider.class },
+            (proxy, method, args) -> {
+                if (method.getName().equals("orderedStream") || method.getName().equals("stream")) {
+                    return Stream.empty();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+        CardCatalog catalog = new CardCatalog(null, null, null, noListeners);
+        catalog.restore(cards, Map.of(), 0L);
+        return catalog;
+    }
+
+    private static Card card(String id, int cost, int power) {
+        Card card = new Card();
+        card.setId(id);
+        card.setName("Card " + id);
+        card.setCost(cost);
+        card.setPower(power);
+        return card;
+    }
+
+    private static List<String> ids(CardService.SearchResult result) {
+        List<String> ids = new ArrayList<>(result.getCards().size());
+        result.getCards().forEach(card -> ids.add(card.getId()));
+        return ids;
+    }
+}
@@ -0,0 +1,147 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import com.cardcollection.model.PriceHistory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CatalogSnapshotServiceTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void snapshotRoundTripRestoresCardsIndexesWatermarkAndPrices() throws Exception {
+        CardCatalog source = catalog();
+        source.restore(List.of(card("a", 3, 9.5), card("b", 1, null), card("c", 3, 2.0)), Map.of(), 1_234L);
+        PriceService sourcePrices = priceService(source);
+        sourcePrices.restoreLatestPrices(List.of(price("a", 9.5)));
+        source.put(card("d", 2, 4.0));
+        source.remove("b");
+
+        snapshotService(source, sourcePrices).write();
+
+        CardCatalog restored = catalog();
+        PriceService restoredPrices = priceService(restored);
+        CatalogSnapshotService.SnapshotInfo info = snapshotService(restored, restoredPrices).load();
+
+        assertEquals(3, info.getCards());
+        assertEquals(1_234L, restored.getLastSyncedAt());
+        assertEquals(byId(source.all()).keySet(), byId(restored.all()).keySet());
+        assertEquals(4.0, restored.get("d").getCurrentPrice());
+        assertIndexesEqual(source.exportSnapshot(), restored.exportSnapshot());
+        assertEquals(9.5, restoredPrices.getKnownLatestPrice("a").getPrice());
+    }
+
+    @Test
+    void snapshotTakenDuringWritesRestoresIndexesMatchingItsCards() throws Exception {
+        CardCatalog source = catalog();
+        source.restore(List.of(card("seed", 1, 1.0)), Map.of(), 1L);
+        PriceService sourcePrices = priceService(source);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (int i = 0; writing.get(); i++) {
+                source.put(card("card-" + (i % 500), i % 7, i % 3 == 0 ? null : (double) i));
+                if (i % 5 == 0) {
+                    source.remove("card-" + ((i + 250) % 500));
+                }
+            }
+        });
+        writer.start();
+        try {
+            for (int round = 0; round < 20; round++) {
+                snapshotService(source, sourcePrices).write();
+
+                CardCatalog restored = catalog();
+                snapshotService(restored, priceService(restored)).load();
+                // Every restored index must be exactly what the restored cards would build
+                assertIndexesEqual(rebuilt(restored), restored.exportSnapshot());
+            }
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+    }
+
+    private CatalogSnapshotService snapshotService(CardCatalog catalog, PriceService prices) {
+        return new CatalogSnapshotService(catalog, prices, true, dir.resolve("catalog.snapshot").toString(), 5_000);
+    }
+
+    private PriceService priceService(CardCatalog catalog) {
+        PriceJournal journal = new PriceJournal(null, null, false, dir.resolve("journal").toString(),
+            1 << 20, 500, 10, 60_000, 5, 5_000);
+        return new PriceService(null, null, catalog, null, null, null, null, journal, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static CardCatalog catalog() {
+        ObjectProvider<CardChangeListener> noListeners = (ObjectProvider<CardChangeListener>) Proxy.newProxyInstance(
+            CatalogSnapshotServiceTest.class.getClassLoader(), new Class<?>[] { ObjectProvider.class },
+            (proxy, method, args) -> {
+                if (method.getName().equals("orderedStream") || method.getName().equals("stream")) {
+                    return Stream.empty();
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+        return new CardCatalog(null, null, null, noListeners);
+    }
+
+    /**
+     * A catalog loaded from the given catalog's cards, with its indexes sorted from scratch
+     */
+    private static CardCatalog.CatalogExport rebuilt(CardCatalog catalog) {
+        CardCatalog fresh = catalog();
+        fresh.restore(catalog.all(), Map.of(), catalog.getLastSyncedAt());
+        return fresh.exportSnapshot();
+    }
+
+    private static void assertIndexesEqual(CardCatalog.CatalogExport expected, CardCatalog.CatalogExport actual) {
+        for (CardCatalog.NumericField field : CardCatalog.NumericField.values()) {
+            CardCatalog.IndexEntries want = expected.getIndexes().get(field);
+            CardCatalog.IndexEntries got = actual.getIndexes().get(field);
+            assertArrayEquals(want.getIds(), got.getIds(), field.name());
+            assertArrayEquals(want.getValues(), got.getValues(), field.name());
+        }
+        assertFalse(actual.getCards().isEmpty());
+        assertTrue(actual.getIndexes().get(CardCatalog.NumericField.COST).getIds().length <= actual.getCards().size());
+    }
+
+    private static Map<String, Card> byId(Iterable<Card> cards) {
+        Map<String, Card> byId = new HashMap<>();
+        cards.forEach(card -> byId.put(card.getId(), card));
+        return byId;
+    }
+
+    private static Card card(String id, Integer cost, Double price) {
+        Card card = new Card();
+        card.setId(id);
+        card.setName("Card " + id);
+        card.setCost(cost);
+        card.setCurrentPrice(price);
+        return card;
+    }
+
+    private static PriceHistory price(String cardId, double value) {
+        PriceHistory price = new PriceHistory();
+        price.setId("price-" + cardId);
+        price.setCardId(cardId);
+        price.setPrice(value);
+        price.setTimestamp(1_700_000_000_000L);
+        price.setCurrency("USD");
+        return price;
+    }
+}
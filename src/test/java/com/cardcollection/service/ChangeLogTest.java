@@ -0,0 +1,83 @@
+package com.cardcollection.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChangeLogTest {
+
+    private static final long CLOCK_SKEW_MS = 5_000;
+    private static final long ONE_DAY = 24L * 60 * 60 * 1000;
+
+    private final ChangeLog changeLog = new ChangeLog(null, null, CLOCK_SKEW_MS, 30, 20);
+
+    @Test
+    void missingTokenGetsFullSnapshot() {
+        for (String token : new String[] { null, "", "   " }) {
+            long before = System.currentTimeMillis();
+            ChangeLog.Window window = changeLog.open(token);
+            long after = System.currentTimeMillis();
+
+            assertTrue(window.isReset());
+            assertEquals(0L, window.since());
+            assertTrue(window.next() >= before - CLOCK_SKEW_MS && window.next() <= after - CLOCK_SKEW_MS);
+        }
+    }
+
+    @Test
+    void malformedNegativeOrFutureTokensAreRejected() {
+        long future = System.currentTimeMillis() + CLOCK_SKEW_MS + 60_000;
+        for (String token : new String[] { "abc", "12.5", "-1", String.valueOf(future) }) {
+            assertThrows(IllegalArgumentException.class, () -> changeLog.open(token));
+        }
+    }
+
+    @Test
+    void recentTokenResumesAndHoldsNextTokenBackBySkew() {
+        long since = System.currentTimeMillis() - 60_000;
+        ChangeLog.Window window = changeLog.open(" " + since + " ");
+
+        assertFalse(window.isReset());
+        assertEquals(since, window.since());
+        assertTrue(window.next() > since);
+        assertTrue(window.next() <= System.currentTimeMillis() - CLOCK_SKEW_MS);
+    }
+
+    @Test
+    void tokenWithinSkewNeverMovesBackwards() {
+        long since = System.currentTimeMillis() + 1_000;
+        ChangeLog.Window window = changeLog.open(String.valueOf(since));
+
+        assertFalse(window.isReset());
+        assertEquals(since, window.next());
+    }
+
+    @Test
+    void tokenOlderThanRetentionResets() {
+        long since = System.currentTimeMillis() - 31 * ONE_DAY;
+        ChangeLog.Window window = changeLog.open(String.valueOf(since));
+
+        assertTrue(window.isReset());
+        assertEquals(0L, window.since());
+        assertTrue(changeLog.open(0L).isReset());
+    }
+
+    @Test
+    void changeSetDropsDeletionsOfLiveDocuments() {
+        ChangeLog.Window window = changeLog.open(System.currentTimeMillis() - 60_000);
+
+        ChangeLog.ChangeSet<String> changeSet = changeLog.changeSet(window, List.of("a", "b"),
+            id -> id, Set.of("b", "c"));
+
+        assertEquals(List.of("a", "b"), changeSet.getChanged());
+        assertEquals(List.of("c"), changeSet.getDeletedIds());
+        assertEquals(String.valueOf(window.next()), changeSet.getNextToken());
+        assertFalse(changeSet.isReset());
+    }
+}
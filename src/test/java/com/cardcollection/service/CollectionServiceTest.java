@@ -0,0 +1,195 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.CollectionItem;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Transaction;
+import com.google.cloud.firestore.WriteBatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CollectionServiceTest {
+
+    private static final String USER = "user-1";
+    private static final String HOLDING = CollectionService.holdingId(USER, "card-1", "Mint", false);
+
+    private final Firestore firestore = mock(Firestore.class);
+    private final CollectionReference collection = mock(CollectionReference.class);
+    private final WriteBatch batch = mock(WriteBatch.class);
+    private final Transaction transaction = mock(Transaction.class);
+    private final FirestoreCallPolicy callPolicy = mock(FirestoreCallPolicy.class);
+    private final Map<String, DocumentReference> refs = new HashMap<>();
+    private final Map<String, CollectionItem> stored = new HashMap<>();
+    private Runnable afterGetAll = () -> { };
+    private CollectionService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        when(firestore.collection("collections")).thenReturn(collection);
+        when(collection.document(anyString())).thenAnswer(invocation -> ref(invocation.getArgument(0)));
+        when(firestore.batch()).thenReturn(batch);
+        when(batch.commit()).thenReturn(ApiFutures.immediateFuture(List.of()));
+        when(firestore.getAll(any(DocumentReference[].class))).thenAnswer(invocation -> {
+            List<DocumentSnapshot> snapshots = new ArrayList<>();
+            for (Object argument : invocation.getArguments()) {
+                for (DocumentReference ref : argument instanceof DocumentReference[]
+                        ? (DocumentReference[]) argument : new DocumentReference[] { (DocumentReference) argument }) {
+                    snapshots.add(snapshot(ref));
+                }
+            }
+            afterGetAll.run();
+            return ApiFutures.immediateFuture(snapshots);
+        });
+        when(transaction.get(any(DocumentReference.class))).thenAnswer(invocation ->
+            ApiFutures.immediateFuture(snapshot(invocation.getArgument(0))));
+        when(firestore.runTransaction(any())).thenAnswer(invocation -> {
+            Transaction.Function<?> function = invocation.getArgument(0);
+            return ApiFutures.immediateFuture(function.updateCallback(transaction));
+        });
+        when(callPolicy.read(anyString(), any())).thenAnswer(CollectionServiceTest::runCall);
+        when(callPolicy.write(anyString(), any())).thenAnswer(CollectionServiceTest::runCall);
+
+        service = new CollectionService(firestore, mock(CardService.class), mock(CardCatalog.class),
+            mock(PriceService.class), mock(PopularityService.class), callPolicy, mock(ChangeLog.class),
+            mock(JobService.class), 30_000, 1000, 300_000, 1000, 5000, 60_000, 1000, 50, 500);
+
+        stored.put(HOLDING, holding(HOLDING, "Mint", 2, 20.0));
+    }
+
+    @Test
+    void descriptivePatchWritesOnlyItsFields() throws Exception {
+        CollectionService.BatchMutationResult result = service.updateCollectionBatch(USER, List.of(patch(HOLDING)));
+
+        assertEquals(List.of(HOLDING), result.getSucceeded());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> fields = ArgumentCaptor.forClass(Map.class);
+        verify(batch).update(eq(ref(HOLDING)), fields.capture());
+        assertEquals(Set.of("notes", "updatedAt"), fields.getValue().keySet());
+        verify(batch, never()).set(any(DocumentReference.class), any(Object.class));
+        verify(firestore, never()).runTransaction(any());
+    }
+
+    @Test
+    void pricePatchKeepsQuantityMergedAfterTheRead() throws Exception {
+        // Another request merges 3 more copies between the getAll and the write
+        afterGetAll = () -> stored.put(HOLDING, holding(HOLDING, "Mint", 5, 50.0));
+        CollectionItem patch = patch(HOLDING);
+        patch.setPurchasePrice(12.0);
+
+        CollectionService.BatchMutationResult result = service.updateCollectionBatch(USER, List.of(patch));
+
+        assertEquals(List.of(HOLDING), result.getSucceeded());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, Object>> fields = ArgumentCaptor.forClass(Map.class);
+        verify(transaction).update(eq(ref(HOLDING)), fields.capture());
+        assertEquals(5, fields.getValue().get("quantity"));
+        assertEquals(5, fields.getValue().get("pricedQuantity"));
+        assertEquals(60.0, fields.getValue().get("purchaseTotal"));
+        verify(batch, never()).set(any(DocumentReference.class), any(Object.class));
+    }
+
+    @Test
+    void movedHoldingCarriesQuantityMergedAfterTheRead() throws Exception {
+        afterGetAll = () -> stored.put(HOLDING, holding(HOLDING, "Mint", 5, 50.0));
+        CollectionItem patch = new CollectionItem();
+        patch.setId(HOLDING);
+        patch.setCondition("Played");
+        String target = CollectionService.holdingId(USER, "card-1", "Played", false);
+
+        CollectionService.BatchMutationResult result = service.updateCollectionBatch(USER, List.of(patch));
+
+        assertEquals(List.of(target), result.getSucceeded());
+        ArgumentCaptor<Object> created = ArgumentCaptor.forClass(Object.class);
+        verify(transaction).create(eq(ref(target)), created.capture());
+        CollectionItem moved = (CollectionItem) created.getValue();
+        assertEquals(5, moved.getQuantity());
+        assertEquals(50.0, moved.getPurchaseTotal());
+        assertEquals("Played", moved.getCondition());
+        verify(transaction).delete(ref(HOLDING));
+    }
+
+    @Test
+    void patchOfAnotherUsersItemFails() throws Exception {
+        CollectionService.BatchMutationResult result = service.updateCollectionBatch("user-2", List.of(patch(HOLDING)));
+
+        assertTrue(result.getSucceeded().isEmpty());
+        assertEquals(1, result.getFailed().size());
+        verify(firestore, never()).batch();
+    }
+
+    private static Object runCall(InvocationOnMock invocation) throws Exception {
+        FirestoreCallPolicy.Call<?> call = invocation.getArgument(1);
+        return call.start().get();
+    }
+
+    private DocumentReference ref(String id) {
+        return refs.computeIfAbsent(id, key -> mock(DocumentReference.class, invocation ->
+            invocation.getMethod().getName().equals("getId") ? key : Mockito.RETURNS_DEFAULTS.answer(invocation)));
+    }
+
+    /**
+     * Snapshot of what is stored under the document right now
+     */
+    private DocumentSnapshot snapshot(DocumentReference ref) {
+        String id = ref.getId();
+        CollectionItem item = stored.get(id);
+        return mock(DocumentSnapshot.class, invocation -> {
+            switch (invocation.getMethod().getName()) {
+                case "exists":
+                    return item != null;
+                case "getId":
+                    return id;
+                case "getReference":
+                    return ref;
+                case "toObject":
+                    return item != null ? holding(item.getId(), item.getCondition(), item.getQuantity(),
+                        item.getPurchaseTotal()) : null;
+                default:
+                    return Mockito.RETURNS_DEFAULTS.answer(invocation);
+            }
+        });
+    }
+
+    private static CollectionItem holding(String id, String condition, int quantity, double purchaseTotal) {
+        CollectionItem item = new CollectionItem();
+        item.setId(id);
+        item.setUserId(USER);
+        item.setCardId("card-1");
+        item.setCondition(condition);
+        item.setIsWishlist(false);
+        item.setQuantity(quantity);
+        item.setPricedQuantity(quantity);
+        item.setPurchaseTotal(purchaseTotal);
+        item.setPurchasePrice(purchaseTotal / quantity);
+        return item;
+    }
+
+    private static CollectionItem patch(String id) {
+        CollectionItem patch = new CollectionItem();
+        patch.setId(id);
+        patch.setNotes("signed");
+        return patch;
+    }
+}
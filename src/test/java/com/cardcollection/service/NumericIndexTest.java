@@ -0,0 +1,148 @@
+package com.cardcollection.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NumericIndexTest {
+
+    @Test
+    void rebuildSortsByValueThenId() {
+        NumericIndex index = new NumericIndex();
+        index.rebuild(new double[] { 3.0, 1.0, 2.0, 1.0 }, new String[] { "d", "b", "c", "a" });
+
+        NumericIndex.Slice all = index.all();
+        assertEquals(4, all.size());
+        assertEquals(List.of("a", "b", "c", "d"), ids(all, false));
+        assertEquals(List.of("d", "c", "b", "a"), ids(all, true));
+        assertEquals(1.0, all.valueAt(0, false));
+        assertEquals(3.0, all.valueAt(0, true));
+    }
+
+    @Test
+    void rangeBoundsAreInclusiveAndOpenWhenNull() {
+        NumericIndex index = new NumericIndex();
+        index.rebuild(new double[] { 1.0, 2.0, 2.0, 3.0, 4.0 }, new String[] { "a", "b", "c", "d", "e" });
+
+        assertEquals(List.of("b", "c", "d"), ids(index.range(2.0, 3.0), false));
+        assertEquals(List.of("a", "b", "c"), ids(index.range(null, 2.0), false));
+        assertEquals(List.of("e", "d"), ids(index.range(3.0, null), true));
+        assertEquals(0, index.range(2.5, 2.9).size());
+        assertEquals(0, index.range(3.0, 2.0).size());
+        assertEquals(0, index.range(5.0, null).size());
+    }
+
+    @Test
+    void emptyIndexHasEmptySlices() {
+        NumericIndex index = new NumericIndex();
+
+        assertEquals(0, index.all().size());
+        assertEquals(0, index.range(1.0, 2.0).size());
+        assertEquals(0, index.blockCount());
+    }
+
+    @Test
+    void updateMovesRemovesAndInsertsEntries() {
+        NumericIndex index = new NumericIndex();
+        index.rebuild(new double[] { 1.0, 2.0, 3.0 }, new String[] { "a", "b", "c" });
+
+        index.update("a", 1.0, 5.0);
+        index.update("b", 2.0, null);
+        index.update("d", null, 0.5);
+        index.update("c", 3.0, 3.0);
+
+        assertEquals(List.of("d", "c", "a"), ids(index.all(), false));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void insertsPastTwoBlocksSplitTheBlock() {
+        NumericIndex index = new NumericIndex();
+        index.rebuild(new double[0], new String[0]);
+
+        int count = 2 * NumericIndex.BLOCK_SIZE + 1;
+        for (int i = 0; i < count; i++) {
+            index.update(String.format("card-%05d", i), null, (double) i);
+        }
+
+        assertEquals(count, index.size());
+        assertEquals(2, index.blockCount());
+        NumericIndex.Slice all = index.all();
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, all.valueAt(i, false));
+            assertEquals(count - 1 - i, all.valueAt(i, true));
+        }
+    }
+
+    @Test
+    void randomUpdatesMatchSortedModel() {
+        Random random = new Random(42);
+        NumericIndex index = new NumericIndex();
+        TreeMap<String, Double> values = new TreeMap<>();
+
+        double[] initialValues = new double[3000];
+        String[] initialIds = new String[initialValues.length];
+        for (int i = 0; i < initialValues.length; i++) {
+            initialIds[i] = "card-" + i;
+            initialValues[i] = random.nextInt(500) / 4.0;
+            values.put(initialIds[i], initialValues[i]);
+        }
+        index.rebuild(initialValues, initialIds);
+
+        for (int step = 0; step < 5000; step++) {
+            String id = "card-" + random.nextInt(4000);
+            Double oldValue = values.get(id);
+            Double newValue = random.nextInt(10) == 0 ? null : Double.valueOf(random.nextInt(500) / 4.0);
+            index.update(id, oldValue, newValue);
+            if (newValue == null) {
+                values.remove(id);
+            } else {
+                values.put(id, newValue);
+            }
+        }
+
+        assertEquals(values.size(), index.size());
+        for (int probe = 0; probe < 50; probe++) {
+            double min = random.nextInt(500) / 4.0;
+            double max = min + random.nextInt(100) / 4.0;
+            List<String> expected = modelRange(values, min, max);
+            NumericIndex.Slice slice = index.range(min, max);
+            assertEquals(expected, ids(slice, false));
+
+            List<String> reversed = new ArrayList<>(expected);
+            Collections.reverse(reversed);
+            assertEquals(reversed, ids(slice, true));
+            for (int i = 0; i < slice.size(); i++) {
+                double value = slice.valueAt(i, false);
+                assertTrue(value >= min && value <= max);
+            }
+        }
+    }
+
+    private static List<String> modelRange(TreeMap<String, Double> values, double min, double max) {
+        List<String> ids = new ArrayList<>();
+        values.entrySet().stream()
+            .filter(entry -> entry.getValue() >= min && entry.getValue() <= max)
+            .sorted((a, b) -> {
+                int cmp = Double.compare(a.getValue(), b.getValue());
+                return cmp != 0 ? cmp : a.getKey().compareTo(b.getKey());
+            })
+            .forEach(entry -> ids.add(entry.getKey()));
+        return ids;
+    }
+
+    private static List<String> ids(NumericIndex.Slice slice, boolean descending) {
+        List<String> ids = new ArrayList<>(slice.size());
+        for (int i = 0; i < slice.size(); i++) {
+            ids.add(slice.idAt(i, descending));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,260 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.PriceHistory;
+import com.google.cloud.firestore.Firestore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+
+class PriceJournalTest {
+
+    private static final FirestoreCallPolicy CALL_POLICY = new FirestoreCallPolicy(new StandardEnvironment());
+
+    @TempDir
+    Path dir;
+
+    private PriceJournal journal;
+
+    @AfterEach
+    void stopJournal() throws InterruptedException {
+        if (journal != null) {
+            journal.stop();
+        }
+    }
+
+    @Test
+    void documentIdValidation() {
+        assertTrue(PriceJournal.isValidDocumentId("price-1"));
+        assertFalse(PriceJournal.isValidDocumentId(""));
+        assertFalse(PriceJournal.isValidDocumentId("a/b"));
+        assertFalse(PriceJournal.isValidDocumentId("."));
+        assertFalse(PriceJournal.isValidDocumentId(".."));
+        assertFalse(PriceJournal.isValidDocumentId("__reserved__"));
+        assertTrue(PriceJournal.isValidDocumentId("__prefix_only"));
+        assertFalse(PriceJournal.isValidDocumentId("x".repeat(1501)));
+    }
+
+    @Test
+    void appendIsRefusedWhenStoppedOrIdIsInvalid() throws Exception {
+        journal = offlineJournal();
+        assertThrows(IllegalStateException.class, () -> journal.append(List.of(point("p1"))));
+
+        journal.start();
+        assertThrows(IllegalArgumentException.class, () -> journal.append(List.of(point("a/b"))));
+        assertEquals(0L, journal.getStats().getAppendedRecords());
+    }
+
+    @Test
+    void appendedRecordsAreCrcFramedAndPendingUntilFlushed() throws Exception {
+        journal = offlineJournal();
+        journal.start();
+        journal.append(List.of(point("p1"), point("p2"), point(null)));
+
+        PriceJournal.JournalStats stats = journal.getStats();
+        assertEquals(3L, stats.getAppendedRecords());
+        assertEquals(3L, stats.getPendingRecords());
+        assertEquals(0L, stats.getFlushedRecords());
+        assertEquals(1L, stats.getSegments());
+
+        List<String> payloads = readRecords(onlySegment());
+        assertEquals(3, payloads.size());
+        assertTrue(payloads.get(0).contains("\"id\":\"p1\""));
+        assertTrue(payloads.get(1).contains("\"id\":\"p2\""));
+        assertFalse(payloads.get(2).contains("\"id\":null"));
+    }
+
+    @Test
+    void timedOutAppendsAreNotWrittenLater() throws Exception {
+        // With no time to wait, most appends time out while their points are still queued
+        journal = new PriceJournal(offlineFirestore(), CALL_POLICY, true, dir.toString(), 1 << 20, 500, 10, 60_000, 5, 0);
+        journal.start();
+
+        long expected = 0;
+        for (int i = 0; i < 20; i++) {
+            List<PriceHistory> points = new ArrayList<>();
+            for (int j = 0; j < 50; j++) {
+                points.add(point("p" + i + "-" + j));
+            }
+            try {
+                journal.append(points);
+                expected += points.size();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+                Matcher taken = Pattern.compile("\\((\\d+) of").matcher(e.getCause().getMessage());
+                expected += taken.find() ? Long.parseLong(taken.group(1)) : 0;
+            }
+        }
+        journal.stop();
+
+        // Only what the caller was told may be stored ends up in the journal
+        assertEquals(expected, readRecords(onlySegment()).size());
+    }
+
+    @Test
+    void restartTruncatesTornWriteAndReplaysRecords() throws Exception {
+        journal = offlineJournal();
+        journal.start();
+        journal.append(List.of(point("p1"), point("p2")));
+        journal.stop();
+
+        Path segment = onlySegment();
+        long intact = Files.size(segment);
+        Files.write(segment, new byte[] { 0, 0, 1, 0, 42, 42 }, StandardOpenOption.APPEND);
+
+        journal = offlineJournal();
+        journal.start();
+        assertEquals(intact, Files.size(segment));
+        assertEquals(2L, journal.getStats().getPendingRecords());
+
+        journal.append(List.of(point("p3")));
+        assertEquals(3, readRecords(segment).size());
+    }
+
+    @Test
+    void restartCutsOffRecordFailingItsChecksum() throws Exception {
+        journal = offlineJournal();
+        journal.start();
+        journal.append(List.of(point("p1"), point("p2")));
+        journal.stop();
+
+        Path segment = onlySegment();
+        long firstEnd = recordEnds(segment).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            // Flip a payload byte of the second record; its header stays intact
+            channel.write(ByteBuffer.wrap(new byte[] { '#' }), firstEnd + 12);
+        }
+
+        journal = offlineJournal();
+        journal.start();
+        assertEquals(firstEnd, Files.size(segment));
+        assertEquals(1L, journal.getStats().getPendingRecords());
+    }
+
+    @Test
+    void restartResumesFromCheckpoint() throws Exception {
+        journal = offlineJournal();
+        journal.start();
+        journal.append(List.of(point("p1"), point("p2"), point("p3")));
+        journal.stop();
+
+        Path segment = onlySegment();
+        String name = segment.getFileName().toString();
+        long sequence = Long.parseLong(name.substring("segment-".length(), name.length() - ".log".length()));
+        Files.write(dir.resolve("checkpoint"),
+            (sequence + " " + recordEnds(segment).get(0)).getBytes(StandardCharsets.UTF_8));
+
+        journal = offlineJournal();
+        journal.start();
+        assertEquals(2L, journal.getStats().getPendingRecords());
+    }
+
+    @Test
+    void flushWritesCheckpointAndNotifiesListener() throws Exception {
+        Firestore firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+        journal = new PriceJournal(firestore, CALL_POLICY, true, dir.toString(), 1 << 20, 500, 10, 60_000, 5, 5_000);
+        List<String> flushed = new CopyOnWriteArrayList<>();
+        journal.setFlushListener(points -> points.forEach(point -> flushed.add(point.getId())));
+        journal.start();
+
+        journal.append(List.of(point("p1"), point("p2"), point("p3")));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (flushed.size() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(List.of("p1", "p2", "p3"), flushed);
+        assertEquals(0L, journal.getStats().getPendingRecords());
+        Path segment = onlySegment();
+        String checkpoint = new String(Files.readAllBytes(dir.resolve("checkpoint")), StandardCharsets.UTF_8);
+        assertEquals(String.valueOf(Files.size(segment)), checkpoint.trim().split(" ")[1]);
+    }
+
+    /**
+     * A journal whose Firestore is unreachable, so appended records stay pending
+     */
+    private PriceJournal offlineJournal() {
+        return new PriceJournal(offlineFirestore(), CALL_POLICY, true, dir.toString(), 1 << 20, 500, 10, 60_000, 5, 5_000);
+    }
+
+    private Firestore offlineFirestore() {
+        return (Firestore) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { Firestore.class }, (proxy, method, args) -> {
+                throw new IllegalStateException("offline");
+            });
+    }
+
+    private static PriceHistory point(String id) {
+        PriceHistory point = new PriceHistory();
+        point.setId(id);
+        point.setCardId("card-1");
+        point.setPrice(9.99);
+        point.setTimestamp(1_700_000_000_000L);
+        return point;
+    }
+
+    private Path onlySegment() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> segments = files
+                .filter(path -> path.getFileName().toString().startsWith("segment-"))
+                .collect(Collectors.toList());
+            assertEquals(1, segments.size());
+            return segments.get(0);
+        }
+    }
+
+    /**
+     * Payloads of a segment, checking each record's length and CRC header
+     */
+    private static List<String> readRecords(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<String> payloads = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            assertEquals(checksum, (int) crc.getValue());
+            payloads.add(new String(payload, StandardCharsets.UTF_8));
+        }
+        return payloads;
+    }
+
+    private static List<Long> recordEnds(Path segment) throws IOException {
+        List<Long> ends = new ArrayList<>();
+        long offset = 0;
+        for (String payload : readRecords(segment)) {
+            offset += 8 + payload.getBytes(StandardCharsets.UTF_8).length;
+            ends.add(offset);
+        }
+        return ends;
+    }
+}
@@ -0,0 +1,42 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.PriceAggregate;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class PriceRetentionServiceTest {
+
+    private static final long BUCKET_START = 1_700_006_400_000L;
+
+    @Test
+    void aggregateIdSeparatesCurrencies() {
+        String usd = PriceRetentionService.aggregateId(aggregate("Near Mint", "USD"));
+        String eur = PriceRetentionService.aggregateId(aggregate("Near Mint", "EUR"));
+
+        assertNotEquals(usd, eur);
+        assertEquals(usd, PriceRetentionService.aggregateId(aggregate("Near Mint", "USD")));
+        assertEquals("card-1_DAILY_" + BUCKET_START + "_NearMint_USD", usd);
+    }
+
+    @Test
+    void aggregateIdSeparatesConditionsAndNamesMissingParts() {
+        assertNotEquals(PriceRetentionService.aggregateId(aggregate("Mint", "USD")),
+            PriceRetentionService.aggregateId(aggregate("Played", "USD")));
+        assertEquals("card-1_DAILY_" + BUCKET_START + "_any_any",
+            PriceRetentionService.aggregateId(aggregate(null, null)));
+        assertEquals("card-1_DAILY_" + BUCKET_START + "_Mint_any",
+            PriceRetentionService.aggregateId(aggregate("Mint", " ")));
+    }
+
+    private static PriceAggregate aggregate(String condition, String currency) {
+        PriceAggregate aggregate = new PriceAggregate();
+        aggregate.setCardId("card-1");
+        aggregate.setGranularity("DAILY");
+        aggregate.setBucketStart(BUCKET_START);
+        aggregate.setCondition(condition);
+        aggregate.setCurrency(currency);
+        return aggregate;
+    }
+}
@@ -0,0 +1,118 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimilarityIndexTest {
+
+    private static final String ONE_PIECE = "ONE_PIECE_TCG";
+
+    @Test
+    void featuresArePrefixedAndNormalized() {
+        Card card = card("a", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew"));
+        card.setEffect("[On Play] Draw cards from your deck during your opponent's turn.");
+
+        Set<String> features = SimilarityIndex.features(card);
+
+        assertTrue(features.contains("color:red"));
+        assertTrue(features.contains("attribute:strike"));
+        assertTrue(features.contains("tag:straw hat crew"));
+        assertTrue(features.contains("keyword:on play"));
+        assertFalse(features.contains("word:cards"));
+        assertFalse(features.contains("word:during"));
+        assertFalse(features.stream().anyMatch(feature -> feature.startsWith("team:")));
+    }
+
+    @Test
+    void identicalCardsAreNeighboursWithFullScore() {
+        SimilarityIndex index = SimilarityIndex.build(List.of(
+            card("a", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew")),
+            card("b", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew"))), 5, 0.1);
+
+        List<SimilarityIndex.Neighbour> neighbours = index.neighbours("a");
+        assertEquals(1, neighbours.size());
+        assertEquals("b", neighbours.get(0).getCardId());
+        assertEquals(1.0, neighbours.get(0).getScore());
+    }
+
+    @Test
+    void cardsOfAnotherGameAreNeverCandidates() {
+        SimilarityIndex index = SimilarityIndex.build(List.of(
+            card("a", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew")),
+            card("b", "SOCCER_CARDS", "Red", "Strike", List.of("Straw Hat Crew"))), 5, 0.0);
+
+        assertTrue(index.neighbours("a").isEmpty());
+        assertTrue(index.neighbours("b").isEmpty());
+    }
+
+    @Test
+    void neighboursAreRankedByJaccardAndCappedAtTopK() {
+        List<String> tags = List.of("Straw Hat Crew", "Supernovas");
+        SimilarityIndex index = SimilarityIndex.build(List.of(
+            card("a", ONE_PIECE, "Red", "Strike", tags),
+            card("same", ONE_PIECE, "Red", "Strike", tags),
+            card("close", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew", "Navy")),
+            card("far", ONE_PIECE, "Blue", "Slash", List.of("Straw Hat Crew"))), 2, 0.1);
+
+        List<SimilarityIndex.Neighbour> neighbours = index.neighbours("a");
+        assertEquals(2, neighbours.size());
+        assertEquals("same", neighbours.get(0).getCardId());
+        assertEquals("close", neighbours.get(1).getCardId());
+        assertEquals(3.0 / 5.0, neighbours.get(1).getScore(), 1e-9);
+    }
+
+    @Test
+    void minScoreDropsWeakCandidates() {
+        SimilarityIndex index = SimilarityIndex.build(List.of(
+            card("a", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew", "Supernovas")),
+            card("far", ONE_PIECE, "Blue", "Slash", List.of("Straw Hat Crew"))), 5, 0.5);
+
+        assertTrue(index.neighbours("a").isEmpty());
+    }
+
+    @Test
+    void upsertAndRemoveKeepNeighbourListsCurrent() {
+        Card a = card("a", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew"));
+        SimilarityIndex index = SimilarityIndex.build(List.of(a,
+            card("empty", ONE_PIECE, null, null, null)), 5, 0.1);
+        assertEquals(1, index.size());
+
+        assertTrue(index.upsert(card("b", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew"))));
+        assertEquals(List.of("b"), ids(index.neighbours("a")));
+        assertEquals(List.of("a"), ids(index.neighbours("b")));
+        assertFalse(index.upsert(card("b", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew"))));
+
+        index.upsert(card("b", ONE_PIECE, "Green", "Wisdom", List.of("Navy")));
+        assertTrue(index.neighbours("a").isEmpty());
+
+        index.upsert(card("c", ONE_PIECE, "Red", "Strike", List.of("Straw Hat Crew")));
+        index.remove("c");
+        assertTrue(index.neighbours("a").isEmpty());
+        assertTrue(index.neighbours("c").isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    private static Card card(String id, String game, String color, String attribute, List<String> tags) {
+        Card card = new Card();
+        card.setId(id);
+        card.setGame(game);
+        card.setColor(color);
+        card.setAttribute(attribute);
+        card.setTags(tags);
+        return card;
+    }
+
+    private static List<String> ids(List<SimilarityIndex.Neighbour> neighbours) {
+        List<String> ids = new ArrayList<>(neighbours.size());
+        neighbours.forEach(neighbour -> ids.add(neighbour.getCardId()));
+        return ids;
+    }
+}
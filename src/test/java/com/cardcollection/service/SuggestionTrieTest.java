@@ -0,0 +1,85 @@
+package com.cardcollection.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuggestionTrieTest {
+
+    @Test
+    void normalizeLowerCasesAndCollapsesSeparators() {
+        assertEquals("monkey d luffy", SuggestionTrie.normalize("Monkey.D.Luffy"));
+        assertEquals("roronoa zoro", SuggestionTrie.normalize("  --Roronoa   Zoro!! "));
+        assertEquals("op01 001", SuggestionTrie.normalize("OP01-001"));
+        assertEquals("", SuggestionTrie.normalize(null));
+    }
+
+    @Test
+    void suggestionsAreOrderedByScoreAndLimited() {
+        SuggestionTrie trie = SuggestionTrie.build(List.of(
+            entry("Nami", 1.0),
+            entry("Nico Robin", 5.0),
+            entry("Nefeltari Vivi", 3.0),
+            entry("Zoro", 9.0)), 10);
+
+        assertEquals(List.of("Nico Robin", "Nefeltari Vivi", "Nami"), texts(trie.suggest("n", 10)));
+        assertEquals(List.of("Nico Robin", "Nefeltari Vivi"), texts(trie.suggest("N", 2)));
+        assertEquals(List.of("Nico Robin"), texts(trie.suggest("ni", 10)));
+        assertTrue(trie.suggest("x", 10).isEmpty());
+        assertTrue(trie.suggest(" - ", 10).isEmpty());
+    }
+
+    @Test
+    void anyWordStartMatchesButNotTheMiddleOfAWord() {
+        SuggestionTrie trie = SuggestionTrie.build(List.of(
+            entry("Monkey.D.Luffy", 2.0),
+            entry("Luffy Luffy", 1.0)), 10);
+
+        assertEquals(List.of("Monkey.D.Luffy", "Luffy Luffy"), texts(trie.suggest("luffy", 10)));
+        assertEquals(List.of("Monkey.D.Luffy"), texts(trie.suggest("d luf", 10)));
+        assertTrue(trie.suggest("uffy", 10).isEmpty());
+    }
+
+    @Test
+    void eachNodeKeepsOnlyTopKBestEntries() {
+        List<SuggestionTrie.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            entries.add(entry("Sabo " + i, i));
+        }
+        SuggestionTrie trie = SuggestionTrie.build(entries, 3);
+
+        assertEquals(List.of("Sabo 19", "Sabo 18", "Sabo 17"), texts(trie.suggest("sabo", 10)));
+        assertEquals(List.of("Sabo 19", "Sabo 18", "Sabo 17"), texts(trie.suggest("sabo 1", 10)));
+        assertEquals(List.of("Sabo 5"), texts(trie.suggest("sabo 5", 10)));
+    }
+
+    @Test
+    void prefixesLongerThanMaxDepthAreFiltered() {
+        String stem = "abcdefghijklmnop";
+        assertEquals(SuggestionTrie.MAX_DEPTH, stem.length());
+        SuggestionTrie trie = SuggestionTrie.build(List.of(
+            entry(stem + "qrs", 3.0),
+            entry(stem + "xyz", 2.0),
+            entry(stem + "qtt", 1.0)), 1);
+
+        // The node at MAX_DEPTH keeps all of its entries, not just the top K
+        assertEquals(List.of(stem + "qrs", stem + "xyz", stem + "qtt"), texts(trie.suggest(stem, 10)));
+        assertEquals(List.of(stem + "qrs", stem + "qtt"), texts(trie.suggest(stem + "q", 10)));
+        assertEquals(List.of(stem + "xyz"), texts(trie.suggest(stem + "xy", 10)));
+        assertTrue(trie.suggest(stem + "zz", 10).isEmpty());
+    }
+
+    private static SuggestionTrie.Entry entry(String text, double score) {
+        return new SuggestionTrie.Entry(text, "name", "card-" + text, score);
+    }
+
+    private static List<String> texts(List<SuggestionTrie.Entry> entries) {
+        List<String> texts = new ArrayList<>(entries.size());
+        entries.forEach(entry -> texts.add(entry.getText()));
+        return texts;
+    }
+}
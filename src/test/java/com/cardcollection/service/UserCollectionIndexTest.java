@@ -0,0 +1,106 @@
+package com.cardcollection.service;
+
+import com.cardcollection.model.Card;
+import com.cardcollection.model.CollectionItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserCollectionIndexTest {
+
+    @Test
+    void missingValuesSortLastInBothDirections() {
+        UserCollectionIndex index = new UserCollectionIndex(List.of(
+            item("a", 2.0, null), item("b", null, null), item("c", 1.0, null)), 0L);
+
+        assertEquals(List.of("c", "a", "b"),
+            ids(index.page(UserCollectionIndex.SortKey.PURCHASE_PRICE, false, item -> true, null, 10)));
+        assertEquals(List.of("a", "c", "b"),
+            ids(index.page(UserCollectionIndex.SortKey.PURCHASE_PRICE, true, item -> true, null, 10)));
+    }
+
+    @Test
+    void cursorPagesVisitEveryMatchOnceInOrder() {
+        Random random = new Random(7);
+        List<CollectionItem> items = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            Double price = random.nextInt(5) == 0 ? null : Double.valueOf(random.nextInt(20));
+            Long acquired = random.nextInt(5) == 0 ? null : Long.valueOf(random.nextInt(50));
+            items.add(item(String.format("item-%03d", i), price, acquired));
+        }
+        UserCollectionIndex index = new UserCollectionIndex(items, 0L);
+        Predicate<CollectionItem> filter = item -> !item.getId().endsWith("3");
+
+        for (UserCollectionIndex.SortKey sortKey : UserCollectionIndex.SortKey.values()) {
+            for (boolean descending : new boolean[] { false, true }) {
+                List<String> all = ids(index.page(sortKey, descending, filter, null, items.size()));
+                assertEquals(index.count(filter), all.size());
+
+                List<String> paged = new ArrayList<>();
+                String cursor = null;
+                while (true) {
+                    UserCollectionIndex.Entry after = CollectionService.decodeCursor(cursor, sortKey, descending);
+                    List<UserCollectionIndex.Entry> page = index.page(sortKey, descending, filter, after, 37);
+                    page.forEach(entry -> paged.add(entry.id));
+                    if (page.size() < 37) {
+                        break;
+                    }
+                    cursor = CollectionService.encodeCursor(page.get(page.size() - 1), sortKey, descending);
+                }
+                assertEquals(all, paged, sortKey + (descending ? " desc" : " asc"));
+            }
+        }
+    }
+
+    @Test
+    void cursorRoundTripsMissingValues() {
+        UserCollectionIndex.Entry entry = new UserCollectionIndex.Entry(Double.NaN, "item|1", null);
+        String cursor = CollectionService.encodeCursor(entry, UserCollectionIndex.SortKey.VALUE, true);
+
+        UserCollectionIndex.Entry decoded = CollectionService.decodeCursor(cursor, UserCollectionIndex.SortKey.VALUE, true);
+        assertTrue(Double.isNaN(decoded.value));
+        assertEquals("item|1", decoded.id);
+    }
+
+    @Test
+    void cursorIsRejectedForAnotherSortOrGarbage() {
+        UserCollectionIndex.Entry entry = new UserCollectionIndex.Entry(3.5, "item-1", null);
+        String cursor = CollectionService.encodeCursor(entry, UserCollectionIndex.SortKey.VALUE, false);
+
+        assertThrows(IllegalArgumentException.class,
+            () -> CollectionService.decodeCursor(cursor, UserCollectionIndex.SortKey.VALUE, true));
+        assertThrows(IllegalArgumentException.class,
+            () -> CollectionService.decodeCursor(cursor, UserCollectionIndex.SortKey.PROFIT, false));
+        assertThrows(IllegalArgumentException.class,
+            () -> CollectionService.decodeCursor("not a cursor!", UserCollectionIndex.SortKey.VALUE, false));
+        assertNull(CollectionService.decodeCursor("", UserCollectionIndex.SortKey.VALUE, false));
+    }
+
+    private static CollectionItem item(String id, Double purchasePrice, Long dateAcquired) {
+        CollectionItem item = new CollectionItem();
+        item.setId(id);
+        item.setQuantity(1);
+        item.setPurchasePrice(purchasePrice);
+        item.setDateAcquired(dateAcquired);
+        if (purchasePrice != null) {
+            Card card = new Card();
+            card.setCurrentPrice(purchasePrice * 1.5);
+            item.setCard(card);
+        }
+        return item;
+    }
+
+    private static List<String> ids(List<UserCollectionIndex.Entry> entries) {
+        List<String> ids = new ArrayList<>(entries.size());
+        entries.forEach(entry -> ids.add(entry.id));
+        return ids;
+    }
+}